@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.queue;
+
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.benchmark.MockEntities;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations of a shuffled queue, as they happen when tracks are added, removed, listed and played.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SimpleTrackProviderBenchmark {
+
+    private static final int PAGE_SIZE = 10; //same as the queue command
+
+    @Param({"100", "10000", "100000"})
+    public int queueSize;
+
+    private YoutubeAudioSourceManager sourceManager;
+    private Member member;
+    private SimpleTrackProvider provider;
+    private AudioTrackContext extraTrack;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sourceManager = new YoutubeAudioSourceManager();
+        Guild guild = MockEntities.guild(MockEntities.jda());
+        member = MockEntities.member(guild, 166604053629894657L);
+        extraTrack = track(-1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sourceManager.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void fillQueue() {
+        provider = new SimpleTrackProvider();
+        provider.setShuffle(true);
+        provider.setRepeatMode(RepeatMode.ALL);
+        for (int i = 0; i < queueSize; i++) {
+            provider.add(track(i));
+        }
+        provider.reshuffle();
+    }
+
+    private AudioTrackContext track(int i) {
+        AudioTrackInfo info = new AudioTrackInfo("Benchmark track " + i, "FredBoat", 200000 + i,
+                "dQw4w9WgXc" + (i & 0xF), false, "https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+        return new AudioTrackContext(null, new YoutubeAudioTrack(info, sourceManager), member);
+    }
+
+    @Benchmark
+    public boolean addAndRemove() {
+        provider.add(extraTrack);
+        return provider.remove(extraTrack);
+    }
+
+    @Benchmark
+    public AudioTrackContext getTrack() {
+        return provider.getTrack(ThreadLocalRandom.current().nextInt(queueSize));
+    }
+
+    @Benchmark
+    public List<AudioTrackContext> getTracksInRange() {
+        int start = ThreadLocalRandom.current().nextInt(Math.max(1, queueSize - PAGE_SIZE));
+        return provider.getTracksInRange(start, start + PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long getDurationMillis() {
+        return provider.getDurationMillis();
+    }
+
+    /**
+     * Plays the next track of the shuffled queue while repeating all, which puts a clone of the last track back into
+     * the shuffled queue, so the queue size stays the same.
+     */
+    @Benchmark
+    public AudioTrackContext provideAudioTrack() {
+        AudioTrackContext next = provider.provideAudioTrack();
+        provider.setLastTrack(next);
+        return next;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.config.property.AppConfig;
+import fredboat.db.EntityIO;
+import fredboat.db.GuildSettings;
+import fredboat.main.BotController;
+import fredboat.main.Launcher;
+import fredboat.perms.CompiledPermissions;
+import fredboat.util.DiscordUtil;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.Permission;
+import net.dv8tion.jda.core.entities.ApplicationInfo;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.entities.SelfUser;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mocked JDA entities and bot wiring, so the benchmarks run offline without a discord connection, a database or a
+ * spring context.
+ * <p>
+ * Calls into these mocks are more expensive than calls into the real JDA entities, so the absolute numbers of the
+ * benchmarks are a bit pessimistic. They are meant to be compared between revisions of the code.
+ */
+public class MockEntities {
+
+    public static final long BOT_ID = 184405311681986560L;
+    public static final long OWNER_ID = 81011298891993088L;
+    public static final long GUILD_ID = 174820236481134592L;
+    public static final long TEXT_CHANNEL_ID = 174821093633294338L;
+    public static final String PREFIX = ";;";
+
+    private MockEntities() {
+    }
+
+    public static JDA jda() {
+        JDA jda = mock(JDA.class);
+        SelfUser selfUser = mock(SelfUser.class);
+        when(selfUser.getIdLong()).thenReturn(BOT_ID);
+        when(selfUser.getId()).thenReturn(Long.toString(BOT_ID));
+        when(jda.getSelfUser()).thenReturn(selfUser);
+        return jda;
+    }
+
+    public static Guild guild(JDA jda) {
+        Guild guild = mock(Guild.class);
+        when(guild.getIdLong()).thenReturn(GUILD_ID);
+        when(guild.getId()).thenReturn(Long.toString(GUILD_ID));
+        when(guild.getJDA()).thenReturn(jda);
+        return guild;
+    }
+
+    /**
+     * Creates a role and makes it known to the guild.
+     */
+    public static Role role(Guild guild, long roleId) {
+        Role role = mock(Role.class);
+        when(role.getIdLong()).thenReturn(roleId);
+        when(role.getId()).thenReturn(Long.toString(roleId));
+        when(role.getGuild()).thenReturn(guild);
+        when(role.isPublicRole()).thenReturn(roleId == guild.getIdLong());
+        when(guild.getRoleById(roleId)).thenReturn(role);
+        when(guild.getRoleById(Long.toString(roleId))).thenReturn(role);
+        return role;
+    }
+
+    public static Member member(Guild guild, long userId, Role... roles) {
+        User user = mock(User.class);
+        when(user.getIdLong()).thenReturn(userId);
+        when(user.getId()).thenReturn(Long.toString(userId));
+
+        Member member = mock(Member.class);
+        List<Role> roleList = Collections.unmodifiableList(Arrays.asList(roles));
+        when(member.getUser()).thenReturn(user);
+        when(member.getGuild()).thenReturn(guild);
+        when(member.getJDA()).thenReturn(guild.getJDA());
+        when(member.getRoles()).thenReturn(roleList);
+        when(member.hasPermission(any(Permission.class))).thenReturn(false);
+        return member;
+    }
+
+    public static TextChannel textChannel(Guild guild) {
+        TextChannel channel = mock(TextChannel.class);
+        when(channel.getIdLong()).thenReturn(TEXT_CHANNEL_ID);
+        when(channel.getId()).thenReturn(Long.toString(TEXT_CHANNEL_ID));
+        when(channel.getGuild()).thenReturn(guild);
+        when(channel.getJDA()).thenReturn(guild.getJDA());
+        return channel;
+    }
+
+    public static MessageReceivedEvent messageReceived(Member member, TextChannel channel, String content) {
+        Message message = mock(Message.class);
+        when(message.getContentRaw()).thenReturn(content);
+        when(message.getGuild()).thenReturn(member.getGuild());
+        when(message.getMember()).thenReturn(member);
+        when(message.getAuthor()).thenAnswer(invocation -> member.getUser());
+        when(message.getTextChannel()).thenReturn(channel);
+
+        MessageReceivedEvent event = mock(MessageReceivedEvent.class);
+        when(event.getJDA()).thenReturn(member.getJDA());
+        when(event.getMessage()).thenReturn(message);
+        when(event.getGuild()).thenReturn(member.getGuild());
+        when(event.getMember()).thenReturn(member);
+        when(event.getAuthor()).thenAnswer(invocation -> member.getUser());
+        when(event.getTextChannel()).thenReturn(channel);
+        return event;
+    }
+
+    public static AppConfig appConfig() {
+        AppConfig appConfig = mock(AppConfig.class);
+        when(appConfig.getPrefix()).thenReturn(PREFIX);
+        when(appConfig.getAdminIds()).thenReturn(Collections.emptyList());
+        when(appConfig.useAutoBlacklist()).thenReturn(false);
+        when(appConfig.getRatelimitMaxEntries()).thenReturn(100000);
+        when(appConfig.getPlayerHistorySize()).thenReturn(20);
+        when(appConfig.getSpotifyResolveParallelism()).thenReturn(4);
+        when(appConfig.getSpotifySearchesPerMinute()).thenReturn(300L);
+        when(appConfig.getMaxConcurrentLoads()).thenReturn(50);
+        when(appConfig.getLavalinkMigrationsPerSecond()).thenReturn(2);
+        return appConfig;
+    }
+
+    /**
+     * Makes {@link Launcher#getBotController()} return a bot controller that serves the provided guild settings for
+     * every guild, and makes the bot owner known to {@link DiscordUtil}, so none of them will go out to discord or the
+     * database.
+     */
+    public static void installBotController(AppConfig appConfig, GuildSettings guildSettings) {
+        EntityIO entityIO = mock(EntityIO.class);
+        when(entityIO.fetchGuildSettings(anyLong())).thenReturn(guildSettings);
+        when(entityIO.fetchGuildSettings(any(Guild.class))).thenReturn(guildSettings);
+
+        BotController botController = mock(BotController.class);
+        when(botController.getAppConfig()).thenReturn(appConfig);
+        when(botController.getEntityIO()).thenReturn(entityIO);
+
+        User owner = mock(User.class);
+        when(owner.getIdLong()).thenReturn(OWNER_ID);
+        when(owner.getId()).thenReturn(Long.toString(OWNER_ID));
+        when(owner.getName()).thenReturn("owner");
+        ApplicationInfo applicationInfo = mock(ApplicationInfo.class);
+        when(applicationInfo.getOwner()).thenReturn(owner);
+
+        setStatic(Launcher.class, "BC", botController);
+        setStatic(DiscordUtil.class, "selfDiscordAppInfo", new DiscordUtil.DiscordAppInfo(applicationInfo));
+    }
+
+    /**
+     * @return guild settings without a custom prefix and with the provided permission lists
+     */
+    public static GuildSettings guildSettings(List<String> adminList, List<String> djList, List<String> userList) {
+        GuildSettings guildSettings = mock(GuildSettings.class);
+        when(guildSettings.getGuildId()).thenReturn(GUILD_ID);
+        when(guildSettings.getPrefix()).thenReturn(null);
+        when(guildSettings.getLang()).thenReturn("en_US");
+        when(guildSettings.getPermissions()).thenReturn(new CompiledPermissions(adminList, djList, userList));
+        return guildSettings;
+    }
+
+    private static void setStatic(Class<?> clazz, String fieldName, Object value) {
+        try {
+            Field field = clazz.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(null, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to set " + clazz.getSimpleName() + "#" + fieldName, e);
+        }
+    }
+}
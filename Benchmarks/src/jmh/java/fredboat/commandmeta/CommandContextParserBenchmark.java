@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.commandmeta;
+
+import fredboat.benchmark.MockEntities;
+import fredboat.commandmeta.abs.Command;
+import fredboat.commandmeta.abs.CommandContext;
+import fredboat.definitions.Module;
+import fredboat.messaging.internal.Context;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every message the bot receives goes through the parser, and most of them are not commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandContextParserBenchmark {
+
+    //roughly the shape of the real command registry: a bunch of commands with a few aliases each
+    private static final String[][] COMMANDS = {
+            {"play", "p"}, {"skip", "sk", "s"}, {"stop"}, {"pause", "pa", "ps"}, {"unpause", "unp", "resume"},
+            {"queue", "list", "q", "l"}, {"nowplaying", "np"}, {"shuffle", "sh", "random"}, {"repeat", "rep"},
+            {"volume", "vol"}, {"join", "summon", "jn", "j"}, {"leave", "lv"}, {"history", "hist", "h"},
+            {"export", "ex"}, {"forward", "fwd"}, {"rewind", "rew"}, {"seek"}, {"restart", "replay"},
+            {"voteskip", "vsk", "v"}, {"remove", "rm"}, {"playsplit", "split"}, {"select", "sel"},
+            {"help", "info"}, {"commands", "comms", "cmds"}, {"stats"}, {"invite"}, {"ping"}, {"shards"},
+            {"prefix", "pre"}, {"config", "cfg"}, {"lang", "language"}, {"modules", "module", "mods"},
+            {"admin"}, {"dj"}, {"user"}, {"avatar", "ava"}, {"serverinfo", "guildinfo"}, {"userinfo", "memberinfo"},
+            {"weather", "we"}, {"math"}, {"roll"}, {"dance"}, {"hug"}, {"pat"}, {"joke", "jk"}, {"akinator", "aki"},
+    };
+
+    private CommandContextParser parser;
+
+    private MessageReceivedEvent chatMessage;
+    private MessageReceivedEvent prefixedCommand;
+    private MessageReceivedEvent prefixedAlias;
+    private MessageReceivedEvent mentionCommand;
+
+    @Setup
+    public void setup() {
+        MockEntities.installBotController(MockEntities.appConfig(), MockEntities.guildSettings(
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+
+        CommandRegistry registry = new CommandRegistry(Module.MUSIC); //registers itself
+        for (String[] names : COMMANDS) {
+            String[] aliases = new String[names.length - 1];
+            System.arraycopy(names, 1, aliases, 0, aliases.length);
+            registry.registerCommand(new NoopCommand(names[0], aliases));
+        }
+
+        JDA jda = MockEntities.jda();
+        Guild guild = MockEntities.guild(jda);
+        Member member = MockEntities.member(guild, 166604053629894657L);
+        TextChannel channel = MockEntities.textChannel(guild);
+
+        parser = new CommandContextParser();
+        chatMessage = MockEntities.messageReceived(member, channel,
+                "did anyone else watch the stream yesterday? the ending was wild");
+        prefixedCommand = MockEntities.messageReceived(member, channel,
+                MockEntities.PREFIX + "play https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+        prefixedAlias = MockEntities.messageReceived(member, channel,
+                MockEntities.PREFIX + "q   2");
+        mentionCommand = MockEntities.messageReceived(member, channel,
+                "<@" + MockEntities.BOT_ID + "> volume 50");
+    }
+
+    @Benchmark
+    public CommandContext parseChatMessage() {
+        return parser.parse(chatMessage);
+    }
+
+    @Benchmark
+    public CommandContext parsePrefixedCommand() {
+        return parser.parse(prefixedCommand);
+    }
+
+    @Benchmark
+    public CommandContext parsePrefixedAlias() {
+        return parser.parse(prefixedAlias);
+    }
+
+    @Benchmark
+    public CommandContext parseMentionCommand() {
+        return parser.parse(mentionCommand);
+    }
+
+    private static class NoopCommand extends Command {
+
+        NoopCommand(@Nonnull String name, String... aliases) {
+            super(name, aliases);
+        }
+
+        @Override
+        public void onInvoke(@Nonnull CommandContext context) {
+        }
+
+        @Nonnull
+        @Override
+        public String help(@Nonnull Context context) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.db.entity.cache;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.definitions.SearchProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search results are serialized into the database cache after each search, and deserialized on every cache hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchResultBenchmark {
+
+    @Param({"5", "20"})
+    public int tracks;
+
+    private AudioPlayerManager playerManager;
+    private AudioPlaylist playlist;
+    private SearchResult searchResult;
+
+    @Setup
+    public void setup() {
+        playerManager = new DefaultAudioPlayerManager();
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        playerManager.registerSourceManager(youtube);
+
+        List<AudioTrack> list = new ArrayList<>(tracks);
+        for (int i = 0; i < tracks; i++) {
+            String identifier = String.format("dQw4w9WgX%02d", i);
+            list.add(new YoutubeAudioTrack(new AudioTrackInfo("Never Gonna Give You Up (Take " + i + ")",
+                    "Rick Astley", 213000 + i, identifier, false, "https://www.youtube.com/watch?v=" + identifier),
+                    youtube));
+        }
+        playlist = new BasicAudioPlaylist("Search results for: never gonna give you up", list, null, true);
+        searchResult = new SearchResult(playerManager, SearchProvider.YOUTUBE, "never gonna give you up", playlist);
+    }
+
+    @TearDown
+    public void tearDown() {
+        playerManager.shutdown();
+    }
+
+    @Benchmark
+    public SearchResult serialize() {
+        return new SearchResult(playerManager, SearchProvider.YOUTUBE, "never gonna give you up", playlist);
+    }
+
+    @Benchmark
+    public AudioPlaylist deserialize() {
+        return searchResult.getSearchResult(playerManager);
+    }
+}
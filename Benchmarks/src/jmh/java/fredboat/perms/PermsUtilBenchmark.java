@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.perms;
+
+import fredboat.benchmark.MockEntities;
+import fredboat.definitions.PermissionLevel;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission checks of members, as done for every command invocation and by the music commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermsUtilBenchmark {
+
+    private static final long ADMIN_ROLE_ID = 174845164899139584L;
+    private static final long DJ_ROLE_ID = 174845370705084416L;
+
+    private Member baseMember;
+    private Member djMember;
+    private Member adminMember;
+    private List<String> djList;
+
+    @Setup
+    public void setup() {
+        Guild guild = MockEntities.guild(MockEntities.jda());
+
+        //a guild with a few roles, most of them not relevant to the permission lists
+        List<Role> otherRoles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            otherRoles.add(MockEntities.role(guild, 300000000000000000L + i));
+        }
+        Role adminRole = MockEntities.role(guild, ADMIN_ROLE_ID);
+        Role djRole = MockEntities.role(guild, DJ_ROLE_ID);
+
+        List<String> adminList = Collections.singletonList(Long.toString(ADMIN_ROLE_ID));
+        djList = Arrays.asList("81011298891993088", "166604053629894657", Long.toString(DJ_ROLE_ID));
+        MockEntities.installBotController(MockEntities.appConfig(),
+                MockEntities.guildSettings(adminList, djList, Collections.emptyList()));
+
+        baseMember = MockEntities.member(guild, 200000000000000001L, otherRoles.subList(0, 5).toArray(new Role[0]));
+        djMember = MockEntities.member(guild, 200000000000000002L, otherRoles.get(7), djRole);
+        adminMember = MockEntities.member(guild, 200000000000000003L, adminRole);
+    }
+
+    @Benchmark
+    public PermissionLevel getPermsBase() {
+        return PermsUtil.getPerms(baseMember);
+    }
+
+    @Benchmark
+    public PermissionLevel getPermsDj() {
+        return PermsUtil.getPerms(djMember);
+    }
+
+    @Benchmark
+    public PermissionLevel getPermsAdmin() {
+        return PermsUtil.getPerms(adminMember);
+    }
+
+    @Benchmark
+    public boolean checkPermsDj() {
+        return PermsUtil.checkPerms(PermissionLevel.DJ, djMember);
+    }
+
+    @Benchmark
+    public boolean checkListMiss() {
+        return PermsUtil.checkList(djList, baseMember);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Track titles, nicknames and timestamps get escaped and formatted for pretty much every reply of the music commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TextUtilsBenchmark {
+
+    public String plainTitle = "Rick Astley - Never Gonna Give You Up (Official Music Video)";
+    public String markdownTitle = "**Daft Punk** - _Harder, Better, Faster, Stronger_ ~~(Live)~~ `2007` @everyone https://daftpunk.com";
+    public long shortDuration = 213000L;
+    public long longDuration = 10 * 3600 * 1000L + 42 * 60 * 1000L + 7000L;
+
+    @Benchmark
+    public String escapeMarkdownPlain() {
+        return TextUtils.escapeMarkdown(plainTitle);
+    }
+
+    @Benchmark
+    public String escapeMarkdown() {
+        return TextUtils.escapeMarkdown(markdownTitle);
+    }
+
+    @Benchmark
+    public String escapeAndDefuse() {
+        return TextUtils.escapeAndDefuse(markdownTitle);
+    }
+
+    @Benchmark
+    public String formatTimeShort() {
+        return TextUtils.formatTime(shortDuration);
+    }
+
+    @Benchmark
+    public String formatTimeLong() {
+        return TextUtils.formatTime(longDuration);
+    }
+}
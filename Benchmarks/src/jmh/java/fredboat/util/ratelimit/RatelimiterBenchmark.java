@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util.ratelimit;
+
+import fredboat.audio.queue.PlaylistInfo;
+import fredboat.benchmark.MockContext;
+import fredboat.benchmark.MockEntities;
+import fredboat.commandmeta.abs.Command;
+import fredboat.commandmeta.abs.CommandContext;
+import fredboat.main.ShutdownHandler;
+import fredboat.messaging.internal.Context;
+import fredboat.util.Tuple2;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every command invocation passes through the rate limiter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RatelimiterBenchmark {
+
+    /**
+     * How many different users are sending commands. With few users most requests end up being rate limited.
+     */
+    @Param({"1", "1000", "100000"})
+    public int users;
+
+    private ExecutorService executor;
+    private Ratelimiter ratelimiter;
+    private Context[] contexts;
+    private int next = 0;
+
+    private final Command command = new Command("play") {
+        @Override
+        public void onInvoke(@Nonnull CommandContext context) {
+        }
+
+        @Nonnull
+        @Override
+        public String help(@Nonnull Context context) {
+            return "";
+        }
+    };
+    private final PlaylistInfo playlistInfo = new PlaylistInfo(100, "benchmark", PlaylistInfo.Source.PASTESERVICE);
+
+    @Setup
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        //the blacklist is disabled in the mocked config, so the blacklist io is never used
+        ratelimiter = new Ratelimiter(MockEntities.appConfig(), executor, null, new ShutdownHandler());
+
+        JDA jda = MockEntities.jda();
+        Guild guild = MockEntities.guild(jda);
+        TextChannel channel = MockEntities.textChannel(guild);
+        contexts = new Context[users];
+        for (int i = 0; i < users; i++) {
+            contexts[i] = new MockContext(channel, MockEntities.member(guild, 100000000000000000L + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Context nextContext() {
+        Context context = contexts[next];
+        next = (next + 1) % contexts.length;
+        return context;
+    }
+
+    @Benchmark
+    public Tuple2<Boolean, Class> isAllowedCommand() {
+        return ratelimiter.isAllowed(nextContext(), command, 1);
+    }
+
+    @Benchmark
+    public Tuple2<Boolean, Class> isAllowedPlaylistImport() {
+        return ratelimiter.isAllowed(nextContext(), playlistInfo, playlistInfo.getTotalTracks());
+    }
+}
@@ -40,8 +40,22 @@ public interface BlacklistIO {
      */
     List<BlacklistEntry> loadBlacklist();
 
+    /**
+     * @return entries that were modified after the provided timestamp of the database clock, see
+     * {@link BlacklistEntry#modified}. The cost of this scales with the amount of changes, not the size of the
+     * blacklist.
+     */
+    List<BlacklistEntry> loadBlacklistChanges(long modifiedAfter);
+
     BlacklistEntry mergeBlacklistEntry(BlacklistEntry entry);
 
+    /**
+     * Like {@link #mergeBlacklistEntry(BlacklistEntry)}, but keeps the newer state of the stored entry, see
+     * {@link fredboat.db.repositories.api.BlacklistRepo#mergeIfNewer(BlacklistEntry)}. Use this when several instances
+     * write to the same entries.
+     */
+    void mergeBlacklistEntryIfNewer(BlacklistEntry entry);
+
     void deleteBlacklistEntry(long id);
 
 }
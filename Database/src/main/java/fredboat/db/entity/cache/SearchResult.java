@@ -32,9 +32,12 @@ import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
 import fredboat.definitions.SearchProvider;
+import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import space.npstr.sqlsauce.entities.SaucedEntity;
 import space.npstr.sqlsauce.fp.types.EntityKey;
 
@@ -60,14 +63,16 @@ import java.util.Objects;
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "search_results")
 public class SearchResult extends SaucedEntity<SearchResult.SearchResultId, SearchResult> {
 
+    private static final Logger log = LoggerFactory.getLogger(SearchResult.class);
+
     @EmbeddedId
     private SearchResultId searchResultId;
 
     @Column(name = "timestamp")
     private long timestamp;
 
-    @Lob
-    @Column(name = "search_result")
+    //see SearchResultCodec for the format
+    @Column(name = "search_result", columnDefinition = "bytea")
     private byte[] serializedSearchResult;
 
     //for jpa / db wrapper
@@ -78,7 +83,7 @@ public class SearchResult extends SaucedEntity<SearchResult.SearchResultId, Sear
                         AudioPlaylist searchResult) {
         this.searchResultId = new SearchResultId(provider, searchTerm);
         this.timestamp = System.currentTimeMillis();
-        this.serializedSearchResult = SerializationUtils.serialize(new SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = encode(playerManager, searchResult);
     }
 
     @Nonnull
@@ -129,14 +134,106 @@ public class SearchResult extends SaucedEntity<SearchResult.SearchResultId, Sear
         this.timestamp = timestamp;
     }
 
+    /**
+     * @return the decoded search result, or an empty playlist if the saved value can't be decoded
+     */
     @Nonnull
     public AudioPlaylist getSearchResult(@Nonnull AudioPlayerManager playerManager) {
-        SerializableAudioPlaylist sap = SerializationUtils.deserialize(serializedSearchResult);
-        return sap.decode(playerManager);
+        SearchResultCodec.Decoded decoded;
+        try {
+            byte[] serialized = serializedSearchResult;
+            //the V2 migration converted all existing rows, but during a rolling deploy instances of the previous
+            // version keep writing java serialized rows until they are replaced
+            if (isLegacyFormat(serialized)) {
+                serialized = convertLegacySearchResult(serialized);
+            }
+            decoded = SearchResultCodec.decode(serialized);
+        } catch (IOException | SerializationException e) {
+            log.warn("Failed to decode cached search result for {}", getSearchTerm(), e);
+            return new BasicAudioPlaylist(null, new ArrayList<>(), null, true);
+        }
+        return new BasicAudioPlaylist(decoded.name,
+                decodeTracks(playerManager, decoded.tracks),
+                decodeTrack(playerManager, decoded.selectedTrack),
+                decoded.isSearchResult);
     }
 
     public void setSearchResult(AudioPlayerManager playerManager, AudioPlaylist searchResult) {
-        this.serializedSearchResult = SerializationUtils.serialize(new SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = encode(playerManager, searchResult);
+    }
+
+    /**
+     * Converts a search result saved with java serialization, as done by earlier versions, into the current format.
+     * Used by the cache database migrations, and when reading rows that earlier versions wrote after the migration.
+     */
+    @Nonnull
+    public static byte[] convertLegacySearchResult(@Nonnull byte[] javaSerialized) {
+        SerializableAudioPlaylist sap = SerializationUtils.deserialize(javaSerialized);
+        byte[][] tracks = sap.tracks != null ? sap.tracks : new byte[0][];
+        return SearchResultCodec.encode(sap.name, tracks, sap.selectedTrack, sap.isSearchResult);
+    }
+
+    //java serialization streams start with these magic bytes, which are never a version of the current format
+    private static boolean isLegacyFormat(@Nonnull byte[] serialized) {
+        return serialized.length >= 2 && serialized[0] == (byte) 0xAC && serialized[1] == (byte) 0xED;
+    }
+
+    @Nonnull
+    private static byte[] encode(@Nonnull AudioPlayerManager playerManager, @Nonnull AudioPlaylist playlist) {
+        return SearchResultCodec.encode(playlist.getName(),
+                encodeTracks(playerManager, playlist.getTracks()),
+                encodeTrack(playerManager, playlist.getSelectedTrack()),
+                playlist.isSearchResult());
+    }
+
+    @Nonnull
+    private static byte[][] encodeTracks(@Nonnull AudioPlayerManager playerManager, @Nonnull List<AudioTrack> tracks) {
+        List<byte[]> encoded = new ArrayList<>(tracks.size());
+        for (AudioTrack track : tracks) {
+            byte[] encodedTrack = encodeTrack(playerManager, track);
+            if (encodedTrack != null) {
+                encoded.add(encodedTrack);
+            }
+        }
+        return encoded.toArray(new byte[0][]);
+    }
+
+    //may return null if the encoding fails or the input is null
+    @Nullable
+    private static byte[] encodeTrack(@Nonnull AudioPlayerManager playerManager, @Nullable AudioTrack track) {
+        if (track == null) {
+            return null;
+        }
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            playerManager.encodeTrack(new MessageOutput(baos), track);
+            return baos.toByteArray();
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    @Nonnull
+    private static List<AudioTrack> decodeTracks(@Nonnull AudioPlayerManager playerManager, @Nonnull byte[][] input) {
+        List<AudioTrack> result = new ArrayList<>(input.length);
+        for (byte[] track : input) {
+            AudioTrack decoded = decodeTrack(playerManager, track);
+            if (decoded != null) {
+                result.add(decoded);
+            }
+        }
+        return result;
+    }
+
+    //may return null if the decoding fails or the input is null
+    @Nullable
+    private static AudioTrack decodeTrack(@Nonnull AudioPlayerManager playerManager, @Nullable byte[] input) {
+        if (input == null) return null;
+        ByteArrayInputStream bais = new ByteArrayInputStream(input);
+        try {
+            return playerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     /**
@@ -193,13 +290,16 @@ public class SearchResult extends SaucedEntity<SearchResult.SearchResultId, Sear
     }
 
 
+    /**
+     * Format of search results saved by earlier versions, only kept around to read them when migrating the cache
+     * database. Do not change the name or the fields of this class, java serialization relies on them.
+     */
     private static class SerializableAudioPlaylist implements Serializable {
         private static final long serialVersionUID = -6823555858689776338L;
 
         @Nullable
         private String name;
-        @SuppressWarnings("NullableProblems") //triggered by the empty no params constructor
-        @Nonnull
+        @Nullable
         private byte[][] tracks;
         @Nullable
         private byte[] selectedTrack;
@@ -208,83 +308,5 @@ public class SearchResult extends SaucedEntity<SearchResult.SearchResultId, Sear
         //required for deserialization
         SerializableAudioPlaylist() {
         }
-
-        public SerializableAudioPlaylist(AudioPlayerManager playerManager, AudioPlaylist audioPlaylist) {
-            this.name = audioPlaylist.getName();
-            this.tracks = encodeTracks(playerManager, audioPlaylist.getTracks());
-            this.selectedTrack = encodeTrack(playerManager, audioPlaylist.getSelectedTrack());
-            this.isSearchResult = audioPlaylist.isSearchResult();
-        }
-
-        @Nonnull
-        public AudioPlaylist decode(@Nonnull AudioPlayerManager playerManager) {
-            return new BasicAudioPlaylist(name,
-                    decodeTracks(playerManager, tracks),
-                    decodeTrack(playerManager, selectedTrack),
-                    isSearchResult);
-        }
-
-        @Nonnull
-        private static byte[][] encodeTracks(@Nonnull AudioPlayerManager playerManager, @Nonnull List<AudioTrack> tracks) {
-            byte[][] encoded = new byte[tracks.size()][];
-            int skipped = 0;
-            for (int i = 0; i < tracks.size(); i++) {
-                encoded[i] = encodeTrack(playerManager, tracks.get(i));
-                if (encoded[i] == null) {
-                    skipped++;
-                }
-            }
-
-            byte[][] result = new byte[tracks.size() - skipped][];
-            int i = 0;
-            for (byte[] encodedTrack : encoded) {
-                if (encodedTrack != null) {
-                    result[i] = encodedTrack;
-                    i++;
-                }
-            }
-
-            return result;
-        }
-
-        //may return null if the encoding fails or the input is null
-        @Nullable
-        private static byte[] encodeTrack(@Nonnull AudioPlayerManager playerManager, @Nullable AudioTrack track) {
-            if (track == null) {
-                return null;
-            }
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                playerManager.encodeTrack(new MessageOutput(baos), track);
-                return baos.toByteArray();
-            } catch (IOException ignored) {
-                return null;
-            }
-        }
-
-        @Nonnull
-        private static List<AudioTrack> decodeTracks(@Nonnull AudioPlayerManager playerManager, byte[][] input) {
-            List<AudioTrack> result = new ArrayList<>();
-            if (input == null) return result;
-
-            for (byte[] track : input) {
-                AudioTrack decoded = decodeTrack(playerManager, track);
-                if (decoded != null) {
-                    result.add(decoded);
-                }
-            }
-            return result;
-        }
-
-        //may return null if the decoding fails or the input is null
-        @Nullable
-        private static AudioTrack decodeTrack(@Nonnull AudioPlayerManager playerManager, byte[] input) {
-            if (input == null) return null;
-            ByteArrayInputStream bais = new ByteArrayInputStream(input);
-            try {
-                return playerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
-            } catch (IOException e) {
-                return null;
-            }
-        }
     }
 }
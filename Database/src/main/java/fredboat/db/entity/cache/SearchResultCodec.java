@@ -0,0 +1,259 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.entity.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary format of the search results saved in the cache database.
+ * <p>
+ * The stored value starts with a version byte and a flags byte, followed by the body, which is deflated if the
+ * compression flag is set:
+ * <pre>
+ * flags                byte       bit 0: is search result, bit 1: has name, bit 2: has selected track
+ * name                 varint length + utf8 bytes, if present
+ * selected track       varint length + lavaplayer message bytes, if present
+ * track count          varint
+ * tracks               varint length + lavaplayer message bytes each
+ * </pre>
+ * The tracks are kept as the messages produced by lavaplayer's track encoding, this class doesn't know anything about
+ * their content.
+ */
+final class SearchResultCodec {
+
+    static final byte VERSION = 1;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int BODY_IS_SEARCH_RESULT = 1;
+    private static final int BODY_HAS_NAME = 1 << 1;
+    private static final int BODY_HAS_SELECTED_TRACK = 1 << 2;
+
+    //small bodies don't compress well, so don't bother
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private SearchResultCodec() {
+    }
+
+    static final class Decoded {
+        @Nullable
+        final String name;
+        @Nonnull
+        final byte[][] tracks;
+        @Nullable
+        final byte[] selectedTrack;
+        final boolean isSearchResult;
+
+        Decoded(@Nullable String name, @Nonnull byte[][] tracks, @Nullable byte[] selectedTrack,
+                boolean isSearchResult) {
+            this.name = name;
+            this.tracks = tracks;
+            this.selectedTrack = selectedTrack;
+            this.isSearchResult = isSearchResult;
+        }
+    }
+
+    @Nonnull
+    static byte[] encode(@Nullable String name, @Nonnull byte[][] tracks, @Nullable byte[] selectedTrack,
+                         boolean isSearchResult) {
+        int flags = (isSearchResult ? BODY_IS_SEARCH_RESULT : 0)
+                | (name != null ? BODY_HAS_NAME : 0)
+                | (selectedTrack != null ? BODY_HAS_SELECTED_TRACK : 0);
+
+        Output body = new Output(64 + tracks.length * 160);
+        body.write(flags);
+        if (name != null) {
+            body.writeLengthPrefixed(name.getBytes(StandardCharsets.UTF_8));
+        }
+        if (selectedTrack != null) {
+            body.writeLengthPrefixed(selectedTrack);
+        }
+        body.writeVarInt(tracks.length);
+        for (byte[] track : tracks) {
+            body.writeLengthPrefixed(track);
+        }
+
+        byte[] compressed = body.size() >= COMPRESSION_THRESHOLD ? deflate(body.buffer(), body.size()) : null;
+
+        Output result = new Output(2 + (compressed != null ? compressed.length : body.size()));
+        result.write(VERSION);
+        if (compressed != null) {
+            result.write(FLAG_COMPRESSED);
+            result.write(compressed, 0, compressed.length);
+        } else {
+            result.write(0);
+            result.write(body.buffer(), 0, body.size());
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the input is not in the format of a supported version, or corrupted
+     */
+    @Nonnull
+    static Decoded decode(@Nonnull byte[] encoded) throws IOException {
+        if (encoded.length < 2) {
+            throw new IOException("Encoded search result is too short: " + encoded.length + " bytes");
+        }
+        if (encoded[0] != VERSION) {
+            throw new IOException("Unsupported search result format version " + encoded[0]);
+        }
+        byte[] body;
+        if ((encoded[1] & FLAG_COMPRESSED) != 0) {
+            body = inflate(encoded, 2, encoded.length - 2);
+        } else {
+            body = new byte[encoded.length - 2];
+            System.arraycopy(encoded, 2, body, 0, body.length);
+        }
+
+        Input in = new Input(body);
+        int flags = in.read();
+        String name = (flags & BODY_HAS_NAME) != 0 ? new String(in.readLengthPrefixed(), StandardCharsets.UTF_8) : null;
+        byte[] selectedTrack = (flags & BODY_HAS_SELECTED_TRACK) != 0 ? in.readLengthPrefixed() : null;
+        int trackCount = in.readVarInt();
+        if (trackCount > body.length) { //every track takes up at least one byte
+            throw new IOException("Corrupted search result, claims to have " + trackCount + " tracks");
+        }
+        byte[][] tracks = new byte[trackCount][];
+        for (int i = 0; i < trackCount; i++) {
+            tracks[i] = in.readLengthPrefixed();
+        }
+        return new Decoded(name, tracks, selectedTrack, (flags & BODY_IS_SEARCH_RESULT) != 0);
+    }
+
+    @Nullable
+    private static byte[] deflate(byte[] input, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+                if (out.size() >= length) {
+                    return null; //not worth it
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupted search result, compressed body is truncated");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted search result, compressed body is malformed", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    //gives access to the internal buffer to avoid a copy
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeLengthPrefixed(byte[] bytes) {
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int position = 0;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        int read() throws IOException {
+            if (position >= data.length) {
+                throw new IOException("Corrupted search result, unexpected end of data");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupted search result, malformed length");
+        }
+
+        byte[] readLengthPrefixed() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > data.length - position) {
+                throw new IOException("Corrupted search result, length " + length + " exceeds the remaining data");
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(data, position, result, 0, length);
+            position += length;
+            return result;
+        }
+    }
+}
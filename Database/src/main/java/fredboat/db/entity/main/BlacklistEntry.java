@@ -64,6 +64,10 @@ public class BlacklistEntry extends SaucedEntity<Long, BlacklistEntry> {
     @Column(name = "blacklisted_timestamp", nullable = false)
     public long blacklistedTimestamp;
 
+    //time of the last modification of this row, in epoch millis of the database clock. maintained by a trigger
+    @Column(name = "modified", nullable = false, insertable = false, updatable = false)
+    public long modified;
+
     public BlacklistEntry(long id) {
         this.id = id;
         this.level = -1;
@@ -126,4 +130,8 @@ public class BlacklistEntry extends SaucedEntity<Long, BlacklistEntry> {
     public void setBlacklistedTimestamp(long blacklistedTimestamp) {
         this.blacklistedTimestamp = blacklistedTimestamp;
     }
+
+    public long getModified() {
+        return modified;
+    }
 }
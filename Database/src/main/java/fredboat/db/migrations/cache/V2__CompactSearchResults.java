@@ -0,0 +1,132 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.migrations.cache;
+
+import fredboat.db.entity.cache.SearchResult;
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Moves the search results from java serialized large objects into a bytea column with the compact format of
+ * {@link SearchResult}. Rows that can't be converted, including those whose large object is gone, are dropped, it's
+ * just a cache after all.
+ */
+public class V2__CompactSearchResults implements JdbcMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(V2__CompactSearchResults.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String ADD_COLUMN
+            = "ALTER TABLE public.search_results ADD COLUMN search_result_compact BYTEA;";
+
+    //rows may reference large objects that don't exist anymore, calling lo_get or lo_unlink on those would abort the
+    // whole migration
+    private static final String LARGE_OBJECT_EXISTS
+            = "EXISTS (SELECT 1 FROM pg_catalog.pg_largeobject_metadata lo WHERE lo.oid = search_result)";
+
+    //lo_get reads the whole large object into a bytea value, rows with a dangling oid get null
+    private static final String SELECT_LEGACY
+            = "SELECT provider, search_term, CASE WHEN " + LARGE_OBJECT_EXISTS + " THEN lo_get(search_result) END "
+            + "FROM public.search_results WHERE search_result IS NOT NULL;";
+
+    private static final String UPDATE_COMPACT
+            = "UPDATE public.search_results SET search_result_compact = ? WHERE provider = ? AND search_term = ?;";
+
+    //large objects are not removed together with the rows referencing them
+    private static final String UNLINK_LEGACY
+            = "SELECT lo_unlink(search_result) FROM public.search_results "
+            + "WHERE search_result IS NOT NULL AND " + LARGE_OBJECT_EXISTS + ";";
+
+    private static final String DELETE_UNCONVERTED
+            = "DELETE FROM public.search_results WHERE search_result_compact IS NULL;";
+
+    private static final String DROP_LEGACY_COLUMN
+            = "ALTER TABLE public.search_results DROP COLUMN search_result;";
+
+    private static final String RENAME_COMPACT_COLUMN
+            = "ALTER TABLE public.search_results RENAME COLUMN search_result_compact TO search_result;";
+
+    @Override
+    public void migrate(Connection connection) throws Exception {
+        try (Statement addColumn = connection.createStatement()) {
+            addColumn.execute(ADD_COLUMN);
+        }
+
+        int converted = 0;
+        int failed = 0;
+        try (Statement select = connection.createStatement();
+             PreparedStatement update = connection.prepareStatement(UPDATE_COMPACT)) {
+            select.setFetchSize(BATCH_SIZE); //stream the rows instead of loading the whole table into memory
+            try (ResultSet rs = select.executeQuery(SELECT_LEGACY)) {
+                int batched = 0;
+                while (rs.next()) {
+                    String provider = rs.getString(1);
+                    String searchTerm = rs.getString(2);
+                    byte[] legacy = rs.getBytes(3);
+                    if (legacy == null) { //dangling oid
+                        failed++;
+                        continue;
+                    }
+                    byte[] compact;
+                    try {
+                        compact = SearchResult.convertLegacySearchResult(legacy);
+                    } catch (Exception e) {
+                        failed++;
+                        continue;
+                    }
+                    update.setBytes(1, compact);
+                    update.setString(2, provider);
+                    update.setString(3, searchTerm);
+                    update.addBatch();
+                    converted++;
+                    if (++batched >= BATCH_SIZE) {
+                        update.executeBatch();
+                        batched = 0;
+                        log.info("Converted {} search results so far", converted);
+                    }
+                }
+                if (batched > 0) {
+                    update.executeBatch();
+                }
+            }
+        }
+        log.info("Converted {} search results to the compact format, dropping {} that could not be converted",
+                converted, failed);
+
+        for (String sql : new String[]{UNLINK_LEGACY, DELETE_UNCONVERTED, DROP_LEGACY_COLUMN, RENAME_COMPACT_COLUMN}) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.migrations.main;
+
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Adds a modification timestamp to the blacklist, so that instances sharing the database can poll for changed
+ * entries only. The timestamp is taken from the database clock by a trigger, which keeps it independent of the
+ * clocks of the instances, and of them having to set it.
+ */
+public class V5__BlacklistModified implements JdbcMigration {
+
+    private static final String ADD_COLUMN
+            = "ALTER TABLE public.blacklist "
+            + "    ADD COLUMN IF NOT EXISTS modified BIGINT NOT NULL DEFAULT 0;";
+
+    private static final String CREATE_INDEX
+            = "CREATE INDEX IF NOT EXISTS blacklist_modified_idx ON public.blacklist (modified);";
+
+    private static final String CREATE_FUNCTION
+            = "CREATE OR REPLACE FUNCTION public.blacklist_set_modified() RETURNS TRIGGER AS $$ "
+            + "BEGIN "
+            + "    NEW.modified := (EXTRACT(EPOCH FROM clock_timestamp()) * 1000)::BIGINT; "
+            + "    RETURN NEW; "
+            + "END; "
+            + "$$ LANGUAGE plpgsql;";
+
+    private static final String DROP_TRIGGER
+            = "DROP TRIGGER IF EXISTS blacklist_set_modified ON public.blacklist;";
+
+    private static final String CREATE_TRIGGER
+            = "CREATE TRIGGER blacklist_set_modified "
+            + "    BEFORE INSERT OR UPDATE ON public.blacklist "
+            + "    FOR EACH ROW EXECUTE PROCEDURE public.blacklist_set_modified();";
+
+    @Override
+    public void migrate(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(ADD_COLUMN);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_INDEX);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_FUNCTION);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(DROP_TRIGGER);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TRIGGER);
+        }
+    }
+}
@@ -39,4 +39,17 @@ public interface BlacklistRepo extends Repo<Long, BlacklistEntry> {
      * of initial population of the blacklist (and probably not even then, reworking the ratelimiter is planned).
      */
     List<BlacklistEntry> loadBlacklist();
+
+    /**
+     * @return all entries that were modified after the provided timestamp of the database clock
+     */
+    List<BlacklistEntry> loadModifiedAfter(long modifiedAfter);
+
+    /**
+     * Writes the entry, unless the stored row holds a newer state, so that concurrent writers can't erase each others
+     * changes. The blacklisting (level and blacklisted timestamp) is taken from the entry if it is a higher level, the
+     * same level issued later, or a blacklisting or lift issued after the stored one when either side is not
+     * blacklisted (level below zero). The rate limit hits are taken from whichever side hit the rate limit last.
+     */
+    void mergeIfNewer(BlacklistEntry entry);
 }
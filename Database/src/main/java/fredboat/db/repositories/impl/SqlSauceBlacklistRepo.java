@@ -29,13 +29,42 @@ import fredboat.db.entity.main.BlacklistEntry;
 import fredboat.db.repositories.api.BlacklistRepo;
 import space.npstr.sqlsauce.DatabaseWrapper;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by napster on 05.02.18.
  */
 public class SqlSauceBlacklistRepo extends SqlSauceRepo<Long, BlacklistEntry> implements BlacklistRepo {
 
+    //whether the incoming blacklisting replaces the stored one, see BlacklistRepo#mergeIfNewer
+    private static final String INCOMING_BLACKLISTING_IS_NEWER
+            = "CASE WHEN excluded.level >= 0 AND b.level >= 0 "
+            + "    THEN (excluded.level, excluded.blacklisted_timestamp) > (b.level, b.blacklisted_timestamp) "
+            + "    ELSE excluded.blacklisted_timestamp > b.blacklisted_timestamp "
+            + "END";
+
+    private static final String INCOMING_HITS_ARE_NEWER
+            = "excluded.rate_limit_timestamp > b.rate_limit_timestamp";
+
+    //language=PostgreSQL
+    private static final String MERGE_IF_NEWER
+            = "INSERT INTO public.blacklist AS b "
+            + "    (id, level, rate_limit_reached, rate_limit_timestamp, blacklisted_timestamp) "
+            + "VALUES (:id, :level, :rateLimitReached, :rateLimitTimestamp, :blacklistedTimestamp) "
+            + "ON CONFLICT (id) DO UPDATE SET "
+            + "    level = CASE WHEN " + INCOMING_BLACKLISTING_IS_NEWER + " "
+            + "        THEN excluded.level ELSE b.level END, "
+            + "    blacklisted_timestamp = CASE WHEN " + INCOMING_BLACKLISTING_IS_NEWER + " "
+            + "        THEN excluded.blacklisted_timestamp ELSE b.blacklisted_timestamp END, "
+            + "    rate_limit_reached = CASE WHEN " + INCOMING_HITS_ARE_NEWER + " "
+            + "        THEN excluded.rate_limit_reached ELSE b.rate_limit_reached END, "
+            + "    rate_limit_timestamp = GREATEST(excluded.rate_limit_timestamp, b.rate_limit_timestamp) "
+            //leave rows alone that don't change, so their modification timestamp doesn't wake up the other instances
+            + "WHERE " + INCOMING_BLACKLISTING_IS_NEWER + " OR " + INCOMING_HITS_ARE_NEWER;
+
     public SqlSauceBlacklistRepo(DatabaseWrapper dbWrapper) {
         super(dbWrapper, BlacklistEntry.class);
     }
@@ -44,4 +73,23 @@ public class SqlSauceBlacklistRepo extends SqlSauceRepo<Long, BlacklistEntry> im
     public List<BlacklistEntry> loadBlacklist() {
         return dbWrapper.loadAll(BlacklistEntry.class);
     }
+
+    @Override
+    public List<BlacklistEntry> loadModifiedAfter(long modifiedAfter) {
+        //language=JPAQL
+        String query = "SELECT b FROM BlacklistEntry b WHERE b.modified > :modifiedAfter";
+        return dbWrapper.selectJpqlQuery(query, Collections.singletonMap("modifiedAfter", modifiedAfter),
+                BlacklistEntry.class);
+    }
+
+    @Override
+    public void mergeIfNewer(BlacklistEntry entry) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", entry.id);
+        params.put("level", entry.level);
+        params.put("rateLimitReached", entry.rateLimitReached);
+        params.put("rateLimitTimestamp", entry.rateLimitReachedTimestamp);
+        params.put("blacklistedTimestamp", entry.blacklistedTimestamp);
+        dbWrapper.executeSqlQuery(MERGE_IF_NEWER, params);
+    }
 }
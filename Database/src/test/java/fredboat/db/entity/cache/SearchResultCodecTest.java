@@ -0,0 +1,139 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.entity.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+class SearchResultCodecTest {
+
+    @Test
+    void roundTrip() throws IOException {
+        byte[][] tracks = {bytes(1, 40), bytes(2, 55), bytes(3, 12)};
+        byte[] selected = bytes(4, 30);
+        byte[] encoded = SearchResultCodec.encode("Söme playlist ♪", tracks, selected, true);
+
+        Assertions.assertEquals(SearchResultCodec.VERSION, encoded[0]);
+        Assertions.assertEquals(0, encoded[1], "small bodies are not compressed");
+        assertDecodesTo(encoded, "Söme playlist ♪", tracks, selected, true);
+    }
+
+    @Test
+    void roundTripWithoutOptionalFields() throws IOException {
+        byte[] encoded = SearchResultCodec.encode(null, new byte[0][], null, false);
+        assertDecodesTo(encoded, null, new byte[0][], null, false);
+    }
+
+    @Test
+    void roundTripDeflated() throws IOException {
+        //lavaplayer messages of tracks from the same source have lots in common, so do these
+        byte[][] tracks = new byte[20][];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = repetitive(i, 150);
+        }
+        byte[] encoded = SearchResultCodec.encode("youtube search", tracks, null, true);
+
+        Assertions.assertEquals(1, encoded[1], "large bodies are compressed");
+        Assertions.assertTrue(encoded.length < 20 * 150);
+        assertDecodesTo(encoded, "youtube search", tracks, null, true);
+    }
+
+    @Test
+    void roundTripIncompressible() throws IOException {
+        //random content doesn't deflate, and lengths of 300 and 20000 need multi byte varints
+        byte[][] tracks = {bytes(5, 300), bytes(6, 20000), bytes(7, 1)};
+        byte[] encoded = SearchResultCodec.encode(null, tracks, bytes(8, 128), false);
+
+        Assertions.assertEquals(0, encoded[1], "bodies that don't get smaller are stored as they are");
+        assertDecodesTo(encoded, null, tracks, bytes(8, 128), false);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] encoded = SearchResultCodec.encode("name", new byte[][]{bytes(1, 10)}, null, true);
+        encoded[0] = SearchResultCodec.VERSION + 1;
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(encoded));
+    }
+
+    @Test
+    void rejectsCorruptedData() {
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(new byte[0]));
+        byte[] versionOnly = {SearchResultCodec.VERSION};
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(versionOnly));
+
+        //truncated plain body
+        byte[] plain = SearchResultCodec.encode("name", new byte[][]{bytes(1, 40)}, null, true);
+        Assertions.assertThrows(IOException.class,
+                () -> SearchResultCodec.decode(Arrays.copyOf(plain, plain.length - 5)));
+
+        //truncated and garbled compressed body
+        byte[][] tracks = new byte[10][];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = repetitive(i, 100);
+        }
+        byte[] compressed = SearchResultCodec.encode(null, tracks, null, true);
+        Assertions.assertEquals(1, compressed[1]);
+        Assertions.assertThrows(IOException.class,
+                () -> SearchResultCodec.decode(Arrays.copyOf(compressed, compressed.length / 2)));
+        byte[] garbled = compressed.clone();
+        Arrays.fill(garbled, 2, garbled.length, (byte) 0xFF);
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(garbled));
+
+        //a track count that can't possibly fit
+        byte[] hugeCount = {SearchResultCodec.VERSION, 0, 0, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        Assertions.assertThrows(IOException.class, () -> SearchResultCodec.decode(hugeCount));
+    }
+
+    private static void assertDecodesTo(byte[] encoded, String name, byte[][] tracks, byte[] selectedTrack,
+                                        boolean isSearchResult) throws IOException {
+        SearchResultCodec.Decoded decoded = SearchResultCodec.decode(encoded);
+        Assertions.assertEquals(name, decoded.name);
+        Assertions.assertEquals(tracks.length, decoded.tracks.length);
+        for (int i = 0; i < tracks.length; i++) {
+            Assertions.assertArrayEquals(tracks[i], decoded.tracks[i]);
+        }
+        Assertions.assertArrayEquals(selectedTrack, decoded.selectedTrack);
+        Assertions.assertEquals(isSearchResult, decoded.isSearchResult);
+    }
+
+    private static byte[] bytes(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] repetitive(int id, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ("https://www.youtube.com/watch?v=".charAt(i % 32) + (i == 40 ? id : 0));
+        }
+        return bytes;
+    }
+}
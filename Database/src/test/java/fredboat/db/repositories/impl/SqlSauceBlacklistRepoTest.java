@@ -0,0 +1,179 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.db.repositories.impl;
+
+import fredboat.db.DatabaseManager;
+import fredboat.db.entity.main.BlacklistEntry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Runs against a local Postgres database, which is migrated to the current schema. Provide its jdbc url in the
+ * FREDBOAT_TEST_JDBC_URL environment variable, for example
+ * jdbc:postgresql://localhost:5432/fredboat_test?user=fredboat&password=fredboat
+ * The tests are skipped when it is not set.
+ */
+class SqlSauceBlacklistRepoTest {
+
+    private static final String JDBC_URL_ENV = "FREDBOAT_TEST_JDBC_URL";
+
+    //negative ids, so they can't collide with real users or guilds in case this runs against a used database
+    private static final long ID = -4242;
+
+    @Nullable
+    private static DatabaseManager databaseManager;
+    private static SqlSauceBlacklistRepo repo;
+
+    @BeforeAll
+    static void connect() {
+        String jdbcUrl = System.getenv(JDBC_URL_ENV);
+        Assumptions.assumeTrue(jdbcUrl != null && !jdbcUrl.isEmpty(), JDBC_URL_ENV + " is not set");
+
+        databaseManager = new DatabaseManager(null, null, 2, "BlacklistRepoTest", true,
+                jdbcUrl, null, null, null, null);
+        repo = new SqlSauceBlacklistRepo(databaseManager.getMainDbWrapper());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (databaseManager != null && databaseManager.isMainConnBuilt()) {
+            databaseManager.getMainDbConn().shutdown();
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        repo.delete(ID);
+    }
+
+    @Test
+    void insertsMissingEntry() {
+        repo.mergeIfNewer(entry(1, 3, 1000, 2000));
+
+        assertEntry(1, 3, 1000, 2000);
+    }
+
+    @Test
+    void higherLevelReplacesLowerLevel() {
+        repo.mergeIfNewer(entry(1, 0, 1000, 1000));
+        repo.mergeIfNewer(entry(2, 0, 2000, 2000));
+
+        assertEntry(2, 0, 2000, 2000);
+    }
+
+    @Test
+    void staleLowerLevelKeepsHigherLevel() {
+        //another instance escalated the blacklisting, while this one only counted a rate limit hit on its stale entry
+        repo.mergeIfNewer(entry(2, 0, 2000, 2000));
+        repo.mergeIfNewer(entry(1, 1, 3000, 1000));
+
+        assertEntry(2, 1, 3000, 2000);
+    }
+
+    @Test
+    void laterBlacklistingOfSameLevelReplacesEarlierOne() {
+        repo.mergeIfNewer(entry(1, 0, 1000, 1000));
+        repo.mergeIfNewer(entry(1, 0, 1000, 5000));
+
+        assertEntry(1, 0, 1000, 5000);
+    }
+
+    @Test
+    void liftReplacesEarlierBlacklisting() {
+        repo.mergeIfNewer(entry(3, 0, 1000, 1000));
+        repo.mergeIfNewer(entry(-1, 0, 5000, 5000));
+
+        assertEntry(-1, 0, 5000, 5000);
+    }
+
+    @Test
+    void staleBlacklistingDoesNotUndoLaterLift() {
+        repo.mergeIfNewer(entry(-1, 0, 5000, 5000));
+        repo.mergeIfNewer(entry(3, 2, 6000, 1000));
+
+        assertEntry(-1, 2, 6000, 5000);
+    }
+
+    @Test
+    void olderRateLimitHitsAreIgnored() {
+        repo.mergeIfNewer(entry(0, 4, 3000, 1000));
+        repo.mergeIfNewer(entry(0, 1, 2000, 1000));
+
+        assertEntry(0, 4, 3000, 1000);
+    }
+
+    @Test
+    void unchangedRowIsNotModified() {
+        repo.mergeIfNewer(entry(1, 1, 1000, 1000));
+        BlacklistEntry first = repo.get(ID);
+        Assertions.assertNotNull(first);
+
+        repo.mergeIfNewer(entry(0, 0, 500, 500));
+        BlacklistEntry second = repo.get(ID);
+        Assertions.assertNotNull(second);
+        Assertions.assertEquals(first.modified, second.modified);
+    }
+
+    @Test
+    void loadsModifiedEntries() {
+        repo.mergeIfNewer(entry(1, 1, 1000, 1000));
+        BlacklistEntry stored = repo.get(ID);
+        Assertions.assertNotNull(stored);
+
+        List<BlacklistEntry> changes = repo.loadModifiedAfter(stored.modified - 1);
+        Assertions.assertTrue(changes.stream().anyMatch(e -> e.id == ID));
+
+        changes = repo.loadModifiedAfter(stored.modified);
+        Assertions.assertFalse(changes.stream().anyMatch(e -> e.id == ID));
+    }
+
+    private static BlacklistEntry entry(int level, int rateLimitReached, long rateLimitReachedTimestamp,
+                                        long blacklistedTimestamp) {
+        BlacklistEntry entry = new BlacklistEntry(ID);
+        entry.level = level;
+        entry.rateLimitReached = rateLimitReached;
+        entry.rateLimitReachedTimestamp = rateLimitReachedTimestamp;
+        entry.blacklistedTimestamp = blacklistedTimestamp;
+        return entry;
+    }
+
+    private static void assertEntry(int level, int rateLimitReached, long rateLimitReachedTimestamp,
+                                    long blacklistedTimestamp) {
+        BlacklistEntry stored = repo.get(ID);
+        Assertions.assertNotNull(stored);
+        Assertions.assertEquals(level, stored.level);
+        Assertions.assertEquals(rateLimitReached, stored.rateLimitReached);
+        Assertions.assertEquals(rateLimitReachedTimestamp, stored.rateLimitReachedTimestamp);
+        Assertions.assertEquals(blacklistedTimestamp, stored.blacklistedTimestamp);
+    }
+}
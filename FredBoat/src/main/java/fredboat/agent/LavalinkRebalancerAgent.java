@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.agent;
+
+import fredboat.audio.player.AudioConnectionFacade;
+import fredboat.audio.player.GuildPlayer;
+import fredboat.audio.player.PlayerRegistry;
+import fredboat.feature.metrics.Metrics;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.Refill;
+import lavalink.client.io.Lavalink;
+import lavalink.client.io.LavalinkSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves players away from lavalink nodes that are being drained by an operator, or that are overloaded.
+ * <p>
+ * Each moved player reconnects its voice connection to the new node, so the migrations are rate limited across all
+ * nodes. Draining nodes are emptied as fast as that allows. Overloaded nodes only give away a few playing players per
+ * check, and only if there is a node that is clearly better off, so that two busy nodes don't trade players back and
+ * forth. Their stats are only updated once a minute anyways.
+ */
+public class LavalinkRebalancerAgent extends FredBoatAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(LavalinkRebalancerAgent.class);
+
+    //a node with this penalty is at its limits, see PenaltyNodeSelectionStrategy
+    private static final double OVERLOADED_PENALTY = 500;
+    private static final long OVERLOAD_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_OVERLOAD_MIGRATIONS_PER_CHECK = 10;
+
+    private static final String REASON_DRAIN = "drain";
+    private static final String REASON_OVERLOAD = "overload";
+
+    private final AudioConnectionFacade audioConnectionFacade;
+    private final PlayerRegistry playerRegistry;
+    private final Bucket migrationBucket;
+    private long lastOverloadCheck = 0;
+
+    public LavalinkRebalancerAgent(AudioConnectionFacade audioConnectionFacade, PlayerRegistry playerRegistry,
+                                   int migrationsPerSecond) {
+        super("lavalink rebalancer", 1, TimeUnit.SECONDS);
+        this.audioConnectionFacade = audioConnectionFacade;
+        this.playerRegistry = playerRegistry;
+        long rate = Math.max(1, migrationsPerSecond);
+        Bandwidth limit = Bandwidth.classic(rate, Refill.smooth(rate, Duration.ofSeconds(1)));
+        this.migrationBucket = Bucket4j.builder().addLimit(limit).build();
+    }
+
+    @Override
+    public void doRun() {
+        Lavalink lavalink = audioConnectionFacade.getLavalink();
+        if (lavalink == null) {
+            return;
+        }
+        List<LavalinkSocket> nodes = new ArrayList<>(lavalink.getNodes());
+        List<LavalinkSocket> drainingNodes = new ArrayList<>();
+        for (LavalinkSocket node : nodes) {
+            if (audioConnectionFacade.isDraining(node.getName())) {
+                drainingNodes.add(node);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        boolean checkOverload = now - lastOverloadCheck >= OVERLOAD_CHECK_INTERVAL;
+        if (drainingNodes.isEmpty() && !checkOverload) {
+            return;
+        }
+
+        //a single pass over all players per run, no matter how many nodes give players away
+        Map<LavalinkSocket, List<GuildPlayer>> playersByNode = getPlayersByNode();
+
+        for (LavalinkSocket node : drainingNodes) {
+            migrateFrom(node, playersByNode.getOrDefault(node, Collections.emptyList()), Integer.MAX_VALUE,
+                    REASON_DRAIN);
+        }
+
+        if (!checkOverload) {
+            return;
+        }
+        lastOverloadCheck = now;
+        for (LavalinkSocket node : nodes) {
+            if (!audioConnectionFacade.isDraining(node.getName())
+                    && audioConnectionFacade.getNodePenalty(node) >= OVERLOADED_PENALTY) {
+                migrateFrom(node, playersByNode.getOrDefault(node, Collections.emptyList()),
+                        MAX_OVERLOAD_MIGRATIONS_PER_CHECK, REASON_OVERLOAD);
+            }
+        }
+    }
+
+    private Map<LavalinkSocket, List<GuildPlayer>> getPlayersByNode() {
+        Map<LavalinkSocket, List<GuildPlayer>> playersByNode = new HashMap<>();
+        for (GuildPlayer player : playerRegistry.getRegistry().values()) {
+            LavalinkSocket node = player.getLavalinkNode();
+            if (node != null) {
+                playersByNode.computeIfAbsent(node, n -> new ArrayList<>()).add(player);
+            }
+        }
+        return playersByNode;
+    }
+
+    /**
+     * Moves up to maxMigrations of the provided players of the node to the best other nodes, playing players first.
+     * Stops early when running out of migrations for this second, the remaining players are picked up by the next run.
+     */
+    private void migrateFrom(LavalinkSocket node, List<GuildPlayer> nodePlayers, int maxMigrations, String reason) {
+        boolean overload = REASON_OVERLOAD.equals(reason);
+        List<GuildPlayer> players = new ArrayList<>();
+        for (GuildPlayer player : nodePlayers) {
+            if (!overload || player.isPlaying()) {
+                players.add(player);
+            }
+        }
+        if (players.isEmpty()) {
+            return;
+        }
+        players.sort(Comparator.comparing(GuildPlayer::isPlaying).reversed());
+
+        int migrated = 0;
+        for (GuildPlayer player : players) {
+            if (migrated >= maxMigrations) {
+                break;
+            }
+            if (player.getLavalinkNode() != node) {
+                continue; //moved elsewhere since the players were collected
+            }
+            //the target is chosen anew for each player, since the node selector accounts for the ones we already moved
+            LavalinkSocket target = audioConnectionFacade.findBestNode(node);
+            if (target == null) {
+                log.warn("No lavalink node available to take over players from {} ({})", node.getName(), reason);
+                return;
+            }
+            if (overload
+                    && audioConnectionFacade.getNodePenalty(target) * 2 >= audioConnectionFacade.getNodePenalty(node)) {
+                log.debug("Node {} is overloaded, but no other node is doing much better", node.getName());
+                return;
+            }
+            if (!migrationBucket.tryConsume(1)) {
+                return;
+            }
+
+            try {
+                if (player.migrateTo(target)) {
+                    //only now the target actually got the player
+                    audioConnectionFacade.notifyPlaced(target);
+                    migrated++;
+                    Metrics.lavalinkMigrations.labels(reason).inc();
+                    log.debug("Moved player of guild {} from node {} to {} ({})",
+                            player.getGuildId(), node.getName(), target.getName(), reason);
+                }
+            } catch (Exception e) {
+                Metrics.lavalinkMigrationsFailed.labels(reason).inc();
+                log.error("Failed to move player of guild {} from node {} to {} ({})",
+                        player.getGuildId(), node.getName(), target.getName(), reason, e);
+            }
+        }
+        if (migrated > 0) {
+            log.info("Moved {} players from lavalink node {} ({})", migrated, node.getName(), reason);
+        }
+    }
+}
@@ -31,110 +31,207 @@ import fredboat.audio.player.PlayerRegistry;
 import fredboat.command.music.control.VoteSkipCommand;
 import fredboat.feature.metrics.Metrics;
 import fredboat.jda.GuildProvider;
+import fredboat.util.HashedWheelTimer;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.GuildVoiceState;
 import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.VoiceChannel;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceJoinEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceLeaveEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceMoveEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
-public class VoiceChannelCleanupAgent extends FredBoatAgent {
+/**
+ * Leaves voice channels that are empty, or in which the player has not been used for a long time.
+ * <p>
+ * Instead of regularly checking all guilds, the voice connections are checked whenever someone joins, leaves or moves
+ * within a guild, and a timer is set for each connection to check it again once it might need to be closed. The timers
+ * live in a hashed wheel, so the cost of this is proportional to the amount of voice connections, not guilds.
+ */
+public class VoiceChannelCleanupAgent extends ListenerAdapter {
 
     private static final Logger log = LoggerFactory.getLogger(VoiceChannelCleanupAgent.class);
-    private static final HashMap<String, Long> VC_LAST_USED = new HashMap<>();
-    private static final int UNUSED_CLEANUP_THRESHOLD = 60000 * 60; // Effective when users are in the VC, but the player is not playing
+    // Effective when no users are in the VC
+    private static final long EMPTY_CLEANUP_THRESHOLD = TimeUnit.MINUTES.toMillis(2);
+    // Effective when users are in the VC, but the player is not playing
+    private static final long UNUSED_CLEANUP_THRESHOLD = TimeUnit.HOURS.toMillis(1);
+    //we don't get told when a player stops playing, so playing players are checked in this interval
+    private static final long PLAYING_RECHECK_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
     private final PlayerRegistry playerRegistry;
     private final GuildProvider guildProvider;
     private final AudioConnectionFacade audioConnectionFacade;
+    //one revolution of the wheel covers a bit more than the playing recheck interval
+    private final HashedWheelTimer timer = new HashedWheelTimer("voice-cleanup-timer", 1, TimeUnit.SECONDS, 512);
+    //guild id -> state of the voice connection in that guild
+    private final Map<Long, Connection> connections = new ConcurrentHashMap<>();
 
     public VoiceChannelCleanupAgent(PlayerRegistry playerRegistry, GuildProvider guildProvider,
                                     AudioConnectionFacade audioConnectionFacade) {
-        super("voice-cleanup", 10, TimeUnit.MINUTES);
         this.playerRegistry = playerRegistry;
         this.guildProvider = guildProvider;
         this.audioConnectionFacade = audioConnectionFacade;
     }
 
+    /**
+     * Checks all voice connections that already exist. Events of shards that are ready afterwards take care of
+     * themselves.
+     */
+    public void start() {
+        guildProvider.streamGuilds().forEach(this::checkSafely);
+        log.info("Tracking {} voice connections for cleanup", connections.size());
+    }
+
     @Override
-    public void doRun() {
+    public void onReady(ReadyEvent event) {
+        event.getJDA().getGuilds().forEach(this::checkSafely);
+    }
+
+    @Override
+    public void onGuildVoiceJoin(GuildVoiceJoinEvent event) {
+        checkSafely(event.getGuild());
+    }
+
+    @Override
+    public void onGuildVoiceLeave(GuildVoiceLeaveEvent event) {
+        checkSafely(event.getGuild());
+    }
+
+    @Override
+    public void onGuildVoiceMove(GuildVoiceMoveEvent event) {
+        checkSafely(event.getGuild());
+    }
+
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        forget(event.getGuild().getIdLong());
+    }
+
+    private void checkSafely(Guild guild) {
         try {
-            cleanup();
+            check(guild);
         } catch (Exception e) {
-            log.error("Caught an exception while trying to clean up voice channels!", e);
+            log.error("Failed to check guild {} for a stale voice connection", guild.getIdLong(), e);
+        }
+    }
+
+    private void checkById(long guildId) {
+        Guild guild = guildProvider.getGuildById(guildId);
+        if (guild == null) {
+            forget(guildId);
+            return;
         }
+        checkSafely(guild);
     }
 
-    private void cleanup(){
-        log.info("Checking guilds for stale voice connections.");
-
-        final AtomicInteger totalGuilds = new AtomicInteger(0);
-        final AtomicInteger totalVcs = new AtomicInteger(0);
-        final AtomicInteger closedVcs = new AtomicInteger(0);
-
-        guildProvider.streamGuilds().forEach(guild -> {
-            try {
-                totalGuilds.incrementAndGet();
-                if (guild != null
-                        && guild.getSelfMember() != null
-                        && guild.getSelfMember().getVoiceState() != null
-                        && guild.getSelfMember().getVoiceState().getChannel() != null) {
-
-                    totalVcs.incrementAndGet();
-                    VoiceChannel vc = guild.getSelfMember().getVoiceState().getChannel();
-
-                    if (getHumanMembersInVC(vc).size() == 0) {
-                        closedVcs.incrementAndGet();
-                        VoteSkipCommand.guildSkipVotes.remove(guild.getIdLong());
-                        audioConnectionFacade.closeConnection(guild);
-                        VC_LAST_USED.remove(vc.getId());
-                    } else if (isBeingUsed(vc)) {
-                        VC_LAST_USED.put(vc.getId(), System.currentTimeMillis());
-                    } else {
-                        // Not being used! But there are users in te VC. Check if we've been here for a while.
-
-                        if (!VC_LAST_USED.containsKey(vc.getId())) {
-                            VC_LAST_USED.put(vc.getId(), System.currentTimeMillis());
-                        }
-
-                        long lastUsed = VC_LAST_USED.get(vc.getId());
-
-                        if (System.currentTimeMillis() - lastUsed > UNUSED_CLEANUP_THRESHOLD) {
-                            closedVcs.incrementAndGet();
-                            audioConnectionFacade.closeConnection(guild);
-                            VC_LAST_USED.remove(vc.getId());
-                        }
-                    }
+    private void check(Guild guild) {
+        long guildId = guild.getIdLong();
+        VoiceChannel vc = getSelfVoiceChannel(guild);
+        if (vc == null) {
+            forget(guildId);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Connection connection = connections.computeIfAbsent(guildId, id -> new Connection(now));
+        boolean empty = countHumanMembers(vc) == 0;
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (connection) {
+            connection.cancelTimeout();
+
+            long nextCheck;
+            if (empty) {
+                if (connection.emptySince == 0) {
+                    connection.emptySince = now;
+                }
+                nextCheck = connection.emptySince + EMPTY_CLEANUP_THRESHOLD;
+            } else {
+                connection.emptySince = 0;
+                if (isBeingUsed(guild)) {
+                    connection.lastUsed = now;
+                    nextCheck = now + PLAYING_RECHECK_INTERVAL;
+                } else {
+                    // Not being used! But there are users in te VC. Check if we've been here for a while.
+                    nextCheck = connection.lastUsed + UNUSED_CLEANUP_THRESHOLD;
                 }
-            } catch (Exception e) {
-                log.error("Failed to check guild {} for stale voice connections", guild.getIdLong(), e);
             }
-        });
 
-        log.info("Checked {} guilds for stale voice connections.", totalGuilds.get());
-        log.info("Closed {} of {} voice connections.", closedVcs.get(), totalVcs.get());
-        Metrics.voiceChannelsCleanedUp.inc(closedVcs.get());
-    }
+            if (nextCheck > now) {
+                connection.timeout = timer.schedule(() -> checkById(guildId), nextCheck - now, TimeUnit.MILLISECONDS);
+                return;
+            }
+            connections.remove(guildId, connection);
+        }
 
-    private List<Member> getHumanMembersInVC(VoiceChannel vc){
-        ArrayList<Member> l = new ArrayList<>();
+        if (empty) {
+            VoteSkipCommand.guildSkipVotes.remove(guildId);
+        }
+        audioConnectionFacade.closeConnection(guild);
+        Metrics.voiceChannelsCleanedUp.inc();
+        log.debug("Closed {} voice connection in guild {}", empty ? "empty" : "unused", guildId);
+    }
 
-        for(Member m : vc.getMembers()){
-            if(!m.getUser().isBot()){
-                l.add(m);
+    private void forget(long guildId) {
+        Connection connection = connections.remove(guildId);
+        if (connection != null) {
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (connection) {
+                connection.cancelTimeout();
             }
         }
+    }
+
+    @Nullable
+    private static VoiceChannel getSelfVoiceChannel(Guild guild) {
+        Member self = guild.getSelfMember();
+        if (self == null) {
+            return null;
+        }
+        GuildVoiceState voiceState = self.getVoiceState();
+        return voiceState == null ? null : voiceState.getChannel();
+    }
 
-        return l;
+    private static int countHumanMembers(VoiceChannel vc) {
+        int humans = 0;
+        for (Member m : vc.getMembers()) {
+            if (!m.getUser().isBot()) {
+                humans++;
+            }
+        }
+        return humans;
     }
 
-    private boolean isBeingUsed(VoiceChannel vc) {
-        GuildPlayer guildPlayer = playerRegistry.getExisting(vc.getGuild());
+    private boolean isBeingUsed(Guild guild) {
+        GuildPlayer guildPlayer = playerRegistry.getExisting(guild);
 
         return guildPlayer != null && guildPlayer.isPlaying();
     }
 
+    private static class Connection {
+        //guarded by the connection
+        private long emptySince = 0;
+        private long lastUsed;
+        @Nullable
+        private HashedWheelTimer.Timeout timeout;
+
+        private Connection(long lastUsed) {
+            this.lastUsed = lastUsed;
+        }
+
+        private void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+    }
 }
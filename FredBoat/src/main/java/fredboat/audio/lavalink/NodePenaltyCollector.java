@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.lavalink;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import lavalink.client.io.Lavalink;
+import lavalink.client.io.LavalinkSocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exposes the penalty of each lavalink node, as scored by the node selector, and whether it is draining.
+ */
+public class NodePenaltyCollector extends Collector {
+
+    private final Lavalink lavalink;
+    private final NodeSelector nodeSelector;
+
+    public NodePenaltyCollector(Lavalink lavalink, NodeSelector nodeSelector) {
+        this.lavalink = lavalink;
+        this.nodeSelector = nodeSelector;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+
+        List<MetricFamilySamples> mfs = new ArrayList<>();
+        List<String> labelNames = Collections.singletonList("node");
+
+        GaugeMetricFamily penalty = new GaugeMetricFamily("fredboat_lavalink_node_penalty_current",
+                "Penalty of a lavalink node, new players go to the node with the lowest one", labelNames);
+        mfs.add(penalty);
+
+        GaugeMetricFamily draining = new GaugeMetricFamily("fredboat_lavalink_node_draining_current",
+                "1 if a lavalink node is being drained of its players, 0 otherwise", labelNames);
+        mfs.add(draining);
+
+        for (LavalinkSocket socket : lavalink.getNodes()) {
+            NodeStats stats = NodeStats.of(socket);
+            List<String> labels = Collections.singletonList(stats.getName());
+            penalty.addMetric(labels, nodeSelector.getPenalty(stats));
+            draining.addMetric(labels, nodeSelector.isDraining(stats.getName()) ? 1 : 0);
+        }
+
+        return mfs;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.lavalink;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the node with the lowest penalty according to a {@link NodeSelectionStrategy}.
+ * <p>
+ * Nodes report their stats only once per minute, so players we placed on a node since its last report are counted as
+ * additional playing players of it. Otherwise a burst of new players would all end up on the same node.
+ * <p>
+ * Nodes can be drained, which keeps them from getting any new players.
+ */
+public class NodeSelector {
+
+    private final NodeSelectionStrategy strategy;
+    //guarded by this. keyed by node name
+    private final Map<String, Placements> placements = new HashMap<>();
+    private final Set<String> drainingNodes = ConcurrentHashMap.newKeySet();
+
+    public NodeSelector(NodeSelectionStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Select a node for a new player, and remember that it got one.
+     *
+     * @return the node with the lowest penalty, or null if none of them may get new players
+     */
+    @Nullable
+    public synchronized NodeStats select(Collection<NodeStats> nodes) {
+        NodeStats best = findBest(nodes);
+        if (best != null) {
+            placementsOf(best).placed++;
+        }
+        return best;
+    }
+
+    /**
+     * Like {@link #select(Collection)}, but without remembering a placement. Use {@link #placed(NodeStats)} once a
+     * player has actually been placed on the node.
+     *
+     * @return the node with the lowest penalty, or null if none of them may get new players
+     */
+    @Nullable
+    public synchronized NodeStats findBest(Collection<NodeStats> nodes) {
+        NodeStats best = null;
+        double bestPenalty = Double.POSITIVE_INFINITY;
+        for (NodeStats node : nodes) {
+            double penalty = getPenalty(node);
+            if (penalty < bestPenalty) {
+                best = node;
+                bestPenalty = penalty;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Remember that the node got a player, which was not selected through {@link #select(Collection)}.
+     */
+    public synchronized void placed(NodeStats node) {
+        placementsOf(node).placed++;
+    }
+
+    /**
+     * @return the penalty of the node, including the players placed on it since its last report
+     */
+    public synchronized double getPenalty(NodeStats node) {
+        if (isDraining(node.getName())) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return strategy.getPenalty(node.withAdditionalPlayers(placementsOf(node).placed));
+    }
+
+    /**
+     * @return true if the node was not draining before
+     */
+    public boolean drain(String nodeName) {
+        return drainingNodes.add(nodeName);
+    }
+
+    /**
+     * @return true if the node was draining before
+     */
+    public boolean undrain(String nodeName) {
+        return drainingNodes.remove(nodeName);
+    }
+
+    public boolean isDraining(String nodeName) {
+        return drainingNodes.contains(nodeName);
+    }
+
+    //guarded by this
+    private Placements placementsOf(NodeStats node) {
+        Placements nodePlacements = placements.get(node.getName());
+        if (nodePlacements == null || !Objects.equals(nodePlacements.report, node.getReport())) {
+            //the node reported new stats, which include the players placed on it so far
+            nodePlacements = new Placements(node.getReport());
+            placements.put(node.getName(), nodePlacements);
+        }
+        return nodePlacements;
+    }
+
+    private static class Placements {
+        @Nullable
+        private final Object report;
+        private int placed = 0;
+
+        private Placements(@Nullable Object report) {
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.lavalink;
+
+import lavalink.client.io.LavalinkSocket;
+import lavalink.client.io.RemoteStats;
+
+import javax.annotation.Nullable;
+
+/**
+ * A snapshot of the stats a lavalink node reported, which node selection strategies score nodes by.
+ * <p>
+ * Frame counts are -1 if the node has no data about them yet.
+ */
+public class NodeStats {
+
+    private final String name;
+    private final boolean available;
+    private final int players;
+    private final int playingPlayers;
+    private final double systemLoad;
+    private final double lavalinkLoad;
+    private final int framesNulledPerMinute;
+    private final int framesDeficitPerMinute;
+    //identifies the report these stats were taken from, nodes report their stats once per minute
+    @Nullable
+    private final Object report;
+
+    public NodeStats(String name, boolean available, int players, int playingPlayers, double systemLoad,
+                     double lavalinkLoad, int framesNulledPerMinute, int framesDeficitPerMinute,
+                     @Nullable Object report) {
+        this.name = name;
+        this.available = available;
+        this.players = players;
+        this.playingPlayers = playingPlayers;
+        this.systemLoad = systemLoad;
+        this.lavalinkLoad = lavalinkLoad;
+        this.framesNulledPerMinute = framesNulledPerMinute;
+        this.framesDeficitPerMinute = framesDeficitPerMinute;
+        this.report = report;
+    }
+
+    public static NodeStats of(LavalinkSocket socket) {
+        RemoteStats stats = socket.getStats();
+        if (stats == null) {
+            return new NodeStats(socket.getName(), false, 0, 0, 0, 0, -1, -1, null);
+        }
+        return new NodeStats(socket.getName(), socket.isOpen(), stats.getPlayers(), stats.getPlayingPlayers(),
+                stats.getSystemLoad(), stats.getLavalinkLoad(), stats.getAvgFramesNulledPerMinute(),
+                stats.getAvgFramesDeficitPerMinute(), stats);
+    }
+
+    /**
+     * @return these stats with additional playing players, which the node has not reported yet
+     */
+    public NodeStats withAdditionalPlayers(int additional) {
+        if (additional == 0) {
+            return this;
+        }
+        return new NodeStats(name, available, players + additional, playingPlayers + additional, systemLoad,
+                lavalinkLoad, framesNulledPerMinute, framesDeficitPerMinute, report);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return false if the node is not connected or has not reported any stats yet
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public int getPlayers() {
+        return players;
+    }
+
+    public int getPlayingPlayers() {
+        return playingPlayers;
+    }
+
+    public double getSystemLoad() {
+        return systemLoad;
+    }
+
+    public double getLavalinkLoad() {
+        return lavalinkLoad;
+    }
+
+    public int getFramesNulledPerMinute() {
+        return framesNulledPerMinute;
+    }
+
+    public int getFramesDeficitPerMinute() {
+        return framesDeficitPerMinute;
+    }
+
+    @Nullable
+    public Object getReport() {
+        return report;
+    }
+
+    @Override
+    public String toString() {
+        return "[NodeStats:" + name + " available=" + available + " players=" + players + " playing=" + playingPlayers
+                + " systemLoad=" + systemLoad + " nulled=" + framesNulledPerMinute
+                + " deficit=" + framesDeficitPerMinute + "]";
+    }
+}
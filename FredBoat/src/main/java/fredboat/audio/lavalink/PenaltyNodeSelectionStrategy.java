@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.lavalink;
+
+/**
+ * Scores nodes like the load balancer of the lavalink client does: each playing player adds a penalty of one, while
+ * the cpu load and any frames the node failed to send in time or at all add exponentially growing penalties, so a
+ * node that starts stuttering is avoided quickly. Idle players are cheap, but still count a little.
+ */
+public class PenaltyNodeSelectionStrategy implements NodeSelectionStrategy {
+
+    private static final double IDLE_PLAYER_PENALTY = 0.25;
+
+    @Override
+    public double getPenalty(NodeStats stats) {
+        if (!stats.isAvailable()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return getPlayerPenalty(stats)
+                + getCpuPenalty(stats)
+                + getDeficitFramePenalty(stats)
+                + getNullFramePenalty(stats);
+    }
+
+    public double getPlayerPenalty(NodeStats stats) {
+        int idlePlayers = Math.max(0, stats.getPlayers() - stats.getPlayingPlayers());
+        return stats.getPlayingPlayers() + IDLE_PLAYER_PENALTY * idlePlayers;
+    }
+
+    //grows exponentially with the system load: about 10 at 15%, 50 at 37%, 1300 at 100%
+    public double getCpuPenalty(NodeStats stats) {
+        return Math.pow(1.05d, 100 * stats.getSystemLoad()) * 10 - 10;
+    }
+
+    //a minute has 3000 frames per player
+    public double getDeficitFramePenalty(NodeStats stats) {
+        if (stats.getFramesDeficitPerMinute() < 0) {
+            return 0;
+        }
+        return Math.pow(1.03d, 500f * ((double) stats.getFramesDeficitPerMinute() / 3000f)) * 600 - 600;
+    }
+
+    public double getNullFramePenalty(NodeStats stats) {
+        if (stats.getFramesNulledPerMinute() < 0) {
+            return 0;
+        }
+        return (Math.pow(1.03d, 500f * ((double) stats.getFramesNulledPerMinute() / 3000f)) * 300 - 300) * 2;
+    }
+}
@@ -25,7 +25,6 @@
 
 package fredboat.audio.player;
 
-import com.google.common.collect.Lists;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
@@ -37,7 +36,10 @@ import fredboat.audio.queue.ITrackProvider;
 import fredboat.audio.queue.SplitAudioTrackContext;
 import fredboat.audio.queue.TrackEndMarkerHandler;
 import fredboat.commandmeta.MessagingException;
+import fredboat.util.RingBuffer;
 import fredboat.util.TextUtils;
+import lavalink.client.io.LavalinkSocket;
+import lavalink.client.io.Link;
 import lavalink.client.player.IPlayer;
 import lavalink.client.player.LavalinkPlayer;
 import lavalink.client.player.LavaplayerPlayerWrapper;
@@ -45,15 +47,18 @@ import lavalink.client.player.event.AudioEventAdapterWrapped;
 import net.dv8tion.jda.core.audio.AudioSendHandler;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 
 public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements AudioSendHandler {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(AbstractPlayer.class);
 
+    //stopped track ends received this soon after a migration are left behind by the old node, see migrateTo()
+    private static final long MIGRATION_GRACE_MILLIS = 10000;
+
     protected final IPlayer player;
     ITrackProvider audioTrackProvider;
     private AudioFrame lastFrame = null;
@@ -62,14 +67,21 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
 
     Consumer<AudioTrackContext> onPlayHook;
     Consumer<Throwable> onErrorHook;
+    //notified with the result of isPlaying() after every state transition, see updatePlayingState()
+    Consumer<Boolean> onPlayingStateHook;
+    private final Object playingStateLock = new Object();
+    private volatile boolean destroyed = false;
 
-    private static final int MAX_HISTORY_SIZE = 20;
     private AudioTrackContext queuedTrackInHistory = null;
-    private ConcurrentLinkedQueue<AudioTrackContext> historyQueue = new ConcurrentLinkedQueue<>();
+    private final RingBuffer<AudioTrackContext> historyQueue;
+
+    private final Object migrationLock = new Object();
+    private volatile long lastMigration = 0;
 
     @SuppressWarnings("LeakingThisInConstructor")
-    AbstractPlayer(String guildId, AudioConnectionFacade audioConnectionFacade) {
+    AbstractPlayer(String guildId, AudioConnectionFacade audioConnectionFacade, int historySize) {
         player = audioConnectionFacade.createPlayer(guildId);
+        historyQueue = new RingBuffer<>(historySize);
 
         player.addListener(this);
     }
@@ -83,7 +95,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         if (player.getPlayingTrack() == null) {
             loadAndPlay();
         }
-
+        updatePlayingState();
     }
 
     public void setPause(boolean pause) {
@@ -95,6 +107,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
             player.setPaused(false);
             play();
         }
+        updatePlayingState();
     }
 
     /**
@@ -104,6 +117,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         log.debug("pause()");
 
         player.setPaused(true);
+        updatePlayingState();
     }
 
     /**
@@ -134,6 +148,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
 
         context = null;
         player.stopTrack();
+        updatePlayingState();
     }
 
     public boolean isQueueEmpty() {
@@ -142,16 +157,11 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         return player.getPlayingTrack() == null && audioTrackProvider.isEmpty();
     }
 
+    /**
+     * @return the tracks between start (inclusive) and end (exclusive) of the history, most recently played first
+     */
     public List<AudioTrackContext> getTracksInHistory(int start, int end) {
-        start = Math.max(start, 0);
-        end = Math.max(end, start);
-        List<AudioTrackContext> historyList = new ArrayList<>(historyQueue);
-
-        if (historyList.size() >= end) {
-            return Lists.reverse(new ArrayList<>(historyQueue)).subList(start, end);
-        } else {
-            return new ArrayList<>();
-        }
+        return historyQueue.getRange(start, end);
     }
 
     public int getTrackCountInHistory() {
@@ -200,6 +210,13 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
         log.debug("onTrackEnd({} {} {}) called", track.getInfo().title, endReason.name(), endReason.mayStartNext);
 
+        //our own stops clear the context first, so a stopped track with a context still set comes from a migration
+        if (endReason == AudioTrackEndReason.STOPPED && context != null
+                && System.currentTimeMillis() - lastMigration < MIGRATION_GRACE_MILLIS) {
+            log.debug("Ignoring end of track {} left behind by a node migration", track.getIdentifier());
+            return;
+        }
+
         if (endReason == AudioTrackEndReason.FINISHED || endReason == AudioTrackEndReason.STOPPED) {
             updateHistoryQueue();
             loadAndPlay();
@@ -213,6 +230,35 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         } else {
             log.warn("Track " + track.getIdentifier() + " ended with unexpected reason: " + endReason);
         }
+        updatePlayingState();
+    }
+
+    @Override
+    public void onTrackStart(AudioPlayer player, AudioTrack track) {
+        updatePlayingState();
+    }
+
+    @Override
+    public void onPlayerPause(AudioPlayer player) {
+        updatePlayingState();
+    }
+
+    @Override
+    public void onPlayerResume(AudioPlayer player) {
+        updatePlayingState();
+    }
+
+    /**
+     * Re-evaluates whether this player is playing and reports it to the onPlayingStateHook. Called after every
+     * transition, from our own methods as well as from the player events, which both lavaplayer and Lavalink emit.
+     * The lock makes sure that the last report always reflects the latest state, even when events race each other.
+     * A destroyed player never reports itself as playing again.
+     */
+    void updatePlayingState() {
+        synchronized (playingStateLock) {
+            boolean playing = !destroyed && isPlaying();
+            if (onPlayingStateHook != null) onPlayingStateHook.accept(playing);
+        }
     }
 
     //request the next track from the track provider and start playing it
@@ -233,10 +279,9 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     }
 
     private void updateHistoryQueue() {
-        if (historyQueue.size() == MAX_HISTORY_SIZE) {
-            historyQueue.poll();
+        if (queuedTrackInHistory != null) {
+            historyQueue.add(queuedTrackInHistory);
         }
-        historyQueue.add(queuedTrackInHistory);
     }
 
     /**
@@ -265,9 +310,66 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         }
     }
 
+    /**
+     * @return the lavalink node this player is connected to, or null when not using lavalink or not placed yet
+     */
+    @Nullable
+    public LavalinkSocket getLavalinkNode() {
+        if (!(player instanceof LavalinkPlayer)) {
+            return null;
+        }
+        return ((LavalinkPlayer) player).getLink().getNode();
+    }
+
+    /**
+     * Moves this player to another lavalink node. The link moves the voice connection over, and the current track is
+     * restarted on the new node at the position it was at, keeping the pause state and volume. The queue is kept on
+     * our side and is not affected.
+     *
+     * @return false if this player is not a lavalink player, has been destroyed, or already is on that node
+     */
+    public boolean migrateTo(LavalinkSocket node) {
+        if (!(player instanceof LavalinkPlayer)) {
+            return false;
+        }
+        Link link = ((LavalinkPlayer) player).getLink();
+
+        synchronized (migrationLock) {
+            if (destroyed || link.getNode() == node) {
+                return false;
+            }
+            log.debug("migrateTo({})", node.getName());
+
+            AudioTrackContext current = context;
+            AudioTrack playing = player.getPlayingTrack();
+            long position = player.getTrackPosition();
+            boolean paused = player.isPaused();
+            int volume = player.getVolume();
+
+            lastMigration = System.currentTimeMillis();
+            link.changeNode(node);
+
+            player.setVolume(volume);
+            if (current != null && playing != null) {
+                AudioTrack track = playing.makeClone();
+                player.playTrack(track);
+                if (track.isSeekable() && position > 0) {
+                    player.seekTo(position);
+                }
+            }
+            player.setPaused(paused);
+        }
+        updatePlayingState();
+        return true;
+    }
+
     void destroy() {
         log.debug("destroy()");
         stop();
+        synchronized (playingStateLock) {
+            destroyed = true;
+        }
+        updatePlayingState();
         player.removeListener(this);
         if (player instanceof LavalinkPlayer) {
             ((LavalinkPlayer) player).getLink().destroy();
@@ -26,11 +26,17 @@
 package fredboat.audio.player;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import fredboat.audio.lavalink.NodePenaltyCollector;
+import fredboat.audio.lavalink.NodeSelectionStrategy;
+import fredboat.audio.lavalink.NodeSelector;
+import fredboat.audio.lavalink.NodeStats;
 import fredboat.config.property.Credentials;
 import fredboat.config.property.LavalinkConfig;
 import fredboat.jda.ShardProvider;
 import fredboat.util.DiscordUtil;
 import lavalink.client.io.Lavalink;
+import lavalink.client.io.LavalinkSocket;
+import lavalink.client.io.Link;
 import lavalink.client.io.metrics.LavalinkCollector;
 import lavalink.client.player.IPlayer;
 import lavalink.client.player.LavaplayerPlayerWrapper;
@@ -44,7 +50,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Delegate audio connections either to the local JDA instances or remote lavalink nodes
@@ -56,13 +65,15 @@ public class AudioConnectionFacade implements EventListener {
     private final Lavalink lavalink;
     private final DebugConnectionListenerProvider debugConnectionListenerProvider;
     private final AudioPlayerManager audioPlayerManager;
+    private final NodeSelector nodeSelector;
 
     public AudioConnectionFacade(LavalinkConfig lavalinkConfig, Credentials credentials,
                                  DebugConnectionListenerProvider debugConnectionListenerProvider,
                                  @Qualifier("loadAudioPlayerManager") AudioPlayerManager audioPlayerManager,
-                                 ShardProvider shardProvider) {
+                                 ShardProvider shardProvider, NodeSelectionStrategy nodeSelectionStrategy) {
         this.debugConnectionListenerProvider = debugConnectionListenerProvider;
         this.audioPlayerManager = audioPlayerManager;
+        this.nodeSelector = new NodeSelector(nodeSelectionStrategy);
         if (lavalinkConfig.getLavalinkHosts().isEmpty()) {
             lavalink = null; //local playback
             audioPlayerManager.enableGcMonitoring();
@@ -81,6 +92,7 @@ public class AudioConnectionFacade implements EventListener {
                 lavalinkHost.getPassword()));
 
         new LavalinkCollector(lavalink).register();
+        new NodePenaltyCollector(lavalink, nodeSelector).register();
     }
 
     public boolean isLocal() {
@@ -103,7 +115,15 @@ public class AudioConnectionFacade implements EventListener {
             audioManager.setSendingHandler(audioSendHandler);
             audioManager.setConnectionListener(debugConnectionListenerProvider.get(channel.getGuild()));
         } else {
-            lavalink.getLink(channel.getGuild()).connect(channel);
+            Link link = lavalink.getLink(channel.getGuild());
+            if (link.getNode() == null) {
+                //a guild without a node yet, place it ourselves instead of leaving it to the client's load balancer
+                LavalinkSocket node = selectNode();
+                if (node != null) {
+                    link.changeNode(node);
+                }
+            }
+            link.connect(channel);
         }
     }
 
@@ -115,6 +135,89 @@ public class AudioConnectionFacade implements EventListener {
         }
     }
 
+    /**
+     * @return the lavalink node that should get the next new player, or null if there is no usable node
+     */
+    @Nullable
+    public LavalinkSocket selectNode() {
+        return selectNode(null);
+    }
+
+    /**
+     * @param excluded a node that must not be selected, for example the one players are moved away from
+     * @return the lavalink node that should get the next new player, or null if there is no usable node
+     */
+    @Nullable
+    public LavalinkSocket selectNode(@Nullable LavalinkSocket excluded) {
+        return pickNode(excluded, nodeSelector::select);
+    }
+
+    /**
+     * Like {@link #selectNode(LavalinkSocket)}, but without counting a new player for the node. Call
+     * {@link #notifyPlaced(LavalinkSocket)} once a player has actually been moved to it.
+     *
+     * @param excluded a node that must not be returned, for example the one players are moved away from
+     * @return the lavalink node that would get the next new player, or null if there is no usable node
+     */
+    @Nullable
+    public LavalinkSocket findBestNode(@Nullable LavalinkSocket excluded) {
+        return pickNode(excluded, nodeSelector::findBest);
+    }
+
+    /**
+     * Count a player that was moved to the node, until the node reports its stats again.
+     */
+    public void notifyPlaced(LavalinkSocket node) {
+        nodeSelector.placed(NodeStats.of(node));
+    }
+
+    @Nullable
+    private LavalinkSocket pickNode(@Nullable LavalinkSocket excluded,
+                                    Function<Collection<NodeStats>, NodeStats> picker) {
+        if (lavalink == null) {
+            return null;
+        }
+        List<LavalinkSocket> nodes = lavalink.getNodes();
+        NodeStats picked = picker.apply(nodes.stream()
+                .filter(node -> node != excluded)
+                .map(NodeStats::of)
+                .collect(Collectors.toList()));
+        if (picked == null) {
+            return null;
+        }
+        return nodes.stream()
+                .filter(node -> node.getName().equals(picked.getName()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @return the penalty of the node according to the node selector
+     */
+    public double getNodePenalty(LavalinkSocket node) {
+        return nodeSelector.getPenalty(NodeStats.of(node));
+    }
+
+    /**
+     * Keep the node from getting new players. The lavalink rebalancer moves its existing players to other nodes.
+     *
+     * @return true if the node was not draining before
+     */
+    public boolean drainNode(String nodeName) {
+        return nodeSelector.drain(nodeName);
+    }
+
+    /**
+     * @return true if the node was draining before
+     */
+    public boolean undrainNode(String nodeName) {
+        return nodeSelector.undrain(nodeName);
+    }
+
+    public boolean isDraining(String nodeName) {
+        return nodeSelector.isDraining(nodeName);
+    }
+
     @Nullable
     public Lavalink getLavalink() {
         return lavalink;
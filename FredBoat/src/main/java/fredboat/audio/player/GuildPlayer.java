@@ -74,8 +74,8 @@ public class GuildPlayer extends AbstractPlayer {
     @SuppressWarnings("LeakingThisInConstructor")
     public GuildPlayer(Guild guild, MusicTextChannelProvider musicTextChannelProvider, JdaEntityProvider jdaEntityProvider,
                        AudioConnectionFacade audioConnectionFacade, AudioPlayerManager audioPlayerManager, EntityIO entityIO,
-                       Ratelimiter ratelimiter) {
-        super(guild.getId(), audioConnectionFacade);
+                       Ratelimiter ratelimiter, LoadScheduler loadScheduler, int historySize) {
+        super(guild.getId(), audioConnectionFacade, historySize);
         log.debug("Constructing GuildPlayer({})", guild.getIdLong());
 
         this.jdaEntityProvider = jdaEntityProvider;
@@ -88,14 +88,15 @@ public class GuildPlayer extends AbstractPlayer {
         this.guildId = guild.getIdLong();
 
         audioTrackProvider = new SimpleTrackProvider();
-        audioLoader = new AudioLoader(jdaEntityProvider, ratelimiter, audioTrackProvider, audioPlayerManager, this);
+        audioLoader = new AudioLoader(jdaEntityProvider, ratelimiter, loadScheduler, audioTrackProvider,
+                audioPlayerManager, this);
     }
 
     private void announceTrack(AudioTrackContext atc) {
         if (getRepeatMode() != RepeatMode.SINGLE && isTrackAnnounceEnabled() && !isPaused()) {
             TextChannel activeTextChannel = getActiveTextChannel();
             if (activeTextChannel != null) {
-                CentralMessaging.sendMessage(activeTextChannel,
+                CentralMessaging.sendCoalescedAnnouncement(activeTextChannel,
                         atc.i18nFormat("trackAnnounce", TextUtils.escapeAndDefuse(atc.getEffectiveTitle())));
             }
         }
@@ -309,6 +310,10 @@ public class GuildPlayer extends AbstractPlayer {
         return "[GP:" + guildId + "]";
     }
 
+    public long getGuildId() {
+        return guildId;
+    }
+
     @Nullable
     public Guild getGuild() {
         return jdaEntityProvider.getGuildById(guildId);
@@ -423,7 +428,7 @@ public class GuildPlayer extends AbstractPlayer {
         try {
             Guild guild = getGuild();
             if (guild != null) {
-                enabled = entityIO.fetchGuildConfig(guild).isTrackAnnounce();
+                enabled = entityIO.fetchGuildSettings(guild).isTrackAnnounce();
             }
         } catch (Exception ignored) {
         }
@@ -26,6 +26,8 @@
 package fredboat.audio.player;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import fredboat.audio.queue.LoadScheduler;
+import fredboat.config.property.AppConfig;
 import fredboat.db.EntityIO;
 import fredboat.jda.JdaEntityProvider;
 import fredboat.util.ratelimit.Ratelimiter;
@@ -35,10 +37,11 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Component
 public class PlayerRegistry {
@@ -46,23 +49,29 @@ public class PlayerRegistry {
     public static final float DEFAULT_VOLUME = 1f;
 
     private final Map<Long, GuildPlayer> registry = new ConcurrentHashMap<>();
+    //live view of the players that are currently playing, maintained from the players' state transitions
+    private final Set<GuildPlayer> playing = ConcurrentHashMap.newKeySet();
     private final JdaEntityProvider jdaEntityProvider;
     private final AudioConnectionFacade audioConnectionFacade;
     private final EntityIO entityIO;
     private final AudioPlayerManager audioPlayerManager;
     private final Ratelimiter ratelimiter;
     private final MusicTextChannelProvider musicTextChannelProvider;
+    private final AppConfig appConfig;
+    private final LoadScheduler loadScheduler;
 
     public PlayerRegistry(MusicTextChannelProvider musicTextChannelProvider, JdaEntityProvider jdaEntityProvider,
                           AudioConnectionFacade audioConnectionFacade, EntityIO entityIO,
                           @Qualifier("loadAudioPlayerManager") AudioPlayerManager audioPlayerManager,
-                          Ratelimiter ratelimiter) {
+                          Ratelimiter ratelimiter, AppConfig appConfig, LoadScheduler loadScheduler) {
         this.musicTextChannelProvider = musicTextChannelProvider;
         this.jdaEntityProvider = jdaEntityProvider;
         this.audioConnectionFacade = audioConnectionFacade;
         this.entityIO = entityIO;
         this.audioPlayerManager = audioPlayerManager;
         this.ratelimiter = ratelimiter;
+        this.appConfig = appConfig;
+        this.loadScheduler = loadScheduler;
     }
 
     @Nonnull
@@ -70,8 +79,10 @@ public class PlayerRegistry {
         return registry.computeIfAbsent(
                 guild.getIdLong(), guildId -> {
                     GuildPlayer p = new GuildPlayer(guild, musicTextChannelProvider, jdaEntityProvider,
-                            audioConnectionFacade, audioPlayerManager, entityIO, ratelimiter);
+                            audioConnectionFacade, audioPlayerManager, entityIO, ratelimiter, loadScheduler,
+                            appConfig.getPlayerHistorySize());
                     p.setVolume(DEFAULT_VOLUME);
+                    p.onPlayingStateHook = isPlaying -> onPlayingStateChanged(p, isPlaying);
                     return p;
                 });
     }
@@ -92,9 +103,7 @@ public class PlayerRegistry {
     }
 
     public List<GuildPlayer> getPlayingPlayers() {
-        return registry.values().stream()
-                .filter(GuildPlayer::isPlaying)
-                .collect(Collectors.toList());
+        return new ArrayList<>(playing);
     }
 
     public void destroyPlayer(Guild g) {
@@ -106,12 +115,19 @@ public class PlayerRegistry {
         if (player != null) {
             player.destroy();
             registry.remove(guildId);
+            playing.remove(player);
         }
     }
 
     public long playingCount() {
-        return registry.values().stream()
-                .filter(GuildPlayer::isPlaying)
-                .count();
+        return playing.size();
+    }
+
+    private void onPlayingStateChanged(GuildPlayer player, boolean isPlaying) {
+        if (isPlaying) {
+            playing.add(player);
+        } else {
+            playing.remove(player);
+        }
     }
 }
@@ -25,6 +25,8 @@
 
 package fredboat.audio.queue;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
@@ -39,6 +41,7 @@ import fredboat.feature.metrics.Metrics;
 import fredboat.feature.togglz.FeatureFlags;
 import fredboat.jda.JdaEntityProvider;
 import fredboat.messaging.CentralMessaging;
+import fredboat.util.HashedWheelTimer;
 import fredboat.util.TextUtils;
 import fredboat.util.ratelimit.Ratelimiter;
 import fredboat.util.rest.YoutubeAPI;
@@ -48,68 +51,172 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class AudioLoader implements AudioLoadResultHandler {
+public class AudioLoader {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(AudioLoader.class);
 
     //Matches a timestamp and the description
     private static final Pattern SPLIT_DESCRIPTION_PATTERN = Pattern.compile("(.*?)[( \\[]*((?:\\d?\\d:)?\\d?\\d:\\d\\d)[) \\]]*(.*)");
     private static final int QUEUE_TRACK_LIMIT = 10000;
+    private static final long PLAYLIST_DATA_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    //fetches the data of slow loading playlists, so that the http requests for it don't hold up the identifier queues
+    private static final ThreadPoolExecutor playlistDataExecutor = createPlaylistDataExecutor();
+    private static final HashedWheelTimer playlistDataTimeouts
+            = new HashedWheelTimer("playlist-data-timeouts", 100, TimeUnit.MILLISECONDS, 512);
+    //shared by all guilds, so a playlist queued by several users is fetched once. keyed by the playlist keys of the
+    // importers, holds the running fetches too
+    private static final Cache<String, CompletableFuture<PlaylistInfo>> playlistDataCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(1000)
+            .build();
 
     private final JdaEntityProvider jdaEntityProvider;
     private final Ratelimiter ratelimiter;
     private final ITrackProvider trackProvider;
     private final AudioPlayerManager playerManager;
     private final GuildPlayer gplayer;
-    private final ConcurrentLinkedQueue<IdentifierContext> identifierQueue = new ConcurrentLinkedQueue<>();
-    private IdentifierContext context = null;
-    private volatile boolean isLoading = false;
+    private final LoadScheduler loadScheduler;
+    //identifiers are submitted to the load scheduler in the order they were requested, even though the playlist data
+    // of them is fetched concurrently. guarded by this
+    private CompletableFuture<Void> admissions = CompletableFuture.completedFuture(null);
 
-    public AudioLoader(JdaEntityProvider jdaEntityProvider, Ratelimiter ratelimiter, ITrackProvider trackProvider,
-                       AudioPlayerManager playerManager, GuildPlayer gplayer) {
+    public AudioLoader(JdaEntityProvider jdaEntityProvider, Ratelimiter ratelimiter, LoadScheduler loadScheduler,
+                       ITrackProvider trackProvider, AudioPlayerManager playerManager, GuildPlayer gplayer) {
         this.jdaEntityProvider = jdaEntityProvider;
         this.ratelimiter = ratelimiter;
+        this.loadScheduler = loadScheduler;
         this.trackProvider = trackProvider;
         this.playerManager = playerManager;
         this.gplayer = gplayer;
     }
 
     public void loadAsync(IdentifierContext ic) {
+        CompletableFuture<PlaylistInfo> playlistData = getSlowLoadingPlaylistData(ic.identifier);
+
+        synchronized (this) {
+            admissions = admissions
+                    .thenCompose(ignored -> playlistData)
+                    .handle((playlistInfo, throwable) -> {
+                        admit(ic, playlistInfo, throwable);
+                        return null;
+                    });
+        }
+    }
 
-        if (ratelimitIfSlowLoadingPlaylistAndAnnounce(ic)) {
-            identifierQueue.add(ic);
-            if (!isLoading) {
-                loadNextAsync();
+    private void admit(IdentifierContext ic, @Nullable PlaylistInfo playlistInfo, @Nullable Throwable throwable) {
+        try {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable;
+                if (cause instanceof FriendlyException
+                        && ((FriendlyException) cause).severity == FriendlyException.Severity.COMMON) {
+                    ic.reply(ic.i18nFormat("loadErrorCommon", ic.identifier, cause.getMessage()));
+                } else {
+                    ic.reply(ic.i18nFormat("loadErrorSusp", ic.identifier));
+                    TextUtils.handleException(cause, ic);
+                }
+                return;
             }
+
+            if (ratelimitIfSlowLoadingPlaylistAndAnnounce(ic, playlistInfo)) {
+                //big playlists take several turns of the scheduler
+                int weight = playlistInfo == null ? 1 : 1 + playlistInfo.getTotalTracks() / 10;
+                loadScheduler.submit(gplayer.getGuildId(), weight, () -> load(ic));
+            }
+        } catch (Throwable th) {
+            log.error("Failed to admit {} for loading", ic.identifier, th);
         }
     }
 
-    private void loadNextAsync() {
+    /**
+     * Called by the load scheduler.
+     *
+     * @return a future that is completed once the item has been handled
+     */
+    private CompletableFuture<Void> load(IdentifierContext ic) {
+        CompletableFuture<Void> load = new CompletableFuture<>();
         try {
-            IdentifierContext ic = identifierQueue.poll();
-            if (ic != null) {
-                isLoading = true;
-                context = ic;
-
-                if (gplayer.getTrackCount() >= QUEUE_TRACK_LIMIT) {
-                    context.replyWithName(context.i18nFormat("loadQueueTrackLimit", QUEUE_TRACK_LIMIT));
-                    isLoading = false;
-                    return;
-                }
+            if (gplayer.getTrackCount() >= QUEUE_TRACK_LIMIT) {
+                ic.replyWithName(ic.i18nFormat("loadQueueTrackLimit", QUEUE_TRACK_LIMIT));
+                load.complete(null);
+                return load;
+            }
 
-                playerManager.loadItem(ic.identifier, this);
-            } else {
-                isLoading = false;
+            if (!ic.isSplit() && loadPipelinedIfPaste(ic, load)) {
+                return load;
             }
+            //a load may outlive its turn with the load scheduler, so each one gets its own handler. that way it can't
+            // mix up its item with the one of the next load of the guild
+            playerManager.loadItem(ic.identifier, new ResultHandler(ic, load));
         } catch (Throwable th) {
-            handleThrowable(context, th);
-            isLoading = false;
+            handleThrowable(ic, th);
+            load.complete(null);
+        }
+        return load;
+    }
+
+    /**
+     * Paste playlists are imported pipelined: their tracks are queued in order while the rest of the paste is still
+     * loading.
+     *
+     * @param load completed once the import is done
+     * @return true if the identifier is a paste playlist and its import has been started
+     */
+    private boolean loadPipelinedIfPaste(IdentifierContext ic, CompletableFuture<Void> load) {
+        PlaylistImportSourceManager importer = playerManager.source(PlaylistImportSourceManager.class);
+        if (importer == null) {
+            return false;
+        }
+        CompletableFuture<AudioPlaylist> pipelined = importer.loadPipelined(ic.identifier,
+                tracks -> queuePipelinedTracks(ic, tracks));
+        if (pipelined == null) {
+            return false;
+        }
+
+        pipelined.whenComplete((playlist, throwable) -> {
+            try {
+                if (throwable != null) {
+                    Metrics.trackLoadsFailed.inc();
+                    boolean wrapped = throwable instanceof CompletionException && throwable.getCause() != null;
+                    handleThrowable(ic, wrapped ? throwable.getCause() : throwable);
+                } else if (playlist == null) { //empty paste
+                    ic.reply(ic.i18nFormat("loadNoMatches", ic.identifier));
+                } else {
+                    ic.reply(ic.i18nFormat("loadListSuccess", playlist.getTracks().size(), playlist.getName()));
+                }
+            } catch (Throwable th) {
+                handleThrowable(ic, th);
+            }
+            load.complete(null);
+        });
+        return true;
+    }
+
+    private void queuePipelinedTracks(IdentifierContext ic, List<AudioTrack> tracks) {
+        Metrics.tracksLoaded.inc(tracks.size());
+        List<AudioTrackContext> toAdd = new ArrayList<>();
+        for (AudioTrack at : tracks) {
+            toAdd.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+        }
+        trackProvider.addAll(toAdd);
+        if (!gplayer.isPaused()) {
+            gplayer.play();
         }
     }
 
@@ -117,11 +224,11 @@ public class AudioLoader implements AudioLoadResultHandler {
      * If the requested item is a slow loading playlist that we know of, check for rate limits and announce to the user
      * that it might take a while to gather it.
      *
+     * @param playlistInfo data about the slow loading playlist, or null if the item is not one
      * @return false if the user is not allowed to load the playlist, true if he is
      */
-    private boolean ratelimitIfSlowLoadingPlaylistAndAnnounce(IdentifierContext ic) {
-        PlaylistInfo playlistInfo = getSlowLoadingPlaylistData(ic.identifier);
-
+    private boolean ratelimitIfSlowLoadingPlaylistAndAnnounce(IdentifierContext ic,
+                                                              @Nullable PlaylistInfo playlistInfo) {
         if (playlistInfo == null) //not a slow loading playlist
             return true;
         else {
@@ -147,102 +254,85 @@ public class AudioLoader implements AudioLoadResultHandler {
     /**
      * this function needs to be updated if we add more manual playlist loaders
      * currently it only covers the Hastebin and Spotify playlists
+     * <p>
+     * The data is fetched on a bounded executor with a timeout, and cached by the playlist key of the importer.
      *
      * @param identifier the very same identifier that the playlist loaders will be presented with if we asked them to
      *                   load a playlist
-     * @return null if it's not a playlist that we manually parse, some data about it if it is
+     * @return a future of null if it's not a playlist that we manually parse, of some data about it if it is
      */
-    private PlaylistInfo getSlowLoadingPlaylistData(String identifier) {
+    private CompletableFuture<PlaylistInfo> getSlowLoadingPlaylistData(String identifier) {
 
-        PlaylistInfo playlistInfo = null;
-        PlaylistImporter pi = playerManager.source(SpotifyPlaylistSourceManager.class);
-        if (pi != null) {
-            playlistInfo = pi.getPlaylistDataBlocking(identifier);
-        }
+        PlaylistImporter importer = playerManager.source(SpotifyPlaylistSourceManager.class);
+        String key = importer != null ? importer.getPlaylistKey(identifier) : null;
 
-        if (playlistInfo == null) {
-            pi = playerManager.source(PlaylistImportSourceManager.class);
-            if (pi != null) {
-                playlistInfo = pi.getPlaylistDataBlocking(identifier);
-            }
+        if (key == null) {
+            importer = playerManager.source(PlaylistImportSourceManager.class);
+            key = importer != null ? importer.getPlaylistKey(identifier) : null;
         }
 
-        //can be null
-        return playlistInfo;
-    }
-
-    @Override
-    public void trackLoaded(AudioTrack at) {
-        Metrics.tracksLoaded.inc();
-        try {
-            if(context.isSplit()){
-                loadSplit(at, context);
-            } else {
-
-                if (!context.isQuiet()) {
-                    context.reply(gplayer.isPlaying() ?
-                            context.i18nFormat("loadSingleTrack", TextUtils.escapeAndDefuse(at.getInfo().title))
-                            :
-                            context.i18nFormat("loadSingleTrackAndPlay", TextUtils.escapeAndDefuse(at.getInfo().title))
-                    );
-                } else {
-                    log.info("Quietly loaded " + at.getIdentifier());
-                }
-
-                at.setPosition(context.getPosition());
-
-                trackProvider.add(new AudioTrackContext(jdaEntityProvider, at, context.getMember()));
-                if (!gplayer.isPaused()) {
-                    gplayer.play();
-                }
-            }
-        } catch (Throwable th) {
-            handleThrowable(context, th);
+        if (key == null) { //not a slow loading playlist
+            return CompletableFuture.completedFuture(null);
         }
-        loadNextAsync();
-    }
 
-    @Override
-    public void playlistLoaded(AudioPlaylist ap) {
-        Metrics.tracksLoaded.inc(ap.getTracks() == null ? 0 : ap.getTracks().size());
+        final PlaylistImporter pi = importer;
+        final String playlistKey = key;
+        CompletableFuture<PlaylistInfo> playlistData;
         try {
-            if(context.isSplit()){
-                context.reply(context.i18n("loadPlaySplitListFail"));
-                loadNextAsync();
-                return;
-            }
+            playlistData = playlistDataCache.get(playlistKey, () -> fetchPlaylistData(pi, identifier));
+        } catch (ExecutionException e) {
+            playlistData = new CompletableFuture<>();
+            playlistData.completeExceptionally(e.getCause());
+            return playlistData;
+        }
 
-            List<AudioTrackContext> toAdd = new ArrayList<>();
-            for (AudioTrack at : ap.getTracks()) {
-                toAdd.add(new AudioTrackContext(jdaEntityProvider, at, context.getMember()));
-            }
-            trackProvider.addAll(toAdd);
-            context.reply(context.i18nFormat("loadListSuccess", ap.getTracks().size(), ap.getName()));
-            if (!gplayer.isPaused()) {
-                gplayer.play();
+        //don't keep failures around
+        final CompletableFuture<PlaylistInfo> cached = playlistData;
+        cached.whenComplete((playlistInfo, throwable) -> {
+            if (throwable != null) {
+                playlistDataCache.asMap().remove(playlistKey, cached);
             }
-        } catch (Throwable th) {
-            handleThrowable(context, th);
-        }
-        loadNextAsync();
+        });
+        return cached;
     }
 
-    @Override
-    public void noMatches() {
+    private static CompletableFuture<PlaylistInfo> fetchPlaylistData(PlaylistImporter importer, String identifier) {
+        CompletableFuture<PlaylistInfo> result = new CompletableFuture<>();
+        final Future<?> task;
         try {
-            context.reply(context.i18nFormat("loadNoMatches", context.identifier));
-        } catch (Throwable th) {
-            handleThrowable(context, th);
+            task = playlistDataExecutor.submit(() -> {
+                try {
+                    result.complete(importer.getPlaylistDataBlocking(identifier));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new FriendlyException("Too many playlists are being loaded right now. "
+                    + "Please try again later.", FriendlyException.Severity.COMMON, e));
+            return result;
         }
-        loadNextAsync();
-    }
 
-    @Override
-    public void loadFailed(FriendlyException fe) {
-        Metrics.trackLoadsFailed.inc();
-        handleThrowable(context, fe);
+        HashedWheelTimer.Timeout timeout = playlistDataTimeouts.schedule(() -> {
+            if (result.completeExceptionally(new FriendlyException("Timed out while loading the playlist. "
+                    + "Please try again later.", FriendlyException.Severity.COMMON, null))) {
+                task.cancel(true);
+            }
+        }, PLAYLIST_DATA_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        result.whenComplete((playlistInfo, throwable) -> timeout.cancel());
+        return result;
+    }
 
-        loadNextAsync();
+    private static ThreadPoolExecutor createPlaylistDataExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(200), r -> {
+            Thread t = new Thread(r, "playlist-data-loader-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     private void loadSplit(AudioTrack at, IdentifierContext ic){
@@ -327,7 +417,7 @@ public class AudioLoader implements AudioLoadResultHandler {
                     .append(ic.i18nFormat("loadPlaylistTooMany", list.size()));
         }
 
-        context.reply(mb.build());
+        ic.reply(mb.build());
     }
 
     @SuppressWarnings("ThrowableResultIgnored")
@@ -337,20 +427,20 @@ public class AudioLoader implements AudioLoadResultHandler {
                 FriendlyException fe = (FriendlyException) th;
                 if (fe.severity == FriendlyException.Severity.COMMON) {
                     if (ic.getTextChannel() != null) {
-                        context.reply(ic.i18nFormat("loadErrorCommon", context.identifier, fe.getMessage()));
+                        ic.reply(ic.i18nFormat("loadErrorCommon", ic.identifier, fe.getMessage()));
                     } else {
                         log.error("Error while loading track ", th);
                     }
                 } else if (ic.getTextChannel() != null) {
-                    context.reply(ic.i18nFormat("loadErrorSusp", context.identifier));
+                    ic.reply(ic.i18nFormat("loadErrorSusp", ic.identifier));
                     Throwable exposed = fe.getCause() == null ? fe : fe.getCause();
-                    TextUtils.handleException(exposed, context);
+                    TextUtils.handleException(exposed, ic);
                 } else {
                     log.error("Error while loading track ", th);
                 }
             } else if (ic.getTextChannel() != null) {
-                context.reply(ic.i18n("loadErrorSusp"));
-                TextUtils.handleException(th, context);
+                ic.reply(ic.i18n("loadErrorSusp"));
+                TextUtils.handleException(th, ic);
             } else {
                 log.error("Error while loading track ", th);
             }
@@ -360,4 +450,91 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
     }
 
+    /**
+     * Handles the result of loading the item of a single load.
+     */
+    private class ResultHandler implements AudioLoadResultHandler {
+
+        private final IdentifierContext ic;
+        private final CompletableFuture<Void> load;
+
+        private ResultHandler(IdentifierContext ic, CompletableFuture<Void> load) {
+            this.ic = ic;
+            this.load = load;
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack at) {
+            Metrics.tracksLoaded.inc();
+            try {
+                if(ic.isSplit()){
+                    loadSplit(at, ic);
+                } else {
+
+                    if (!ic.isQuiet()) {
+                        ic.reply(gplayer.isPlaying() ?
+                                ic.i18nFormat("loadSingleTrack", TextUtils.escapeAndDefuse(at.getInfo().title))
+                                :
+                                ic.i18nFormat("loadSingleTrackAndPlay", TextUtils.escapeAndDefuse(at.getInfo().title))
+                        );
+                    } else {
+                        log.info("Quietly loaded " + at.getIdentifier());
+                    }
+
+                    at.setPosition(ic.getPosition());
+
+                    trackProvider.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+                    if (!gplayer.isPaused()) {
+                        gplayer.play();
+                    }
+                }
+            } catch (Throwable th) {
+                handleThrowable(ic, th);
+            }
+            load.complete(null);
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist ap) {
+            Metrics.tracksLoaded.inc(ap.getTracks() == null ? 0 : ap.getTracks().size());
+            try {
+                if(ic.isSplit()){
+                    ic.reply(ic.i18n("loadPlaySplitListFail"));
+                    load.complete(null);
+                    return;
+                }
+
+                List<AudioTrackContext> toAdd = new ArrayList<>();
+                for (AudioTrack at : ap.getTracks()) {
+                    toAdd.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+                }
+                trackProvider.addAll(toAdd);
+                ic.reply(ic.i18nFormat("loadListSuccess", ap.getTracks().size(), ap.getName()));
+                if (!gplayer.isPaused()) {
+                    gplayer.play();
+                }
+            } catch (Throwable th) {
+                handleThrowable(ic, th);
+            }
+            load.complete(null);
+        }
+
+        @Override
+        public void noMatches() {
+            try {
+                ic.reply(ic.i18nFormat("loadNoMatches", ic.identifier));
+            } catch (Throwable th) {
+                handleThrowable(ic, th);
+            }
+            load.complete(null);
+        }
+
+        @Override
+        public void loadFailed(FriendlyException fe) {
+            Metrics.trackLoadsFailed.inc();
+            handleThrowable(ic, fe);
+
+            load.complete(null);
+        }
+    }
 }
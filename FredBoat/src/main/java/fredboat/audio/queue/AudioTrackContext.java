@@ -33,16 +33,14 @@ import fredboat.messaging.internal.LeakSafeContext;
 import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.TextChannel;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.concurrent.ThreadLocalRandom;
 
-public class AudioTrackContext extends LeakSafeContext implements Comparable<AudioTrackContext> {
+public class AudioTrackContext extends LeakSafeContext {
 
     protected final AudioTrack track;
     private final long added;
-    private int rand;
-    private final long trackId; //used to identify this track even when the track gets cloned and the rand reranded
+    private final long trackId; //used to identify this track even when the track gets cloned
 
     public AudioTrackContext(JdaEntityProvider jdaEntityProvider, AudioTrack at, Member member) {
         this(jdaEntityProvider, at, member.getGuild().getIdLong(), member.getUser().getIdLong());
@@ -54,7 +52,6 @@ public class AudioTrackContext extends LeakSafeContext implements Comparable<Aud
         super(jdaEntityProvider, -1, guildId, userId);
         this.track = at;
         this.added = System.currentTimeMillis();
-        this.rand = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
         this.trackId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
     }
 
@@ -74,23 +71,10 @@ public class AudioTrackContext extends LeakSafeContext implements Comparable<Aud
         return added;
     }
 
-    public int getRand() {
-        return rand;
-    }
-
     public long getTrackId() {
         return trackId;
     }
 
-    public void setRand(int rand) {
-        this.rand = rand;
-    }
-
-    public int randomize() {
-        rand = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
-        return rand;
-    }
-
     public AudioTrackContext makeClone() {
         return new AudioTrackContext(jdaEntityProvider, track.makeClone(), guildId, userId);
     }
@@ -112,11 +96,6 @@ public class AudioTrackContext extends LeakSafeContext implements Comparable<Aud
         return 0;
     }
 
-    @Override
-    public int compareTo(@Nonnull AudioTrackContext atc) {
-        return Integer.compare(rand, atc.getRand());
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -124,7 +103,7 @@ public class AudioTrackContext extends LeakSafeContext implements Comparable<Aud
 
         AudioTrackContext that = (AudioTrackContext) o;
 
-        if (getRand() != that.getRand()) return false;
+        if (trackId != that.trackId) return false;
         if (!getTrack().equals(that.getTrack())) return false;
         //noinspection SimplifiableIfStatement
         if (userId != that.userId) return false;
@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.queue;
+
+import fredboat.config.property.AppConfig;
+import fredboat.feature.metrics.Metrics;
+import fredboat.util.HashedWheelTimer;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Schedules the loads of all audio loaders, with a global cap on the loads running at the same time.
+ * <p>
+ * Each guild has its own queue, of which at most one load runs at a time, so the loads of a guild happen in order.
+ * The guilds take turns in a deficit round robin: each turn a guild is credited with a quantum, and may start its
+ * next load once its credit covers the weight of it. Heavy loads like big playlists thereby need several turns, and
+ * a guild queueing lots of them can't starve the others.
+ */
+@Component
+public class LoadScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadScheduler.class);
+
+    //credit given to a guild per turn, equal to the weight of a small playlist
+    private static final int QUANTUM = 10;
+    private static final int MAX_WEIGHT = 100;
+    //loads that take longer than this are assumed to be lost and stop occupying their slot. should they finish after
+    // all, they still report their own results, independently of the next load of the guild
+    private static final long LOAD_TIMEOUT_MINUTES = 15;
+
+    private final int maxConcurrentLoads;
+    //starts the loads; starting one only hands it off to lavaplayer, so a few threads are plenty
+    private final ExecutorService starter;
+    private final HashedWheelTimer loadTimeouts = new HashedWheelTimer("load-scheduler-timeouts", 1, TimeUnit.SECONDS,
+            1024);
+
+    //all guarded by this
+    private final Long2ObjectOpenHashMap<GuildQueue> queues = new Long2ObjectOpenHashMap<>();
+    //guilds with pending loads and none running, in the order of their turns
+    private final ArrayDeque<GuildQueue> turns = new ArrayDeque<>();
+    private int running = 0;
+    private int queued = 0;
+
+    public LoadScheduler(AppConfig appConfig) {
+        this.maxConcurrentLoads = Math.max(1, appConfig.getMaxConcurrentLoads());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.starter = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "load-scheduler-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param guildId the guild the load belongs to
+     * @param weight  the cost of the load, 1 for a single track
+     * @param load    starts the load, and returns a stage that completes once it is done
+     */
+    public void submit(long guildId, int weight, Supplier<? extends CompletionStage<?>> load) {
+        PendingLoad pendingLoad = new PendingLoad(Math.min(Math.max(weight, 1), MAX_WEIGHT), load);
+        synchronized (this) {
+            GuildQueue queue = queues.get(guildId);
+            if (queue == null) {
+                queue = new GuildQueue(guildId);
+                queues.put(guildId, queue);
+            }
+            queue.pending.add(pendingLoad);
+            queued++;
+            if (!queue.running && !queue.hasTurn) {
+                queue.hasTurn = true;
+                turns.add(queue);
+            }
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrentLoads && !turns.isEmpty()) {
+                GuildQueue queue = turns.poll();
+                PendingLoad next = queue.pending.peek();
+                queue.deficit += QUANTUM;
+                if (queue.deficit < next.weight) {
+                    turns.add(queue); //not enough credit yet, wait for the next turn
+                    continue;
+                }
+
+                queue.hasTurn = false;
+                queue.deficit -= next.weight;
+                queue.pending.poll();
+                queue.running = true;
+                queued--;
+                running++;
+                toStart.add(() -> start(queue, next));
+            }
+            Metrics.loadsQueued.set(queued);
+            Metrics.loadsRunning.set(running);
+        }
+        toStart.forEach(starter::execute);
+    }
+
+    private void start(GuildQueue queue, PendingLoad pendingLoad) {
+        Metrics.loadWaitTime.observe((System.nanoTime() - pendingLoad.submitted) / 1e9);
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Runnable onFinished = () -> {
+            if (finished.compareAndSet(false, true)) {
+                finished(queue);
+            }
+        };
+        HashedWheelTimer.Timeout timeout = loadTimeouts.schedule(() -> {
+            if (!finished.get()) {
+                log.warn("Load for guild {} did not finish within {} minutes", queue.guildId, LOAD_TIMEOUT_MINUTES);
+                onFinished.run();
+            }
+        }, LOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+
+        try {
+            pendingLoad.load.get().whenComplete((result, throwable) -> {
+                timeout.cancel();
+                onFinished.run();
+            });
+        } catch (Exception e) {
+            log.error("Failed to start load for guild {}", queue.guildId, e);
+            timeout.cancel();
+            onFinished.run();
+        }
+    }
+
+    private void finished(GuildQueue queue) {
+        synchronized (this) {
+            running--;
+            queue.running = false;
+            if (!queue.pending.isEmpty()) {
+                queue.hasTurn = true;
+                turns.add(queue);
+            } else {
+                queue.deficit = 0;
+                queues.remove(queue.guildId);
+            }
+        }
+        dispatch();
+    }
+
+    public synchronized int getQueuedLoads() {
+        return queued;
+    }
+
+    public synchronized int getRunningLoads() {
+        return running;
+    }
+
+    private static class GuildQueue {
+        private final long guildId;
+        private final ArrayDeque<PendingLoad> pending = new ArrayDeque<>();
+        private int deficit = 0;
+        private boolean running = false;
+        private boolean hasTurn = false;
+
+        private GuildQueue(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private static class PendingLoad {
+        private final int weight;
+        private final Supplier<? extends CompletionStage<?>> load;
+        private final long submitted = System.nanoTime();
+
+        private PendingLoad(int weight, Supplier<? extends CompletionStage<?>> load) {
+            this.weight = weight;
+            this.load = load;
+        }
+    }
+}
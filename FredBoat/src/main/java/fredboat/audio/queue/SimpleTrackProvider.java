@@ -25,18 +25,28 @@
 
 package fredboat.audio.queue;
 
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class SimpleTrackProvider extends AbstractTrackProvider {
 
-    private volatile ConcurrentLinkedQueue<AudioTrackContext> queue = new ConcurrentLinkedQueue<>();
+    //when appending a track to the back of the shuffled queue, the gap to the previous key will be at most this big
+    private static final long SHUFFLE_APPEND_STEP = 1L << 32;
+
+    //immutable snapshots of the queue in regular and in shuffled order. writes happen while holding the lock of this
+    // provider, reads can just grab the current version of the trees
+    private volatile TrackTree queue = TrackTree.EMPTY;
+    private volatile TrackTree shuffledQueue = TrackTree.EMPTY;
+    //trackId -> key of the track in the queue / shuffledQueue tree, guarded by this
+    private final Long2LongOpenHashMap queueKeys = new Long2LongOpenHashMap();
+    private final Long2LongOpenHashMap shuffleKeys = new Long2LongOpenHashMap();
+    private long nextQueueKey = 0; //guarded by this
     private AudioTrackContext lastTrack = null;
-    private List<AudioTrackContext> cachedShuffledQueue = new ArrayList<>();
-    private boolean shouldUpdateShuffledQueue = true;
 
     @Override
     public void skipped() {
@@ -49,62 +59,51 @@ public class SimpleTrackProvider extends AbstractTrackProvider {
     }
 
     @Override
-    public AudioTrackContext provideAudioTrack() {
+    public synchronized AudioTrackContext provideAudioTrack() {
         if (getRepeatMode() == RepeatMode.SINGLE && lastTrack != null) {
             return lastTrack.makeClone();
         }
         if (getRepeatMode() == RepeatMode.ALL && lastTrack != null) {
             //add a fresh copy of the last track back to the queue, if the queue is being repeated
-            AudioTrackContext clone = lastTrack.makeClone();
-            if (isShuffle()) {
-                clone.setRand(Integer.MAX_VALUE); //put it at the back of the shuffled queue
-                shouldUpdateShuffledQueue = true;
-            }
-            queue.add(clone);
+            //if shuffled, it is put at the back of the shuffled queue
+            append(lastTrack.makeClone(), true);
         }
-        if (isShuffle()) {
-            List<AudioTrackContext> list = getAsListOrdered();
-
-            if (list.isEmpty()) {
-                return null;
-            }
-
-            shouldUpdateShuffledQueue = true;
-            lastTrack = list.get(0);
-            queue.remove(lastTrack);
-            return lastTrack;
-        } else {
-            lastTrack = queue.poll();
-            return lastTrack;
+        lastTrack = isShuffle() ? shuffledQueue.first() : queue.first();
+        if (lastTrack != null) {
+            removeFromQueue(lastTrack);
         }
+        return lastTrack;
     }
 
     @Override
-    public boolean remove(AudioTrackContext atc) {
-        if (queue.remove(atc)) {
-            shouldUpdateShuffledQueue = true;
-            return true;
-        } else {
-            return false;
-        }
+    public synchronized boolean remove(AudioTrackContext atc) {
+        return removeFromQueue(atc);
     }
 
     @Override
-    public void removeAll(Collection<AudioTrackContext> tracks) {
-        if (queue.removeAll(tracks)) {
-            shouldUpdateShuffledQueue = true;
+    public synchronized void removeAll(Collection<AudioTrackContext> tracks) {
+        for (AudioTrackContext atc : tracks) {
+            removeFromQueue(atc);
         }
     }
 
     @Override
-    public void removeAllById(Collection<Long> trackIds) {
-        queue.removeIf(audioTrackContext -> trackIds.contains(audioTrackContext.getTrackId()));
-        shouldUpdateShuffledQueue = true;
+    public synchronized void removeAllById(Collection<Long> trackIds) {
+        TrackTree tree = queue;
+        TrackTree shuffledTree = shuffledQueue;
+        for (Long trackId : trackIds) {
+            if (queueKeys.containsKey((long) trackId)) {
+                tree = tree.remove(queueKeys.remove((long) trackId));
+                shuffledTree = shuffledTree.remove(shuffleKeys.remove((long) trackId));
+            }
+        }
+        queue = tree;
+        shuffledQueue = shuffledTree;
     }
 
     @Override
     public AudioTrackContext getTrack(int index) {
-        return getAsListOrdered().get(index);
+        return getOrderedTree().get(index);
     }
 
     /**
@@ -117,72 +116,28 @@ public class SimpleTrackProvider extends AbstractTrackProvider {
         int startIndex = indexA < indexB ? indexA : indexB;
         int endIndex = indexA < indexB ? indexB : indexA;
 
-        //Collect tracks between the two indices
-        int i = 0;
-        List<AudioTrackContext> result = new ArrayList<>();
-        for (AudioTrackContext atc : getAsListOrdered()) {
-            if (i >= startIndex && i < endIndex)
-                result.add(atc);
-            i++;
-            if (i >= endIndex) break;//abort early if we're done
-        }
-
-        //trigger shuffle queue update if we found tracks to remove
-        if (result.size() > 0) shouldUpdateShuffledQueue = true;
-        return result;
+        return getOrderedTree().range(startIndex, endIndex);
     }
 
     @Override
     public List<AudioTrackContext> getAsList() {
-        return new ArrayList<>(queue);
-    }
-
-    @Override
-    public void setShuffle(boolean shuffle) {
-        super.setShuffle(shuffle);
-        //this is needed because, related to the repeat all mode, turning shuffle off, skipping a track, turning shuffle
-        //on will cause an incorrect playlist to show with the list command and may lead to a bug of an
-        //IllegalStateException due to trying to play the same AudioTrack object twice
-        if (shuffle) shouldUpdateShuffledQueue = true;
+        return queue.toList();
     }
 
+    /**
+     * Builds a fresh shuffled order of all queued tracks. This is the only operation that touches every track of the
+     * shuffled queue, all other modifications keep the existing shuffled order intact.
+     */
     @Override
     public synchronized void reshuffle() {
-        queue.forEach(AudioTrackContext::randomize);
-        shouldUpdateShuffledQueue = true;
+        List<AudioTrackContext> tracks = queue.toList();
+        Collections.shuffle(tracks, ThreadLocalRandom.current());
+        rebuildShuffledQueue(tracks);
     }
 
     @Override
-    public synchronized List<AudioTrackContext> getAsListOrdered() {
-        if (!isShuffle()) {
-            return getAsList();
-        }
-
-        if (!shouldUpdateShuffledQueue) {
-            return cachedShuffledQueue;
-        }
-
-        List<AudioTrackContext> newList = new ArrayList<>();
-
-        //Update the new queue
-        newList.addAll(getAsList());
-
-        Collections.sort(newList);
-
-        //adjust rand values so they are evenly spread out
-        int i = 0;
-        int size = newList.size();
-        for (AudioTrackContext atc : newList) {
-            //this will calculate a value between 0.0 < rand < 1.0 multiplied by the full integer range
-            int rand = (int) (((i / (size + 1.0)) + (1.0 / (size + 1.0))) * Integer.MAX_VALUE);
-            atc.setRand(rand);
-            i++;
-        }
-
-        cachedShuffledQueue = newList;
-
-        shouldUpdateShuffledQueue = false;
-        return newList;
+    public List<AudioTrackContext> getAsListOrdered() {
+        return getOrderedTree().toList();
     }
 
     @Override
@@ -196,62 +151,142 @@ public class SimpleTrackProvider extends AbstractTrackProvider {
     }
 
     @Override
-    public void add(AudioTrackContext track) {
-        shouldUpdateShuffledQueue = true;
-        queue.add(track);
+    public synchronized void add(AudioTrackContext track) {
+        append(track, false);
     }
 
     @Override
-    public void addAll(Collection<AudioTrackContext> tracks) {
-        shouldUpdateShuffledQueue = true;
-        queue.addAll(tracks);
+    public synchronized void addAll(Collection<AudioTrackContext> tracks) {
+        for (AudioTrackContext atc : tracks) {
+            append(atc, false);
+        }
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         lastTrack = null;
-        shouldUpdateShuffledQueue = true;
-        queue.clear();
+        queueKeys.clear();
+        shuffleKeys.clear();
+        queue = TrackTree.EMPTY;
+        shuffledQueue = TrackTree.EMPTY;
     }
 
     @Override
     public long getDurationMillis() {
-        long duration = 0;
-        for (AudioTrackContext atc : queue) {
-            if (!atc.getTrack().getInfo().isStream) {
-                duration += atc.getEffectiveDuration();
-            }
-        }
-        return duration;
+        return queue.getDurationMillis();
     }
 
     @Override
     public int streamsCount() {
-        int streams = 0;
-        for (AudioTrackContext atc : queue) {
-            if (atc.getTrack().getInfo().isStream) {
-                streams++;
-            }
-        }
-        return streams;
+        return queue.getStreamsCount();
     }
 
     @Override
     public AudioTrackContext peek() {
-        if (isShuffle() && queue.size() > 0) {
-            return getAsListOrdered().get(0);
-        } else {
-            return queue.peek();
-        }
+        return getOrderedTree().first();
     }
 
     @Override
-    public boolean isUserTrackOwner(long userId, Collection<Long> trackIds) {
-        for (AudioTrackContext atc : getAsListOrdered()) {
-            if (trackIds.contains(atc.getTrackId()) && atc.getUserId() != userId) {
+    public synchronized boolean isUserTrackOwner(long userId, Collection<Long> trackIds) {
+        for (Long trackId : trackIds) {
+            if (!queueKeys.containsKey((long) trackId)) {
+                continue;
+            }
+            AudioTrackContext atc = queue.getByKey(queueKeys.get((long) trackId));
+            if (atc != null && atc.getUserId() != userId) {
                 return false;
             }
         }
         return true;
     }
+
+    private TrackTree getOrderedTree() {
+        return isShuffle() ? shuffledQueue : queue;
+    }
+
+    /**
+     * Adds the track to the back of the regular queue. In the shuffled queue, it is put either at the back, or at a
+     * uniformly random position, so that the shuffled queue always is a random permutation of the regular one.
+     * <p>
+     * Needs to be called while holding the lock of this provider.
+     */
+    private void append(AudioTrackContext atc, boolean backOfShuffledQueue) {
+        long key = nextQueueKey++;
+        queueKeys.put(atc.getTrackId(), key);
+        queue = queue.insert(key, atc);
+
+        long shuffleKey = backOfShuffledQueue ? findShuffleKeyAtBack() : findRandomShuffleKey();
+        if (shuffleKey < 0) {
+            //no room left between the neighbouring keys, spread out all keys evenly again and retry
+            rebuildShuffledQueue(shuffledQueue.toList());
+            shuffleKey = backOfShuffledQueue ? findShuffleKeyAtBack() : findRandomShuffleKey();
+        }
+        shuffleKeys.put(atc.getTrackId(), shuffleKey);
+        shuffledQueue = shuffledQueue.insert(shuffleKey, atc);
+    }
+
+    /**
+     * @return an unused key behind the last track of the shuffled queue, or -1 if there is none
+     */
+    private long findShuffleKeyAtBack() {
+        TrackTree tree = shuffledQueue;
+        long lower = tree.isEmpty() ? 0 : tree.keyAt(tree.size() - 1);
+        long gap = Long.MAX_VALUE - lower;
+        if (gap < 2) {
+            return -1;
+        }
+        return lower + Math.max(1, Math.min(gap / 2, SHUFFLE_APPEND_STEP));
+    }
+
+    /**
+     * @return an unused key at a uniformly random position of the shuffled queue, or -1 if there is none
+     */
+    private long findRandomShuffleKey() {
+        TrackTree tree = shuffledQueue;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int position = random.nextInt(tree.size() + 1);
+        long lower = position == 0 ? 0 : tree.keyAt(position - 1);
+        long upper = position == tree.size() ? Long.MAX_VALUE : tree.keyAt(position);
+        if (upper - lower < 2) {
+            return -1;
+        }
+        return lower + 1 + random.nextLong(upper - lower - 1);
+    }
+
+    /**
+     * Replaces the shuffled queue with the provided tracks in the provided order, with their keys spread out evenly.
+     * <p>
+     * Needs to be called while holding the lock of this provider.
+     */
+    private void rebuildShuffledQueue(List<AudioTrackContext> tracks) {
+        long step = Long.MAX_VALUE / (tracks.size() + 1);
+        long shuffleKey = 0;
+        TrackTree tree = TrackTree.EMPTY;
+        shuffleKeys.clear();
+        for (AudioTrackContext atc : tracks) {
+            shuffleKey += step;
+            shuffleKeys.put(atc.getTrackId(), shuffleKey);
+            tree = tree.insert(shuffleKey, atc);
+        }
+        shuffledQueue = tree;
+    }
+
+    /**
+     * Needs to be called while holding the lock of this provider.
+     */
+    private boolean removeFromQueue(AudioTrackContext atc) {
+        long trackId = atc.getTrackId();
+        if (!queueKeys.containsKey(trackId)) {
+            return false;
+        }
+        long key = queueKeys.get(trackId);
+        AudioTrackContext queued = queue.getByKey(key);
+        if (queued == null || !queued.equals(atc)) {
+            return false;
+        }
+        queueKeys.remove(trackId);
+        queue = queue.remove(key);
+        shuffledQueue = shuffledQueue.remove(shuffleKeys.remove(trackId));
+        return true;
+    }
 }
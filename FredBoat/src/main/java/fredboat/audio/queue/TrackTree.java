@@ -0,0 +1,341 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package fredboat.audio.queue;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable order statistic tree (a persistent treap) of tracks, sorted by a unique long key.
+ * <p>
+ * Every modification returns a new tree that shares all untouched nodes with the old one, so a tree that has been
+ * handed out can be read from any thread without locking while a writer keeps building newer versions of it.
+ * Index lookups, inserts and removals are O(log n), the total duration and the amount of streams are O(1).
+ */
+public final class TrackTree {
+
+    public static final TrackTree EMPTY = new TrackTree(null);
+
+    @Nullable
+    private final Node root;
+
+    private TrackTree(@Nullable Node root) {
+        this.root = root;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * @return summed up duration of all tracks that are not streams
+     */
+    public long getDurationMillis() {
+        return root == null ? 0 : root.duration;
+    }
+
+    /**
+     * @return amount of streams in this tree
+     */
+    public int getStreamsCount() {
+        return root == null ? 0 : root.streams;
+    }
+
+    /**
+     * @param key must not be present in this tree yet
+     * @return a new tree containing the provided track at the position of its key
+     */
+    public TrackTree insert(long key, AudioTrackContext atc) {
+        return new TrackTree(insert(root, new Node(key, atc, ThreadLocalRandom.current().nextInt(), null, null)));
+    }
+
+    /**
+     * @return a new tree without the track of the provided key, or this tree if there is no such key
+     */
+    public TrackTree remove(long key) {
+        Node newRoot = remove(root, key);
+        return newRoot == root ? this : new TrackTree(newRoot);
+    }
+
+    /**
+     * @return the track at the provided index
+     * @throws IndexOutOfBoundsException if the index is not within 0 (inclusive) and size() (exclusive)
+     */
+    public AudioTrackContext get(int index) {
+        return nodeAt(index).value;
+    }
+
+    /**
+     * @return the key of the track at the provided index
+     * @throws IndexOutOfBoundsException if the index is not within 0 (inclusive) and size() (exclusive)
+     */
+    public long keyAt(int index) {
+        return nodeAt(index).key;
+    }
+
+    /**
+     * @return the track with the provided key, or null if there is no such key in this tree
+     */
+    @Nullable
+    public AudioTrackContext getByKey(long key) {
+        Node node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the track with the provided key, or -1 if there is no such key in this tree
+     */
+    public int indexOf(long key) {
+        int index = 0;
+        Node node = root;
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first track of this tree, or null if it is empty
+     */
+    @Nullable
+    public AudioTrackContext first() {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.value;
+    }
+
+    /**
+     * Indices are clamped to the bounds of this tree.
+     *
+     * @param startIndex inclusive starting index
+     * @param endIndex   exclusive ending index
+     * @return a new list of the tracks in the given range
+     */
+    public List<AudioTrackContext> range(int startIndex, int endIndex) {
+        int from = Math.max(0, startIndex);
+        int to = Math.min(size(), endIndex);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<AudioTrackContext> result = new ArrayList<>(to - from);
+        collect(root, from, to, result);
+        return result;
+    }
+
+    /**
+     * @return a new list of all tracks of this tree in order
+     */
+    public List<AudioTrackContext> toList() {
+        return range(0, size());
+    }
+
+
+    // ################################################################################
+    // ##                           Tree internals
+    // ################################################################################
+
+    private static final class Node {
+        final long key;
+        final AudioTrackContext value;
+        final int priority;
+        @Nullable
+        final Node left;
+        @Nullable
+        final Node right;
+        //aggregates of the subtree rooted at this node
+        final int size;
+        final long duration;
+        final int streams;
+
+        Node(long key, AudioTrackContext value, int priority, @Nullable Node left, @Nullable Node right) {
+            this.key = key;
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+
+            boolean isStream = value.getTrack().getInfo().isStream;
+            long dur = isStream ? 0 : value.getEffectiveDuration();
+            int str = isStream ? 1 : 0;
+            int s = 1;
+            if (left != null) {
+                s += left.size;
+                dur += left.duration;
+                str += left.streams;
+            }
+            if (right != null) {
+                s += right.size;
+                dur += right.duration;
+                str += right.streams;
+            }
+            this.size = s;
+            this.duration = dur;
+            this.streams = str;
+        }
+
+        Node withChildren(@Nullable Node newLeft, @Nullable Node newRight) {
+            if (newLeft == left && newRight == right) {
+                return this;
+            }
+            return new Node(key, value, priority, newLeft, newRight);
+        }
+    }
+
+    private Node nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException("Tree sizes are inconsistent"); //cant happen
+    }
+
+    private static int size(@Nullable Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node insert(@Nullable Node node, Node toInsert) {
+        if (node == null) {
+            return toInsert;
+        }
+        if (toInsert.priority > node.priority) {
+            Node[] split = split(node, toInsert.key);
+            return toInsert.withChildren(split[0], split[1]);
+        }
+        if (toInsert.key < node.key) {
+            return node.withChildren(insert(node.left, toInsert), node.right);
+        } else {
+            return node.withChildren(node.left, insert(node.right, toInsert));
+        }
+    }
+
+    /**
+     * @return two trees, the first one containing all keys lower than the provided one, the second one all others
+     */
+    private static Node[] split(@Nullable Node node, long key) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (node.key < key) {
+            Node[] split = split(node.right, key);
+            split[0] = node.withChildren(node.left, split[0]);
+            return split;
+        } else {
+            Node[] split = split(node.left, key);
+            split[1] = node.withChildren(split[1], node.right);
+            return split;
+        }
+    }
+
+    @Nullable
+    private static Node remove(@Nullable Node node, long key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            return node.withChildren(remove(node.left, key), node.right);
+        } else if (key > node.key) {
+            return node.withChildren(node.left, remove(node.right, key));
+        } else {
+            return merge(node.left, node.right);
+        }
+    }
+
+    /**
+     * All keys of the left tree need to be lower than the keys of the right tree.
+     */
+    @Nullable
+    private static Node merge(@Nullable Node left, @Nullable Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        } else {
+            return right.withChildren(merge(left, right.left), right.right);
+        }
+    }
+
+    /**
+     * Adds the tracks of the subtree within the given bounds, which are relative to the subtree, to the result list
+     */
+    private static void collect(@Nullable Node node, int from, int to, List<AudioTrackContext> result) {
+        if (node == null || from >= to) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (from < leftSize) {
+            collect(node.left, from, Math.min(to, leftSize), result);
+        }
+        if (from <= leftSize && leftSize < to) {
+            result.add(node.value);
+        }
+        if (to > leftSize + 1) {
+            collect(node.right, Math.max(0, from - leftSize - 1), to - leftSize - 1, result);
+        }
+    }
+}
@@ -25,6 +25,9 @@
 
 package fredboat.audio.source;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
@@ -36,23 +39,39 @@ import fredboat.main.BotController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 
 public class PlaylistImportSourceManager implements AudioSourceManager, PlaylistImporter {
 
     private static final Logger log = LoggerFactory.getLogger(PlaylistImportSourceManager.class);
 
-    private final AudioPlayerManager audioPlayerManager;
+    //items of a single paste that are being loaded at the same time
+    private static final int MAX_PARALLEL_LOADS = 5;
 
-    public PlaylistImportSourceManager(AudioPlayerManager audioPlayerManager) {
+    private final AudioPlayerManager audioPlayerManager;
+    private final ExecutorService executor;
+    //the track ids of recently downloaded pastes. the playlist data is requested right before a paste is imported,
+    // so this saves us from downloading each paste twice.
+    private final Cache<String, List<String>> pasteCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .maximumSize(200)
+            .build();
+
+    public PlaylistImportSourceManager(AudioPlayerManager audioPlayerManager, ExecutorService executor) {
         this.audioPlayerManager = audioPlayerManager;
+        this.executor = executor;
     }
 
     @Override
@@ -72,25 +91,47 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
         if (pasteId == null || "".equals(pasteId) || !PasteServiceConstants.PASTE_SERVICE_URLS.containsKey(serviceName)) {
             return null;
         }
-        List<String> trackIds = loadAndParseTrackIds(serviceName, pasteId);
-
-        PasteServiceAudioResultHandler handler = new PasteServiceAudioResultHandler();
-        Future<Void> lastFuture = null;
-        for (String id : trackIds) {
-            lastFuture = audioPlayerManager.loadItemOrdered(handler, id, handler);
-        }
-
-        if (lastFuture == null) {
+        List<String> trackIds = getTrackIds(serviceName, pasteId);
+        if (trackIds.isEmpty()) {
             return null;
         }
 
+        PipelinedImport pipelinedImport = new PipelinedImport(pasteId, trackIds, null);
         try {
-            lastFuture.get();
+            return pipelinedImport.start().get();
         } catch (InterruptedException | ExecutionException ex) {
+            pipelinedImport.cancel();
+            if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
             throw new FriendlyException("Failed loading playlist item", FriendlyException.Severity.FAULT, ex);
         }
+    }
 
-        return new BasicAudioPlaylist(pasteId, handler.getLoadedTracks(), null, false);
+    /**
+     * Imports a paste playlist without occupying a loader thread while its items are loading. The items are loaded
+     * with bounded parallelism, and handed to the consumer in the order of the paste as soon as all items in front of
+     * them have been loaded, so they can be queued while the rest of the paste is still loading.
+     *
+     * @param identifier     the identifier of the paste
+     * @param tracksConsumer receives the loaded tracks in order, in batches, on the threads of the loading items
+     * @return null if the identifier is not a paste we know of, otherwise a future of the whole playlist, which
+     * completes with null if the paste is empty
+     */
+    @Nullable
+    public CompletableFuture<AudioPlaylist> loadPipelined(String identifier,
+                                                          Consumer<List<AudioTrack>> tracksConsumer) {
+        String[] parsed = parse(identifier);
+        if (parsed == null) return null;
+        String serviceName = parsed[0];
+        String pasteId = parsed[1];
+
+        if (pasteId == null || "".equals(pasteId) || !PasteServiceConstants.PASTE_SERVICE_URLS.containsKey(serviceName)) {
+            return null;
+        }
+
+        return CompletableFuture.supplyAsync(() -> getTrackIds(serviceName, pasteId), executor)
+                .thenCompose(trackIds -> trackIds.isEmpty()
+                        ? CompletableFuture.<AudioPlaylist>completedFuture(null)
+                        : new PipelinedImport(pasteId, trackIds, tracksConsumer).start());
     }
 
     @Override
@@ -153,6 +194,18 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
         return result;
     }
 
+    private List<String> getTrackIds(String serviceName, String pasteId) {
+        try {
+            return pasteCache.get(serviceName + ":" + pasteId, () -> loadAndParseTrackIds(serviceName, pasteId));
+        } catch (ExecutionException e) {
+            throw new FriendlyException("Failed loading the paste", FriendlyException.Severity.FAULT, e.getCause());
+        } catch (UncheckedExecutionException e) {
+            //FriendlyExceptions thrown by the loader
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
     private List<String> loadAndParseTrackIds(String serviceName, String pasteId) {
         String response;
         try {
@@ -174,6 +227,14 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
     }
 
 
+    @Nullable
+    @Override
+    public String getPlaylistKey(String identifier) {
+        String[] pasteData = parse(identifier);
+        if (pasteData == null || pasteData[1] == null || "".equals(pasteData[1])) return null;
+        return pasteData[0] + ":" + pasteData[1];
+    }
+
     @Override
     public PlaylistInfo getPlaylistDataBlocking(String identifier) {
 
@@ -184,43 +245,127 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
         String pasteId = pasteData[1];
         if (serviceName == null || "".equals(serviceName) || pasteId == null || "".equals(pasteId)) return null;
 
-        List<String> trackIds = loadAndParseTrackIds(serviceName, pasteId);
+        List<String> trackIds = getTrackIds(serviceName, pasteId);
 
         return new PlaylistInfo(trackIds.size(), pasteId, PlaylistInfo.Source.PASTESERVICE);
     }
 
-    private class PasteServiceAudioResultHandler implements AudioLoadResultHandler {
-
-        private final List<AudioTrack> loadedTracks;
-
-        private PasteServiceAudioResultHandler() {
-            this.loadedTracks = new ArrayList<>();
+    /**
+     * Loads the items of a paste with at most MAX_PARALLEL_LOADS of them in flight, and emits the loaded tracks in the
+     * order of the paste. Everything happens in the result callbacks of the loaded items, so no thread waits for them.
+     */
+    private class PipelinedImport {
+
+        private final String pasteId;
+        private final List<String> trackIds;
+        @Nullable
+        private final Consumer<List<AudioTrack>> tracksConsumer;
+        private final List<List<AudioTrack>> results;
+        private final CompletableFuture<AudioPlaylist> result = new CompletableFuture<>();
+        private final List<AudioTrack> loadedTracks = new ArrayList<>();
+        //all guarded by this
+        private int submitted = 0;
+        private int emitted = 0;
+        private boolean cancelled = false;
+
+        private PipelinedImport(String pasteId, List<String> trackIds,
+                                @Nullable Consumer<List<AudioTrack>> tracksConsumer) {
+            this.pasteId = pasteId;
+            this.trackIds = trackIds;
+            this.tracksConsumer = tracksConsumer;
+            this.results = new ArrayList<>(Collections.nCopies(trackIds.size(), null));
         }
 
-        @Override
-        public void trackLoaded(AudioTrack track) {
-            loadedTracks.add(track);
+        private CompletableFuture<AudioPlaylist> start() {
+            synchronized (this) {
+                while (submitted < trackIds.size() && submitted < MAX_PARALLEL_LOADS && !result.isDone()) {
+                    submitNext();
+                }
+                completeIfDone();
+            }
+            return result;
         }
 
-        @Override
-        public void playlistLoaded(AudioPlaylist playlist) {
-            loadedTracks.addAll(playlist.getTracks());
+        private synchronized void cancel() {
+            cancelled = true;
         }
 
-        @Override
-        public void noMatches() {
-            // ignore
+        //guarded by this
+        private void submitNext() {
+            int index = submitted++;
+            try {
+                audioPlayerManager.loadItem(trackIds.get(index), new ItemResultHandler(index));
+            } catch (Exception e) {
+                //for example rejected by the executor of the player manager during shutdown. the item would never
+                // call back, so nothing after it could be emitted
+                result.completeExceptionally(e);
+            }
         }
 
-        @Override
-        public void loadFailed(FriendlyException exception) {
-            log.debug("Failed loading track provided via the paste service", exception);
+        private synchronized void onItemLoaded(int index, List<AudioTrack> tracks) {
+            if (cancelled || result.isDone()) {
+                return;
+            }
+            results.set(index, tracks);
+
+            //emit everything in front of which all items have been loaded
+            List<AudioTrack> batch = new ArrayList<>();
+            while (emitted < results.size() && results.get(emitted) != null) {
+                batch.addAll(results.get(emitted));
+                results.set(emitted, Collections.emptyList()); //let go of the tracks, we keep the ones we emitted
+                emitted++;
+            }
+            loadedTracks.addAll(batch);
+            if (tracksConsumer != null && !batch.isEmpty()) {
+                try {
+                    tracksConsumer.accept(batch);
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+            }
+
+            if (submitted < trackIds.size()) {
+                submitNext();
+            }
+            completeIfDone();
         }
 
-        public List<AudioTrack> getLoadedTracks() {
-            return loadedTracks;
+        //guarded by this
+        private void completeIfDone() {
+            if (emitted == trackIds.size()) {
+                result.complete(new BasicAudioPlaylist(pasteId, loadedTracks, null, false));
+            }
         }
 
-    }
+        private class ItemResultHandler implements AudioLoadResultHandler {
 
+            private final int index;
+
+            private ItemResultHandler(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                onItemLoaded(index, Collections.singletonList(track));
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                onItemLoaded(index, playlist.getTracks());
+            }
+
+            @Override
+            public void noMatches() {
+                onItemLoaded(index, Collections.emptyList());
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception) {
+                log.debug("Failed loading track provided via the paste service", exception);
+                onItemLoaded(index, Collections.emptyList());
+            }
+        }
+    }
 }
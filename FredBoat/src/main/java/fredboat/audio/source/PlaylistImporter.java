@@ -26,8 +26,20 @@ package fredboat.audio.source;
 
 import fredboat.audio.queue.PlaylistInfo;
 
+import javax.annotation.Nullable;
+
 public interface PlaylistImporter {
 
+    /**
+     * this must be cheap, no requests allowed
+     *
+     * @param identifier the same string by which the importer may be asked to load the whole playlist
+     * @return a key that is the same for all identifiers of the same playlist, or null if it's not a playlist
+     * recognized by this importer
+     */
+    @Nullable
+    String getPlaylistKey(String identifier);
+
     /**
      * this should try to acquire as much data as possible about a playlist in a lightweight way
      * if necessary, a few http requests are ok
@@ -29,19 +29,16 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.*;
 import fredboat.audio.queue.PlaylistInfo;
-import fredboat.definitions.SearchProvider;
 import fredboat.util.rest.SpotifyAPIWrapper;
-import fredboat.util.rest.TrackSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,18 +60,12 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
     //https://regex101.com/r/AEWyxi/3
     private static final Pattern PLAYLIST_PATTERN = Pattern.compile("https?://.*\\.spotify\\.com/user/(.*)/playlist/([^?/\\s]*)");
 
-    //Take care when deciding on upping the core pool size: The threads may hog database connections when loading an uncached playlist.
-    // Upping the threads will also fire search requests more aggressively against Youtube which is probably better avoided.
-    public static ScheduledExecutorService loader = Executors.newScheduledThreadPool(1);
-
-    private static final List<SearchProvider> searchProviders
-            = Arrays.asList(SearchProvider.YOUTUBE, SearchProvider.SOUNDCLOUD);
-    private final TrackSearcher trackSearcher;
     private final SpotifyAPIWrapper spotifyAPIWrapper;
+    private final SpotifyTrackResolver trackResolver;
 
-    public SpotifyPlaylistSourceManager(TrackSearcher trackSearcher, SpotifyAPIWrapper spotifyAPIWrapper) {
-        this.trackSearcher = trackSearcher;
+    public SpotifyPlaylistSourceManager(SpotifyAPIWrapper spotifyAPIWrapper, SpotifyTrackResolver trackResolver) {
         this.spotifyAPIWrapper = spotifyAPIWrapper;
+        this.trackResolver = trackResolver;
     }
 
     @Override
@@ -102,7 +93,6 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         if (playlistName == null || "".equals(playlistName)) playlistName = "Spotify Playlist";
         int tracksTotal = plData.getTotalTracks();
 
-        final List<AudioTrack> trackList = new ArrayList<>();
         final List<String> trackListSearchTerms;
 
         try {
@@ -113,66 +103,10 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         }
         log.info("Retrieved playlist data for " + playlistName + " from Spotify, loading up " + tracksTotal + " tracks");
 
-        //build a task list
-        List<CompletableFuture<AudioTrack>> taskList = new ArrayList<>();
-        for (final String s : trackListSearchTerms) {
-            //remove all punctuation
-            final String query = s.replaceAll(TrackSearcher.PUNCTUATION_REGEX, "");
-
-            CompletableFuture<AudioTrack> f = CompletableFuture.supplyAsync(() -> searchSingleTrack(query), loader);
-            taskList.add(f);
-        }
-
-        //build a tracklist from that task list
-        for (CompletableFuture<AudioTrack> futureTrack : taskList) {
-            try {
-                final AudioTrack audioItem = futureTrack.get();
-                if (audioItem == null) {
-                    continue; //skip the track if we couldn't find it
-                }
-                trackList.add(audioItem);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (ExecutionException ignored) {
-                //this is fine, loop will go for the next item
-            }
-        }
+        List<AudioTrack> trackList = trackResolver.resolveTracks(trackListSearchTerms);
         return new BasicAudioPlaylist(playlistName, trackList, null, true);
     }
 
-    /**
-     * Searches all available searching sources for a single track.
-     * <p>
-     * Will go Youtube > SoundCloud > return null
-     * This could probably be moved to SearchUtil
-     *
-     * @param query Term that shall be searched
-     * @return An AudioTrack likely corresponding to the query term or null.
-     */
-    private AudioTrack searchSingleTrack(final String query) {
-        try {
-            AudioPlaylist list = trackSearcher.searchForTracks(query, CACHE_DURATION, 60000, searchProviders);
-            //didn't find anything
-            if (list == null || list.getTracks().isEmpty()) {
-                return null;
-            }
-
-            //pick topmost result, and hope it's what the user wants to listen to
-            //having users pick tracks like they can do for individual searches would be ridiculous for playlists with
-            //dozens of tracks. youtube search is probably good enough for this
-            //
-            //testcase:   Rammstein playlists; high quality Rammstein vids are really rare on Youtube.
-            //            https://open.spotify.com/user/11174036433/playlist/0ePRMvD3Dn3zG31A8y64xX
-            //result:     lots of low quality (covers, pitched up/down, etc) tracks loaded.
-            //conclusion: there's room for improvement to this whole method
-            return list.getTracks().get(0);
-        } catch (TrackSearcher.SearchingException e) {
-            //youtube & soundcloud not available
-            return null;
-        }
-    }
-
     @Override
     public boolean isTrackEncodable(final AudioTrack track) {
         return false;
@@ -211,6 +145,13 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         return result;
     }
 
+    @Nullable
+    @Override
+    public String getPlaylistKey(String identifier) {
+        String[] data = parse(identifier);
+        return data == null ? null : "spotify:" + data[0] + ":" + data[1];
+    }
+
     @Override
     public PlaylistInfo getPlaylistDataBlocking(String identifier) {
 
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.definitions.SearchProvider;
+import fredboat.util.rest.TrackSearcher;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.Refill;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Searches the tracks of Spotify playlists on Youtube & SoundCloud.
+ * <p>
+ * There is a single instance of this shared by the Spotify source managers of all audio player managers, so that
+ * the search rate cap and the amount of resolver threads apply to the whole bot.
+ */
+public class SpotifyTrackResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(SpotifyTrackResolver.class);
+
+    private static final List<SearchProvider> searchProviders
+            = Arrays.asList(SearchProvider.YOUTUBE, SearchProvider.SOUNDCLOUD);
+
+    private final TrackSearcher trackSearcher;
+
+    //Take care when deciding on upping the parallelism: The threads may hog database connections when loading an
+    // uncached playlist. Each playlist keeps at most this many searches in flight, so that several playlists being
+    // resolved at the same time share the resolver threads instead of waiting for each other.
+    private final int parallelism;
+    private final ExecutorService resolver;
+    //caps the rate of searches fired against Youtube & SoundCloud, which are better not hammered. cached search results
+    // don't count against it
+    private final Bucket searchBucket;
+
+    /**
+     * @param parallelism       how many tracks are searched at the same time
+     * @param searchesPerMinute how many track searches may be started per minute
+     */
+    public SpotifyTrackResolver(TrackSearcher trackSearcher, int parallelism, long searchesPerMinute) {
+        this.trackSearcher = trackSearcher;
+        this.parallelism = Math.max(1, parallelism);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.resolver = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "spotify-resolver-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long rate = Math.max(1, searchesPerMinute);
+        Bandwidth limit = Bandwidth.classic(rate, Refill.smooth(rate, Duration.ofMinutes(1)));
+        this.searchBucket = Bucket4j.builder().addLimit(limit).build();
+    }
+
+    /**
+     * Searches the tracks for the provided search terms concurrently, with at most parallelism searches of this
+     * playlist in flight, and each search that misses the caches waiting for a token of the search rate limit.
+     * <p>
+     * If the calling thread is interrupted, the outstanding searches are cancelled and the tracks that were found up
+     * to that point are returned.
+     *
+     * @return the found tracks in the order of their search terms. Search terms without a result are skipped.
+     */
+    public List<AudioTrack> resolveTracks(List<String> searchTerms) {
+        int total = searchTerms.size();
+        //searches that are still running when we are interrupted may fill in their slot late, hence the atomic array
+        AtomicReferenceArray<AudioTrack> resolved = new AtomicReferenceArray<>(total);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(resolver);
+        List<Future<Integer>> searches = new ArrayList<>(total);
+
+        int submitted = 0;
+        int completed = 0;
+        try {
+            while (completed < total) {
+                //keep the window of searches of this playlist filled
+                while (submitted < total && submitted - completed < parallelism) {
+                    final int index = submitted++;
+                    //remove all punctuation
+                    final String query = searchTerms.get(index).replaceAll(TrackSearcher.PUNCTUATION_REGEX, "");
+                    searches.add(completionService.submit(() -> {
+                        resolved.set(index, searchRateLimited(query));
+                        return index;
+                    }));
+                }
+
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    log.warn("Failed to search a track of a spotify playlist", e);
+                }
+                completed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Interrupted while resolving a spotify playlist after {} of {} searches", completed, total);
+        } finally {
+            if (completed < total) {
+                searches.forEach(search -> search.cancel(true));
+            }
+        }
+
+        List<AudioTrack> trackList = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            AudioTrack track = resolved.get(i);
+            if (track != null) { //skip the track if we couldn't find it
+                trackList.add(track);
+            }
+        }
+        return trackList;
+    }
+
+    /**
+     * Stops the resolver threads. Called by Spring when the context is closed.
+     */
+    public void shutdown() {
+        resolver.shutdownNow();
+    }
+
+    /**
+     * Serves the track from the search caches if possible. Otherwise waits for a token of the search rate limit, then
+     * searches the track.
+     */
+    @Nullable
+    private AudioTrack searchRateLimited(final String query) throws InterruptedException {
+        //the providers are searched in order, so a cached result is only the one a search would find if it is a result
+        // of the first provider
+        AudioPlaylist cached = trackSearcher.searchCache(query, SpotifyPlaylistSourceManager.CACHE_DURATION,
+                searchProviders.get(0));
+        if (cached != null) {
+            return cached.getTracks().get(0);
+        }
+        searchBucket.consume(1);
+        return searchSingleTrack(query);
+    }
+
+    /**
+     * Searches all available searching sources for a single track.
+     * <p>
+     * Will go Youtube > SoundCloud > return null
+     * This could probably be moved to SearchUtil
+     *
+     * @param query Term that shall be searched
+     * @return An AudioTrack likely corresponding to the query term or null.
+     */
+    private AudioTrack searchSingleTrack(final String query) {
+        try {
+            AudioPlaylist list = trackSearcher.searchForTracks(query, SpotifyPlaylistSourceManager.CACHE_DURATION, 60000, searchProviders);
+            //didn't find anything
+            if (list == null || list.getTracks().isEmpty()) {
+                return null;
+            }
+
+            //pick topmost result, and hope it's what the user wants to listen to
+            //having users pick tracks like they can do for individual searches would be ridiculous for playlists with
+            //dozens of tracks. youtube search is probably good enough for this
+            //
+            //testcase:   Rammstein playlists; high quality Rammstein vids are really rare on Youtube.
+            //            https://open.spotify.com/user/11174036433/playlist/0ePRMvD3Dn3zG31A8y64xX
+            //result:     lots of low quality (covers, pitched up/down, etc) tracks loaded.
+            //conclusion: there's room for improvement to this whole method
+            return list.getTracks().get(0);
+        } catch (TrackSearcher.SearchingException e) {
+            //youtube & soundcloud not available
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@
 
 package fredboat.command.admin;
 
+import fredboat.audio.player.AudioConnectionFacade;
 import fredboat.command.info.HelpCommand;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
@@ -88,6 +89,14 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
                     show(context);
                 }
                 break;
+            case "drain":
+            case "undrain":
+                if (context.args.length < 2) {
+                    HelpCommand.sendFormattedCommandHelp(context);
+                } else {
+                    drain(context, context.args[0].equals("drain"));
+                }
+                break;
             case "list":
             default:
                 list(context);
@@ -114,6 +123,31 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
         context.reply("Removed node " + name);
     }
 
+    private void drain(@Nonnull CommandContext context, boolean drain) {
+        String name = context.args[1];
+        AudioConnectionFacade audioConnectionFacade = Launcher.getBotController().getAudioConnectionFacade();
+        boolean exists = audioConnectionFacade.getLavalink().getNodes().stream()
+                .anyMatch(ll -> ll.getName().equals(name));
+        if (!exists) {
+            context.reply("No node with name " + name + " found.");
+            return;
+        }
+
+        if (drain) {
+            if (audioConnectionFacade.drainNode(name)) {
+                context.reply("Draining node " + name + ", its players are being moved to other nodes.");
+            } else {
+                context.reply("Node " + name + " is already draining.");
+            }
+        } else {
+            if (audioConnectionFacade.undrainNode(name)) {
+                context.reply("Node " + name + " is no longer draining and takes new players again.");
+            } else {
+                context.reply("Node " + name + " is not draining.");
+            }
+        }
+    }
+
     private void add(@Nonnull CommandContext context) {
         String name = context.args[1];
         URI uri;
@@ -174,6 +208,9 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
         for (LavalinkSocket socket : nodes) {
             RemoteStats stats = socket.getStats();
             String str = "Name:                " + socket.getName() + "\n";
+            if (Launcher.getBotController().getAudioConnectionFacade().isDraining(socket.getName())) {
+                str += "Draining:                yes\n";
+            }
 
             if (showHosts) {
                 str += "Host:                    " + socket.getRemoteUri() + "\n";
@@ -226,7 +263,10 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
                 + "\n{0}{1} show <name>"
                 + "\n{0}{1} add <name> <uri> <pass>"
                 + "\n{0}{1} remove <name>"
-                + "\n#Show information about connected lavalink nodes, or add or remove lavalink nodes.";
+                + "\n{0}{1} drain <name>"
+                + "\n{0}{1} undrain <name>"
+                + "\n#Show information about connected lavalink nodes, add or remove lavalink nodes, "
+                + "or move all players off a node by draining it.";
     }
 
     @Nonnull
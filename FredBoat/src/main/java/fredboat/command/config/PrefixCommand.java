@@ -25,9 +25,6 @@
 
 package fredboat.command.config;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
 import fredboat.commandmeta.abs.IConfigCommand;
@@ -35,47 +32,25 @@ import fredboat.definitions.PermissionLevel;
 import fredboat.main.Launcher;
 import fredboat.messaging.internal.Context;
 import fredboat.perms.PermsUtil;
-import fredboat.util.DiscordUtil;
-import fredboat.util.rest.CacheUtil;
-import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import net.dv8tion.jda.core.entities.Guild;
-import space.npstr.sqlsauce.entities.GuildBotComposite;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by napster on 19.10.17.
  */
 public class PrefixCommand extends Command implements IConfigCommand {
 
-    public PrefixCommand(@Nullable CacheMetricsCollector cacheMetrics, @Nonnull String name, String... aliases) {
+    public PrefixCommand(@Nonnull String name, String... aliases) {
         super(name, aliases);
-        if (cacheMetrics != null) {
-            cacheMetrics.addCache("customPrefixes", CUSTOM_PREFIXES);
-        }
     }
 
-    @SuppressWarnings("ConstantConditions")
-    public static final LoadingCache<Long, Optional<String>> CUSTOM_PREFIXES = CacheBuilder.newBuilder()
-            //it is fine to check the db for updates occasionally, as we currently dont have any use case where we change
-            //the value saved there through other means. in case we add such a thing (like a dashboard), consider lowering
-            //the refresh value to have the changes reflect faster in the bot, or consider implementing a FredBoat wide
-            //Listen/Notify system for changes to in memory cached values backed by the db
-            .recordStats()
-            .refreshAfterWrite(1, TimeUnit.MINUTES) //NOTE: never use refreshing without async reloading, because Guavas cache uses the thread calling it to do cleanup tasks (including refreshing)
-            .expireAfterAccess(1, TimeUnit.MINUTES) //evict inactive guilds
-            .concurrencyLevel(Launcher.getBotController().getCredentials().getRecommendedShardCount())  //each shard has a thread (main JDA thread) accessing this cache many times
-            .build(CacheLoader.asyncReloading(CacheLoader.from(
-                    guildId -> Launcher.getBotController().getEntityIO().getPrefix(new GuildBotComposite(guildId, DiscordUtil.getBotId(Launcher.getBotController().getCredentials())))),
-                    Launcher.getBotController().getExecutor()));
-
+    //the custom prefix is part of the guild settings kept in memory by the EntityIO
     @Nonnull
     private static String giefPrefix(long guildId) {
-        return CacheUtil.getUncheckedUnwrapped(CUSTOM_PREFIXES, guildId)
-                .orElse(Launcher.getBotController().getAppConfig().getPrefix());
+        String prefix = Launcher.getBotController().getEntityIO().fetchGuildSettings(guildId).getPrefix();
+        return prefix != null ? prefix : Launcher.getBotController().getAppConfig().getPrefix();
     }
 
     @Nonnull
@@ -112,9 +87,8 @@ public class PrefixCommand extends Command implements IConfigCommand {
 
         Launcher.getBotController().getEntityIO().transformPrefix(context.guild, prefixEntity -> prefixEntity.setPrefix(newPrefix));
 
-        //we could do a put instead of invalidate here and probably safe one lookup, but that undermines the database
-        // as being the single source of truth for prefixes
-        CUSTOM_PREFIXES.invalidate(context.guild.getIdLong());
+        //the entity io invalidates its cached guild settings when the prefix is written, so the database stays the
+        // single source of truth for prefixes
 
         showPrefix(context, giefPrefix(context.guild));
     }
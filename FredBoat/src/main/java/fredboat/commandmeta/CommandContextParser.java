@@ -35,45 +35,70 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Created by napster on 23.02.18.
+ * <p>
+ * Every message we receive passes through here, and most of them are not commands, so this avoids regexes and
+ * substrings until the input has been identified as a command.
  */
 @Component
 public class CommandContextParser {
 
     private static final Logger log = LoggerFactory.getLogger(CommandContext.class);
 
-    // https://regex101.com/r/ceFMeF/6
-    //group 1 is the mention, group 2 is the id of the mention, group 3 is the rest of the input including new lines
-    public static final Pattern MENTION_PREFIX = Pattern.compile("^(<@!?([0-9]+)>)(.*)$", Pattern.DOTALL);
-
     /**
      * @param event the event to be parsed
      * @return The full context for the triggered command, or null if it's not a command that we know.
      */
     @Nullable
     public CommandContext parse(MessageReceivedEvent event) {
-        String raw = event.getMessage().getContentRaw();
+        ParsedCommand parsed = parse(event.getMessage().getContentRaw(), event.getJDA().getSelfUser().getId(),
+                () -> PrefixCommand.giefPrefix(event.getGuild()),
+                Launcher.getBotController().getAppConfig().getPrefix());
+        if (parsed == null) {
+            return null;
+        }
+        return new CommandContext(
+                event.getGuild(),
+                event.getTextChannel(),
+                event.getMember(),
+                event.getMessage(),
+                parsed.isMention,
+                parsed.trigger,
+                parsed.args,
+                parsed.rawArgs,
+                parsed.command);
+    }
 
-        String input;
+    /**
+     * Parses the content of a message, independent of the event it was received with.
+     *
+     * @param raw           raw content of the message
+     * @param selfId        id of the bot user, for mentions of the bot
+     * @param prefix        prefix of the guild, only looked up when the message does not start with a mention
+     * @param defaultPrefix default prefix of the bot
+     * @return the parsed command, or null if it's not a command that we know.
+     */
+    @Nullable
+    public static ParsedCommand parse(String raw, String selfId, Supplier<String> prefix, String defaultPrefix) {
+        int start;
         boolean isMention = false;
-        Matcher mentionMatcher = MENTION_PREFIX.matcher(raw);
+        int mentionEnd = matchMention(raw, selfId);
         // either starts with a mention of us
-        if (mentionMatcher.find() && mentionMatcher.group(2).equals(event.getJDA().getSelfUser().getId())) {
-            input = mentionMatcher.group(3).trim();
+        if (mentionEnd > 0) {
+            start = mentionEnd;
             isMention = true;
         }
         // or starts with a custom/default prefix
         else {
-            String prefix = PrefixCommand.giefPrefix(event.getGuild());
-            String defaultPrefix = Launcher.getBotController().getAppConfig().getPrefix();
-            if (raw.startsWith(prefix)) {
-                input = raw.substring(prefix.length());
-                if (prefix.equals(defaultPrefix)) {
+            String guildPrefix = prefix.get();
+            if (raw.startsWith(guildPrefix)) {
+                start = guildPrefix.length();
+                if (guildPrefix.equals(defaultPrefix)) {
                     Metrics.prefixParsed.labels("default").inc();
                 } else {
                     Metrics.prefixParsed.labels("custom").inc();
@@ -83,46 +108,118 @@ public class CommandContextParser {
                 if (raw.startsWith(defaultPrefix + CommandInitializer.HELP_COMM_NAME)
                         || raw.startsWith(defaultPrefix + CommandInitializer.PREFIX_COMM_NAME)) {
                     Metrics.prefixParsed.labels("default").inc();
-                    input = raw.substring(defaultPrefix.length());
+                    start = defaultPrefix.length();
                 } else {
                     //no match neither mention nor custom/default prefix
                     return null;
                 }
             }
         }
-        input = input.trim();// eliminate possible whitespace between the mention/prefix and the rest of the input
-        if (input.isEmpty()) {
+
+        // eliminate possible whitespace between the mention/prefix and the rest of the input, same as String#trim
+        int end = raw.length();
+        while (start < end && raw.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && raw.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
             if (isMention) { //just a mention and nothing else? trigger the prefix command
-                input = "prefix";
+                String trigger = CommandInitializer.PREFIX_COMM_NAME;
+                Command prefixCommand = CommandRegistry.findCommand(trigger);
+                return prefixCommand == null ? null
+                        : new ParsedCommand(true, trigger, new String[0], "", prefixCommand);
             } else {
                 return null; //no command will be detectable from an empty input
             }
         }
 
-        // the \p{javaSpaceChar} instead of the better known \s is used because it actually includes unicode whitespaces
-        String[] args = input.split("\\p{javaSpaceChar}+");
-        if (args.length < 1) {
-            return null; //while this shouldn't technically be possible due to the preprocessing of the input, better be safe than throw exceptions
+        // Character#isSpaceChar is used instead of the better known whitespace because it actually includes unicode
+        // whitespaces, like the \p{javaSpaceChar} regex class
+        int triggerEnd = start;
+        while (triggerEnd < end && !Character.isSpaceChar(raw.charAt(triggerEnd))) {
+            triggerEnd++;
         }
 
-        String commandTrigger = args[0];
-
-        Command command = CommandRegistry.findCommand(commandTrigger.toLowerCase());
+        Command command = CommandRegistry.findCommand(raw, start, triggerEnd);
         if (command == null) {
-            log.info("Unknown command:\t{}", commandTrigger);
+            log.info("Unknown command:\t{}", raw.substring(start, triggerEnd));
             return null;
         } else {
-            return new CommandContext(
-                    event.getGuild(),
-                    event.getTextChannel(),
-                    event.getMember(),
-                    event.getMessage(),
+            return new ParsedCommand(
                     isMention,
-                    commandTrigger,
-                    Arrays.copyOfRange(args, 1, args.length),//exclude args[0] that contains the command trigger
-                    input.replaceFirst(commandTrigger, "").trim(),
+                    raw.substring(start, triggerEnd),
+                    splitArgs(raw, triggerEnd, end),//exclude the command trigger
+                    raw.substring(triggerEnd, end).trim(),
                     command);
         }
     }
 
+    /**
+     * Matches a mention of the given user at the start of the input, like <@id> or <@!id>.
+     *
+     * @return the index right after the mention, or -1 if the input does not start with a mention of the given user
+     */
+    private static int matchMention(String raw, String userId) {
+        if (!raw.startsWith("<@")) {
+            return -1;
+        }
+        int idStart = 2;
+        if (raw.length() > idStart && raw.charAt(idStart) == '!') {
+            idStart++;
+        }
+        int idEnd = idStart;
+        while (idEnd < raw.length() && raw.charAt(idEnd) >= '0' && raw.charAt(idEnd) <= '9') {
+            idEnd++;
+        }
+        if (idEnd == idStart || idEnd >= raw.length() || raw.charAt(idEnd) != '>') {
+            return -1;
+        }
+        if (idEnd - idStart != userId.length() || !raw.regionMatches(idStart, userId, 0, userId.length())) {
+            return -1;
+        }
+        return idEnd + 1;
+    }
+
+    /**
+     * Splits the region of the input into arguments separated by runs of space characters.
+     */
+    private static String[] splitArgs(String raw, int start, int end) {
+        List<String> args = new ArrayList<>();
+        int i = start;
+        while (i < end) {
+            while (i < end && Character.isSpaceChar(raw.charAt(i))) {
+                i++;
+            }
+            int argStart = i;
+            while (i < end && !Character.isSpaceChar(raw.charAt(i))) {
+                i++;
+            }
+            if (i > argStart) {
+                args.add(raw.substring(argStart, i));
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * The parts of a message that make up a command, see {@link CommandContext} for the meaning of the fields.
+     */
+    public static final class ParsedCommand {
+        public final boolean isMention;
+        public final String trigger;
+        public final String[] args;
+        public final String rawArgs;
+        public final Command command;
+
+        private ParsedCommand(boolean isMention, String trigger, String[] args, String rawArgs, Command command) {
+            this.isMention = isMention;
+            this.trigger = trigger;
+            this.args = args;
+            this.rawArgs = rawArgs;
+            this.command = command;
+        }
+    }
+
 }
@@ -117,7 +117,7 @@ public class CommandInitializer {
         configModule.registerCommand(new ConfigCommand(CONFIG_COMM_NAME, "cfg"));
         configModule.registerCommand(new LanguageCommand(LANGUAGE_COMM_NAME, "lang"));
         configModule.registerCommand(new ModulesCommand("modules", "module", "mods"));
-        configModule.registerCommand(new PrefixCommand(cacheMetrics, PREFIX_COMM_NAME, "pre"));
+        configModule.registerCommand(new PrefixCommand(PREFIX_COMM_NAME, "pre"));
         /* Perms */
         configModule.registerCommand(new PermissionsCommand(PermissionLevel.ADMIN, "admin", "admins"));
         configModule.registerCommand(new PermissionsCommand(PermissionLevel.DJ, "dj", "djs"));
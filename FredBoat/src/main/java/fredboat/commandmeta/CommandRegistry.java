@@ -37,9 +37,12 @@ import java.util.stream.Collectors;
 public class CommandRegistry {
 
     private static Map<Module, CommandRegistry> modules = new HashMap<>();
+    //names and aliases of the commands of all modules, rebuilt whenever a command is registered
+    private static volatile CommandTrie commandTrie = new CommandTrie();
 
     public static void registerModule(@Nonnull CommandRegistry registry) {
         modules.put(registry.module, registry);
+        rebuildCommandTrie();
     }
 
     @Nonnull
@@ -53,11 +56,27 @@ public class CommandRegistry {
 
     @Nullable
     public static Command findCommand(@Nonnull String name) {
-        return modules.values().stream()
-                .map(cr -> cr.getCommand(name))
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElse(null);
+        return commandTrie.find(name, 0, name.length());
+    }
+
+    /**
+     * Case insensitive lookup of a command in a region of the input, without creating any objects.
+     *
+     * @param start inclusive index of the start of the command trigger
+     * @param end   exclusive index of the end of the command trigger
+     */
+    @Nullable
+    public static Command findCommand(@Nonnull CharSequence input, int start, int end) {
+        return commandTrie.find(input, start, end);
+    }
+
+    //registration only happens during startup, so building the whole trie from scratch every time is fine
+    private static synchronized void rebuildCommandTrie() {
+        CommandTrie trie = new CommandTrie();
+        for (CommandRegistry registry : modules.values()) {
+            registry.registry.forEach(trie::put);
+        }
+        commandTrie = trie;
     }
 
     public static int getTotalSize() {
@@ -88,6 +107,7 @@ public class CommandRegistry {
             registry.put(alias.toLowerCase(), command);
         }
         command.setModule(this.module);
+        rebuildCommandTrie();
     }
 
     //may contain duplicates, if a command was added additional aliases
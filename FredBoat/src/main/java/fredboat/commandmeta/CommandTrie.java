@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package fredboat.commandmeta;
+
+import fredboat.commandmeta.abs.Command;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Prefix tree of all command names and aliases.
+ * <p>
+ * Looking up a command walks the input one character at a time, so input that is not a command is rejected as soon as
+ * it leaves the tree, usually after the first one or two characters, and without creating any objects.
+ * <p>
+ * Instances are filled once and then published, they are not safe to be modified while being read.
+ */
+final class CommandTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * @param name lower case name or alias of the command
+     */
+    void put(String name, Command command) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.getOrCreateChild(name.charAt(i));
+        }
+        node.command = command;
+    }
+
+    /**
+     * Case insensitive lookup of a command.
+     *
+     * @param input the input containing the command trigger
+     * @param start inclusive index of the start of the trigger
+     * @param end   exclusive index of the end of the trigger
+     * @return the command registered under the trigger, or null if there is none
+     */
+    @Nullable
+    Command find(CharSequence input, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.getChild(Character.toLowerCase(input.charAt(i)));
+        }
+        return node != null ? node.command : null;
+    }
+
+    private static final class Node {
+        //sorted, so children can be found with a binary search
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        @Nullable
+        private Command command;
+
+        @Nullable
+        Node getChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -(index + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node child = new Node();
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager
 import fredboat.audio.source.HttpSourceManager;
 import fredboat.audio.source.PlaylistImportSourceManager;
 import fredboat.audio.source.SpotifyPlaylistSourceManager;
+import fredboat.audio.source.SpotifyTrackResolver;
 import fredboat.config.property.AppConfig;
 import fredboat.config.property.AudioSourcesConfig;
 import fredboat.config.property.FileConfig;
@@ -53,6 +54,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by napster on 25.02.18.
@@ -185,8 +187,9 @@ public class AudioPlayerManagerConfiguration {
 
     @Bean
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    public PlaylistImportSourceManager playlistImportSourceManager(@Qualifier("pasteAudioPlayerManager") AudioPlayerManager audioPlayerManager) {
-        return new PlaylistImportSourceManager(audioPlayerManager);
+    public PlaylistImportSourceManager playlistImportSourceManager(@Qualifier("pasteAudioPlayerManager") AudioPlayerManager audioPlayerManager,
+                                                                   ExecutorService executor) {
+        return new PlaylistImportSourceManager(audioPlayerManager, executor);
     }
 
     @Bean
@@ -238,9 +241,16 @@ public class AudioPlayerManagerConfiguration {
 
     @Bean
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    public SpotifyPlaylistSourceManager spotifyPlaylistSourceManager(TrackSearcher trackSearcher,
-                                                                     SpotifyAPIWrapper spotifyAPIWrapper) {
-        return new SpotifyPlaylistSourceManager(trackSearcher, spotifyAPIWrapper);
+    public SpotifyPlaylistSourceManager spotifyPlaylistSourceManager(SpotifyAPIWrapper spotifyAPIWrapper,
+                                                                     SpotifyTrackResolver spotifyTrackResolver) {
+        return new SpotifyPlaylistSourceManager(spotifyAPIWrapper, spotifyTrackResolver);
+    }
+
+    //shared by the spotify source managers of all audio player managers, so its limits apply to the whole bot
+    @Bean
+    public SpotifyTrackResolver spotifyTrackResolver(TrackSearcher trackSearcher, AppConfig appConfig) {
+        return new SpotifyTrackResolver(trackSearcher, appConfig.getSpotifyResolveParallelism(),
+                appConfig.getSpotifySearchesPerMinute());
     }
 
     @Bean
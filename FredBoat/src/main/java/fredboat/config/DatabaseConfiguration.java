@@ -117,7 +117,7 @@ public class DatabaseConfiguration {
 
     @Bean
     public DatabaseManager databaseManager(PropertyConfigProvider configProvider, HibernateStatisticsCollector hibernateStats,
-                                           PrometheusMetricsTrackerFactory hikariStats) {
+                                           PrometheusMetricsTrackerFactory hikariStats, ShutdownHandler shutdownHandler) {
         //run migrations except when its the patron boat
         boolean migrateAndValidate = DiscordUtil.getBotId(configProvider.getCredentials()) != BotConstants.PATRON_BOT_ID;
 
@@ -140,7 +140,8 @@ public class DatabaseConfiguration {
                     return emfb.getNativeEntityManagerFactory();
                 });
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        //closed after the shutdown tasks that still need the database, like the blacklist flush
+        shutdownHandler.addDatabaseShutdownTask(() -> {
             if (databaseManager.isCacheConnBuilt()) {
                 DatabaseConnection cacheDbConn = databaseManager.getCacheDbConn();
                 if (cacheDbConn != null) {
@@ -150,7 +151,7 @@ public class DatabaseConfiguration {
             if (databaseManager.isMainConnBuilt()) {
                 databaseManager.getMainDbConn().shutdown();
             }
-        }, "databasemanager-shutdown-hook"));
+        });
 
         return databaseManager;
     }
@@ -59,6 +59,52 @@ public interface AppConfig {
 
     boolean useAutoBlacklist();
 
+    /**
+     * @return milliseconds between two batched writes of changed blacklist entries to the database
+     */
+    long getBlacklistFlushIntervalMillis();
+
+    /**
+     * @return maximum amount of changed blacklist entries written to the database in a single batch
+     */
+    int getBlacklistFlushBatchSize();
+
+    /**
+     * @return milliseconds between two polls for blacklist entries changed by other instances sharing the database,
+     * or 0 if this instance is the only one
+     */
+    long getBlacklistSyncIntervalMillis();
+
+    /**
+     * @return how many users or guilds each ratelimit keeps track of at most
+     */
+    int getRatelimitMaxEntries();
+
+    /**
+     * @return how many played tracks each player keeps in its history
+     */
+    int getPlayerHistorySize();
+
+    /**
+     * @return how many tracks of spotify playlists are searched at the same time, across all guilds
+     */
+    int getSpotifyResolveParallelism();
+
+    /**
+     * @return how many track searches for spotify playlists may be started per minute, across all guilds
+     */
+    long getSpotifySearchesPerMinute();
+
+    /**
+     * @return how many tracks or playlists are loaded at the same time, across all guilds
+     */
+    int getMaxConcurrentLoads();
+
+    /**
+     * @return how many players are moved between lavalink nodes per second at most, when draining or rebalancing them
+     */
+    int getLavalinkMigrationsPerSecond();
+
     String getGame();
 
     boolean getContinuePlayback();
@@ -95,6 +95,15 @@ public class FileConfig implements AppConfig, AudioSourcesConfig, Credentials, E
     private boolean restServerEnabled;
     private List<String> adminIds = new ArrayList<>();
     private boolean useAutoBlacklist;
+    private long blacklistFlushIntervalMillis;
+    private int blacklistFlushBatchSize;
+    private long blacklistSyncIntervalMillis;
+    private int ratelimitMaxEntries;
+    private int playerHistorySize;
+    private int spotifyResolveParallelism;
+    private long spotifySearchesPerMinute;
+    private int maxConcurrentLoads;
+    private int lavalinkMigrationsPerSecond;
     private String game;
     private boolean continuePlayback;
 
@@ -197,6 +206,15 @@ public class FileConfig implements AppConfig, AudioSourcesConfig, Credentials, E
                 adminIds.add(admins + "");
             }
             useAutoBlacklist = (boolean) config.getOrDefault("useAutoBlacklist", true);
+            blacklistFlushIntervalMillis = ((Number) config.getOrDefault("blacklistFlushInterval", 10000)).longValue();
+            blacklistFlushBatchSize = ((Number) config.getOrDefault("blacklistFlushBatchSize", 500)).intValue();
+            blacklistSyncIntervalMillis = ((Number) config.getOrDefault("blacklistSyncInterval", 0)).longValue();
+            ratelimitMaxEntries = ((Number) config.getOrDefault("ratelimitMaxEntries", 100000)).intValue();
+            playerHistorySize = Math.max(1, ((Number) config.getOrDefault("playerHistorySize", 20)).intValue());
+            spotifyResolveParallelism = ((Number) config.getOrDefault("spotifyResolveParallelism", 4)).intValue();
+            spotifySearchesPerMinute = ((Number) config.getOrDefault("spotifySearchesPerMinute", 300)).longValue();
+            maxConcurrentLoads = ((Number) config.getOrDefault("maxConcurrentLoads", 50)).intValue();
+            lavalinkMigrationsPerSecond = ((Number) config.getOrDefault("lavalinkMigrationsPerSecond", 2)).intValue();
             game = (String) config.getOrDefault("game", "");
             continuePlayback = (boolean) config.getOrDefault("continuePlayback", false);
 
@@ -445,6 +463,51 @@ public class FileConfig implements AppConfig, AudioSourcesConfig, Credentials, E
         return useAutoBlacklist;
     }
 
+    @Override
+    public long getBlacklistFlushIntervalMillis() {
+        return blacklistFlushIntervalMillis;
+    }
+
+    @Override
+    public int getBlacklistFlushBatchSize() {
+        return blacklistFlushBatchSize;
+    }
+
+    @Override
+    public long getBlacklistSyncIntervalMillis() {
+        return blacklistSyncIntervalMillis;
+    }
+
+    @Override
+    public int getRatelimitMaxEntries() {
+        return ratelimitMaxEntries;
+    }
+
+    @Override
+    public int getPlayerHistorySize() {
+        return playerHistorySize;
+    }
+
+    @Override
+    public int getSpotifyResolveParallelism() {
+        return spotifyResolveParallelism;
+    }
+
+    @Override
+    public long getSpotifySearchesPerMinute() {
+        return spotifySearchesPerMinute;
+    }
+
+    @Override
+    public int getMaxConcurrentLoads() {
+        return maxConcurrentLoads;
+    }
+
+    @Override
+    public int getLavalinkMigrationsPerSecond() {
+        return lavalinkMigrationsPerSecond;
+    }
+
     @Override
     public String getGame() {
         if (game.isEmpty()) {
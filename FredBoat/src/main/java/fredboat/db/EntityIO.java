@@ -25,6 +25,9 @@
 
 package fredboat.db;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import fredboat.config.property.PropertyConfigProvider;
 import fredboat.db.api.*;
 import fredboat.db.entity.cache.SearchResult;
@@ -32,6 +35,8 @@ import fredboat.db.entity.main.*;
 import fredboat.db.repositories.api.*;
 import fredboat.util.DiscordUtil;
 import fredboat.util.func.NonnullSupplier;
+import fredboat.util.rest.CacheUtil;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import net.dv8tion.jda.core.entities.Guild;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +47,8 @@ import space.npstr.sqlsauce.entities.GuildBotComposite;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -68,9 +75,15 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     @Nullable
     private final SearchResultRepo searchResultRepo;
 
+    //snapshots of the guild settings that are looked up while handling pretty much every message. writes going through
+    // this class invalidate them, the refreshing takes care of changes made through other means (other FredBoat
+    // instances, manual edits of the database)
+    private final LoadingCache<Long, GuildSettings> guildSettings;
+
     public EntityIO(PropertyConfigProvider configProvider, BlacklistRepo blacklistRepo, GuildConfigRepo guildConfigRepo,
                     GuildDataRepo guildDataRepo, GuildModulesRepo guildModulesRepo, GuildPermsRepo guildPermsRepo,
-                    PrefixRepo prefixRepo, @Nullable SearchResultRepo searchResultRepo) {
+                    PrefixRepo prefixRepo, @Nullable SearchResultRepo searchResultRepo,
+                    CacheMetricsCollector cacheMetrics, ExecutorService executor) {
         this.configProvider = configProvider;
         this.blacklistRepo = blacklistRepo;
         this.guildConfigRepo = guildConfigRepo;
@@ -79,6 +92,14 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
         this.guildPermsRepo = guildPermsRepo;
         this.prefixRepo = prefixRepo;
         this.searchResultRepo = searchResultRepo;
+
+        this.guildSettings = CacheBuilder.newBuilder()
+                .recordStats()
+                .maximumSize(100000)
+                .refreshAfterWrite(1, TimeUnit.MINUTES) //NOTE: never use refreshing without async reloading, because Guavas cache uses the thread calling it to do cleanup tasks (including refreshing)
+                .expireAfterAccess(10, TimeUnit.MINUTES) //evict inactive guilds
+                .build(CacheLoader.asyncReloading(CacheLoader.from(this::loadGuildSettings), executor));
+        cacheMetrics.addCache("guildSettings", guildSettings);
     }
 
     /**
@@ -121,6 +142,33 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     }
 
 
+    // Guild settings stuff
+
+    /**
+     * @return a snapshot of the settings of the guild, served from memory if possible
+     */
+    public GuildSettings fetchGuildSettings(Guild guild) {
+        return fetchGuildSettings(guild.getIdLong());
+    }
+
+    /**
+     * @return a snapshot of the settings of the guild, served from memory if possible
+     */
+    public GuildSettings fetchGuildSettings(long guildId) {
+        return CacheUtil.getUncheckedUnwrapped(guildSettings, guildId);
+    }
+
+    private GuildSettings loadGuildSettings(long guildId) {
+        String id = Long.toString(guildId);
+        GuildBotComposite prefixId = new GuildBotComposite(guildId, DiscordUtil.getBotId(configProvider.getCredentials()));
+        return fetchUserFriendly(() -> new GuildSettings(guildId,
+                prefixRepo.getPrefix(prefixId),
+                guildConfigRepo.fetch(id),
+                guildModulesRepo.fetch(guildId),
+                guildPermsRepo.fetch(id)));
+    }
+
+
     // Blacklist stuff
 
     /**
@@ -132,11 +180,21 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
         return fetchUserFriendly(blacklistRepo::loadBlacklist);
     }
 
+    @Override
+    public List<BlacklistEntry> loadBlacklistChanges(long modifiedAfter) {
+        return fetchUserFriendly(() -> blacklistRepo.loadModifiedAfter(modifiedAfter));
+    }
+
     @Override
     public BlacklistEntry mergeBlacklistEntry(BlacklistEntry entry) {
         return fetchUserFriendly(() -> blacklistRepo.merge(entry));
     }
 
+    @Override
+    public void mergeBlacklistEntryIfNewer(BlacklistEntry entry) {
+        doUserFriendly(() -> blacklistRepo.mergeIfNewer(entry));
+    }
+
     @Override
     public void deleteBlacklistEntry(long id) {
         doUserFriendly(() -> blacklistRepo.delete(id));
@@ -154,7 +212,9 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     @Override
     public GuildConfig transformGuildConfig(Guild guild, Function<GuildConfig, GuildConfig> transformation) {
         GuildConfig guildConfig = fetchUserFriendly(() -> guildConfigRepo.fetch(guild));
-        return fetchUserFriendly(() -> guildConfigRepo.merge(transformation.apply(guildConfig)));
+        GuildConfig merged = fetchUserFriendly(() -> guildConfigRepo.merge(transformation.apply(guildConfig)));
+        guildSettings.invalidate(guild.getIdLong());
+        return merged;
     }
 
 
@@ -182,7 +242,9 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     @Override
     public GuildModules transformGuildModules(Guild guild, Function<GuildModules, GuildModules> transformation) {
         GuildModules guildModules = fetchUserFriendly(() -> guildModulesRepo.fetch(guild));
-        return fetchUserFriendly(() -> guildModulesRepo.merge(transformation.apply(guildModules)));
+        GuildModules merged = fetchUserFriendly(() -> guildModulesRepo.merge(transformation.apply(guildModules)));
+        guildSettings.invalidate(guild.getIdLong());
+        return merged;
     }
 
 
@@ -196,7 +258,9 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     @Override
     public GuildPermissions transformGuildPerms(Guild guild, Function<GuildPermissions, GuildPermissions> transformation) {
         GuildPermissions guildPerms = fetchUserFriendly(() -> guildPermsRepo.fetch(guild));
-        return fetchUserFriendly(() -> guildPermsRepo.merge(transformation.apply(guildPerms)));
+        GuildPermissions merged = fetchUserFriendly(() -> guildPermsRepo.merge(transformation.apply(guildPerms)));
+        guildSettings.invalidate(guild.getIdLong());
+        return merged;
     }
 
 
@@ -205,7 +269,9 @@ public class EntityIO implements BlacklistIO, GuildConfigIO, GuildDataIO, GuildM
     @Override
     public Prefix transformPrefix(Guild guild, Function<Prefix, Prefix> transformation) {
         Prefix prefix = fetchUserFriendly(() -> prefixRepo.fetch(new GuildBotComposite(guild, DiscordUtil.getBotId(configProvider.getCredentials()))));
-        return fetchUserFriendly(() -> prefixRepo.merge(transformation.apply(prefix)));
+        Prefix merged = fetchUserFriendly(() -> prefixRepo.merge(transformation.apply(prefix)));
+        guildSettings.invalidate(guild.getIdLong());
+        return merged;
     }
 
     @Override
@@ -0,0 +1,96 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package fredboat.db;
+
+import fredboat.db.entity.main.GuildConfig;
+import fredboat.db.entity.main.GuildModules;
+import fredboat.db.entity.main.GuildPermissions;
+import fredboat.definitions.Module;
+import fredboat.perms.CompiledPermissions;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the settings of a guild that are needed while handling pretty much every message, so they can
+ * be fetched from the database at once and be kept in memory by {@link EntityIO#fetchGuildSettings(long)}.
+ * <p>
+ * Don't hold on to these for longer than handling a single event, fetch a fresh one instead.
+ */
+public class GuildSettings {
+
+    private final long guildId;
+    @Nullable
+    private final String prefix;
+    private final String lang;
+    private final boolean trackAnnounce;
+    private final boolean autoResume;
+    private final List<Module> enabledModules;
+    private final CompiledPermissions permissions;
+
+    public GuildSettings(long guildId, @Nullable String prefix, GuildConfig guildConfig, GuildModules guildModules,
+                         GuildPermissions guildPermissions) {
+        this.guildId = guildId;
+        this.prefix = prefix;
+        this.lang = guildConfig.getLang();
+        this.trackAnnounce = guildConfig.isTrackAnnounce();
+        this.autoResume = guildConfig.isAutoResume();
+        this.enabledModules = Collections.unmodifiableList(guildModules.getEnabledModules());
+        this.permissions = CompiledPermissions.compile(guildPermissions);
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    /**
+     * @return the custom prefix of the guild, or null if it uses the default prefix
+     */
+    @Nullable
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public boolean isTrackAnnounce() {
+        return trackAnnounce;
+    }
+
+    public boolean isAutoResume() {
+        return autoResume;
+    }
+
+    public List<Module> getEnabledModules() {
+        return enabledModules;
+    }
+
+    public CompiledPermissions getPermissions() {
+        return permissions;
+    }
+}
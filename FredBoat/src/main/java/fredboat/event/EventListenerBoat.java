@@ -38,7 +38,7 @@ import fredboat.commandmeta.CommandInitializer;
 import fredboat.commandmeta.CommandManager;
 import fredboat.commandmeta.abs.CommandContext;
 import fredboat.config.property.AppConfig;
-import fredboat.db.api.GuildConfigIO;
+import fredboat.db.EntityIO;
 import fredboat.db.api.GuildDataIO;
 import fredboat.db.entity.main.GuildData;
 import fredboat.definitions.Module;
@@ -95,13 +95,13 @@ public class EventListenerBoat extends AbstractEventListener {
     private final Ratelimiter ratelimiter;
     private final AppConfig appConfig;
     private final GuildDataIO guildDataIO;
-    private final GuildConfigIO guildConfigIO;
+    private final EntityIO entityIO;
 
     public EventListenerBoat(CommandManager commandManager, CommandContextParser commandContextParser,
                              PlayerRegistry playerRegistry, CacheMetricsCollector cacheMetrics,
                              ShardStatsCounterProvider shardStatsCounterProvider, JdaEntityProvider jdaEntityProvider,
                              Ratelimiter ratelimiter, AppConfig appConfig, GuildDataIO guildDataIO,
-                             GuildConfigIO guildConfigIO) {
+                             EntityIO entityIO) {
         this.commandManager = commandManager;
         this.commandContextParser = commandContextParser;
         this.playerRegistry = playerRegistry;
@@ -110,7 +110,7 @@ public class EventListenerBoat extends AbstractEventListener {
         this.ratelimiter = ratelimiter;
         this.appConfig = appConfig;
         this.guildDataIO = guildDataIO;
-        this.guildConfigIO = guildConfigIO;
+        this.entityIO = entityIO;
         cacheMetrics.addCache("messagesToDeleteIfIdDeleted", messagesToDeleteIfIdDeleted);
     }
 
@@ -301,12 +301,13 @@ public class EventListenerBoat extends AbstractEventListener {
                 && player.getPlayingTrack() != null
                 && joinedChannel.getMembers().contains(guild.getSelfMember())
                 && player.getHumanUsersInCurrentVC().size() > 0
-                && guildConfigIO.fetchGuildConfig(guild).isAutoResume()
+                && entityIO.fetchGuildSettings(guild).isAutoResume()
                 ) {
             player.setPause(false);
             TextChannel activeTextChannel = player.getActiveTextChannel();
             if (activeTextChannel != null) {
-                CentralMessaging.sendMessage(activeTextChannel, I18n.get(guild).getString("eventAutoResumed"));
+                CentralMessaging.sendCoalescedAnnouncement(activeTextChannel,
+                        I18n.get(guild).getString("eventAutoResumed"));
             }
         }
     }
@@ -340,7 +341,8 @@ public class EventListenerBoat extends AbstractEventListener {
             player.pause();
             TextChannel activeTextChannel = player.getActiveTextChannel();
             if (activeTextChannel != null) {
-                CentralMessaging.sendMessage(activeTextChannel, I18n.get(guild).getString("eventUsersLeftVC"));
+                CentralMessaging.sendCoalescedAnnouncement(activeTextChannel,
+                        I18n.get(guild).getString("eventUsersLeftVC"));
             }
         }
     }
@@ -40,6 +40,7 @@ import fredboat.feature.I18n;
 import fredboat.jda.JdaEntityProvider;
 import fredboat.messaging.CentralMessaging;
 import fredboat.shared.constant.ExitCodes;
+import fredboat.util.DiscordUtil;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Member;
@@ -57,29 +58,54 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 public class MusicPersistenceHandler extends ListenerAdapter {
 
     private static final Logger log = LoggerFactory.getLogger(MusicPersistenceHandler.class);
+
+    private static final String PERSISTENCE_DIR = "music_persistence";
+    private static final int MAGIC = 0x46424D50; //"FBMP"
+    private static final int VERSION = 1;
+    private static final long NO_POSITION = -1;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 30;
+    //shard-<shard id>-<shard count>.bin
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)-(\\d+)\\.bin");
+    //one json file per guild, named after the guild id, written by older versions
+    private static final Pattern LEGACY_FILE = Pattern.compile("\\d{1,19}");
+
     private final PlayerRegistry playerRegistry;
     private final Credentials credentials;
     private final MusicTextChannelProvider musicTextChannelProvider;
     private final JdaEntityProvider jdaEntityProvider;
     private final AudioPlayerManager audioPlayerManager;
     private final AppConfig appConfig;
+    private final Object consumedLock = new Object();
 
     public MusicPersistenceHandler(PlayerRegistry playerRegistry, Credentials credentials,
                                    MusicTextChannelProvider musicTextChannelProvider, JdaEntityProvider jdaEntityProvider,
@@ -95,7 +121,7 @@ public class MusicPersistenceHandler extends ListenerAdapter {
 
     //this needs to happen before the shard manager is shut down, inside of a shutdown hook (for docker etc)
     public void handlePreShutdown(int code) {
-        File dir = new File("music_persistence");
+        File dir = new File(PERSISTENCE_DIR);
         if (!dir.exists()) {
             boolean created = dir.mkdir();
             if (!created) {
@@ -103,15 +129,17 @@ public class MusicPersistenceHandler extends ListenerAdapter {
                 return;
             }
         }
-        Map<Long, GuildPlayer> reg = playerRegistry.getRegistry();
+        //everything below shares one deadline, instead of blocking up to the timeout once per guild
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
 
         boolean isUpdate = code == ExitCodes.EXIT_CODE_UPDATE;
         boolean isRestart = code == ExitCodes.EXIT_CODE_RESTART;
 
-        for (long gId : reg.keySet()) {
+        //send out all announcements first, they will make their way to discord while we are writing the files
+        List<CompletableFuture<?>> announcements = new ArrayList<>();
+        Map<Integer, List<GuildPlayer>> playersByShard = new HashMap<>();
+        for (GuildPlayer player : playerRegistry.getRegistry().values()) {
             try {
-                GuildPlayer player = reg.get(gId);
-
                 String msg;
 
                 if (isUpdate) {
@@ -123,201 +151,414 @@ public class MusicPersistenceHandler extends ListenerAdapter {
                 }
 
                 TextChannel activeTextChannel = player.getActiveTextChannel();
-                List<CompletableFuture> announcements = new ArrayList<>();
                 if (activeTextChannel != null && player.isPlaying()) {
                     announcements.add(CentralMessaging.sendMessage(activeTextChannel, msg));
                 }
-                for (Future announcement : announcements) {
-                    try {
-                        announcement.get(30, TimeUnit.SECONDS); //30 seconds is enough on patron boat
-                    } catch (Exception ignored) {}
-                }
-
-                JSONObject data = new JSONObject();
-                VoiceChannel vc = player.getCurrentVoiceChannel();
-                data.put("vc", vc != null ? vc.getId() : "0");
-                data.put("tc", activeTextChannel != null ? activeTextChannel.getId() : "");
-                data.put("isPaused", player.isPaused());
-                data.put("volume", Float.toString(player.getVolume()));
-                data.put("repeatMode", player.getRepeatMode());
-                data.put("shuffle", player.isShuffle());
-
-                if (player.getPlayingTrack() != null) {
-                    data.put("position", player.getPosition());
-                }
 
-                ArrayList<JSONObject> identifiers = new ArrayList<>();
+                int shardId = DiscordUtil.getShardId(player.getGuildId(), credentials);
+                playersByShard.computeIfAbsent(shardId, __ -> new ArrayList<>()).add(player);
+            } catch (Exception ex) {
+                log.error("Error when preparing persistence of guild player", ex);
+            }
+        }
 
-                for (AudioTrackContext atc : player.getRemainingTracks()) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    audioPlayerManager.encodeTrack(new MessageOutput(baos), atc.getTrack());
+        //each shard gets its own file, so they can be written in parallel and each shard only reads its own file
+        // when starting up again with the same shard count
+        int threads = Math.max(1, Math.min(playersByShard.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService writers = Executors.newFixedThreadPool(threads,
+                runnable -> new Thread(runnable, "music-persistence-writer"));
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, List<GuildPlayer>> entry : playersByShard.entrySet()) {
+                writes.add(CompletableFuture.runAsync(() -> writeShard(dir, entry.getKey(), entry.getValue()), writers));
+            }
+            awaitAll(writes, deadline);
+        } finally {
+            writers.shutdownNow();
+        }
 
-                    JSONObject ident = new JSONObject()
-                            .put("message", Base64.encodeBase64String(baos.toByteArray()))
-                            .put("user", atc.getUserId());
+        awaitAll(announcements, deadline); //30 seconds is enough on patron boat
+    }
 
-                    if(atc instanceof SplitAudioTrackContext) {
-                        JSONObject split = new JSONObject();
-                        SplitAudioTrackContext c = (SplitAudioTrackContext) atc;
-                        split.put("title", c.getEffectiveTitle())
-                                .put("startPos", c.getStartPosition())
-                                .put("endPos", c.getStartPosition() + c.getEffectiveDuration());
+    private static void awaitAll(List<CompletableFuture<?>> futures, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(remaining, TimeUnit.NANOSECONDS);
+        } catch (Exception ignored) {}
+    }
 
-                        ident.put("split", split);
-                    }
+    private void writeShard(File dir, int shardId, List<GuildPlayer> players) {
+        List<byte[]> records = new ArrayList<>(players.size());
+        for (GuildPlayer player : players) {
+            try {
+                records.add(encodeGuild(player));
+            } catch (Exception ex) {
+                log.error("Error when encoding persistence data of guild {}", player.getGuildId(), ex);
+            }
+        }
 
-                    identifiers.add(ident);
+        File file = new File(dir, shardFileName(shardId));
+        File tmp = new File(dir, shardFileName(shardId) + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(credentials.getRecommendedShardCount());
+                out.writeInt(records.size());
+                for (byte[] record : records) {
+                    out.writeInt(record.length);
+                    out.write(record);
                 }
-
-                data.put("sources", identifiers);
-
-                try {
-                    FileUtils.writeStringToFile(new File(dir, Long.toString(gId)), data.toString(), Charset.forName("UTF-8"));
-                } catch (IOException ex) {
-                    if (activeTextChannel != null) {
-                        CentralMessaging.sendMessage(activeTextChannel,
-                                MessageFormat.format(I18n.get(player.getGuild()).getString("shutdownPersistenceFail"),
-                                        ex.getMessage()));
-                    }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} guild players of shard {} to {}", records.size(), shardId, file);
+        } catch (Exception ex) {
+            log.error("Error when saving persistence file of shard {}", shardId, ex);
+            for (GuildPlayer player : players) {
+                TextChannel activeTextChannel = player.getActiveTextChannel();
+                if (activeTextChannel != null) {
+                    CentralMessaging.sendMessage(activeTextChannel,
+                            MessageFormat.format(I18n.get(player.getGuild()).getString("shutdownPersistenceFail"),
+                                    ex.getMessage()));
                 }
-            } catch (Exception ex) {
-                log.error("Error when saving persistence file", ex);
             }
         }
     }
 
+    private byte[] encodeGuild(GuildPlayer player) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+
+        VoiceChannel vc = player.getCurrentVoiceChannel();
+        TextChannel activeTextChannel = player.getActiveTextChannel();
+        out.writeLong(player.getGuildId());
+        out.writeLong(vc != null ? vc.getIdLong() : 0);
+        out.writeLong(activeTextChannel != null ? activeTextChannel.getIdLong() : 0);
+        out.writeBoolean(player.isPaused());
+        out.writeFloat(player.getVolume());
+        out.writeUTF(player.getRepeatMode().name());
+        out.writeBoolean(player.isShuffle());
+        out.writeLong(player.getPlayingTrack() != null ? player.getPosition() : NO_POSITION);
+
+        List<AudioTrackContext> tracks = player.getRemainingTracks();
+        out.writeInt(tracks.size());
+        ByteArrayOutputStream encodedTrack = new ByteArrayOutputStream();
+        for (AudioTrackContext atc : tracks) {
+            encodedTrack.reset();
+            audioPlayerManager.encodeTrack(new MessageOutput(encodedTrack), atc.getTrack());
+
+            out.writeLong(atc.getUserId());
+            out.writeInt(encodedTrack.size());
+            encodedTrack.writeTo(out);
+
+            if (atc instanceof SplitAudioTrackContext) {
+                SplitAudioTrackContext c = (SplitAudioTrackContext) atc;
+                out.writeBoolean(true);
+                out.writeLong(c.getStartPosition());
+                out.writeLong(c.getStartPosition() + c.getEffectiveDuration());
+                out.writeUTF(c.getEffectiveTitle());
+            } else {
+                out.writeBoolean(false);
+            }
+        }
+
+        out.flush();
+        return record.toByteArray();
+    }
+
+    private String shardFileName(int shardId) {
+        return "shard-" + shardId + "-" + credentials.getRecommendedShardCount() + ".bin";
+    }
+
     @Override
     public void onReady(ReadyEvent event) {
-        //the current implementation of music persistence is not a good idea on big bots
-        if (credentials.getRecommendedShardCount() <= 10) {
-            try {
-                reloadPlaylists(event.getJDA());
-            } catch (Exception e) {
-                log.error("Uncaught exception when dispatching ready event to music persistence handler", e);
-            }
+        try {
+            reloadPlaylists(event.getJDA());
+        } catch (Exception e) {
+            log.error("Uncaught exception when dispatching ready event to music persistence handler", e);
         }
     }
 
     private void reloadPlaylists(JDA jda) {
-        File dir = new File("music_persistence");
-
         if (appConfig.isMusicDistribution()) {
             log.warn("Music persistence loading is disabled on the MUSIC distribution! Use PATRON or DEVELOPMENT instead"
                     + "How did this call end up in here anyways?");
             return;
         }
 
-        log.info("Began reloading playlists for shard {}", jda.getShardInfo().getShardId());
-        if (!dir.exists()) {
-            log.info("No music persistence directory found.");
-            return;
-        }
-        File[] files = dir.listFiles();
+        int shardId = jda.getShardInfo().getShardId();
+        int shardTotal = jda.getShardInfo().getShardTotal();
+        log.info("Began reloading playlists for shard {}", shardId);
+        File[] files = new File(PERSISTENCE_DIR).listFiles();
         if (files == null || files.length == 0) {
-            log.info("No files present in music persistence directory");
+            log.info("No music persistence files found");
             return;
         }
 
         for (File file : files) {
-            try {
-                Guild guild = jda.getGuildById(file.getName());
-                if (guild == null) {
-                    //only load guilds that are part of this shard
-                    continue;
+            Matcher shardFile = SHARD_FILE.matcher(file.getName());
+            if (shardFile.matches()) {
+                int fileShardId = Integer.parseInt(shardFile.group(1));
+                int fileShardTotal = Integer.parseInt(shardFile.group(2));
+                if (fileShardTotal == shardTotal) {
+                    if (fileShardId == shardId) {
+                        readShardFile(jda, file);
+                        deleteFile(file);
+                    }
+                } else {
+                    //written with a different shard count, so its guilds may belong to any of our shards now. every
+                    // shard loads the guilds it can resolve, and the last one to do so deletes the file
+                    log.info("Music persistence file {} was written with {} shards, running with {} now",
+                            file, fileShardTotal, shardTotal);
+                    if (!consumedMarker(file, shardId).exists()) {
+                        readShardFile(jda, file);
+                    }
+                    markConsumed(file, shardId, shardTotal);
                 }
-                JSONObject data = new JSONObject(FileUtils.readFileToString(file, Charset.forName("UTF-8")));
+            } else if (LEGACY_FILE.matcher(file.getName()).matches()) {
+                reloadLegacyFile(jda, file);
+            }
+        }
+    }
 
-                boolean isPaused = data.getBoolean("isPaused");
-                final JSONArray sources = data.getJSONArray("sources");
-                @Nullable VoiceChannel vc = jda.getVoiceChannelById(data.getString("vc"));
-                @Nullable TextChannel tc = jda.getTextChannelById(data.getString("tc"));
-                float volume = Float.parseFloat(data.getString("volume"));
-                RepeatMode repeatMode = data.getEnum(RepeatMode.class, "repeatMode");
-                boolean shuffle = data.getBoolean("shuffle");
+    private void readShardFile(JDA jda, File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != MAGIC || version != VERSION) {
+                log.warn("Ignoring music persistence file {} with unknown format {}/{}", file, magic, version);
+                return;
+            }
+            in.readInt(); //shard count, also part of the file name
 
-                GuildPlayer player = playerRegistry.getOrCreate(guild);
+            int guildCount = in.readInt();
+            for (int i = 0; i < guildCount; i++) {
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                try {
+                    reloadGuild(jda, record);
+                } catch (Exception ex) {
+                    log.error("Error when loading persisted guild player", ex);
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Error when loading persistence file", ex);
+        }
+    }
 
-                if (tc != null) {
-                    musicTextChannelProvider.setMusicChannel(tc);
+    /**
+     * Remembers that the shard has loaded its guilds from the file, and deletes the file once all shards did so.
+     * The markers are files too, so a restart before all shards are ready does not load any guild twice.
+     */
+    private void markConsumed(File file, int shardId, int shardTotal) {
+        synchronized (consumedLock) {
+            try {
+                Files.createFile(consumedMarker(file, shardId).toPath());
+            } catch (FileAlreadyExistsException ignored) {
+            } catch (IOException ex) {
+                log.error("Failed to mark persistence file {} as loaded by shard {}", file, shardId, ex);
+            }
+
+            for (int i = 0; i < shardTotal; i++) {
+                if (!consumedMarker(file, i).exists()) {
+                    return;
                 }
-                if (appConfig.getDistribution().volumeSupported()) {
-                    player.setVolume(volume);
+            }
+            deleteFile(file);
+            for (int i = 0; i < shardTotal; i++) {
+                deleteFile(consumedMarker(file, i));
+            }
+        }
+    }
+
+    private static File consumedMarker(File file, int shardId) {
+        return new File(file.getParentFile(), file.getName() + ".loaded-by-" + shardId);
+    }
+
+    private static void deleteFile(File file) {
+        boolean deleted = file.delete();
+        log.info(deleted ? "Deleted persistence file: " + file : "Failed to delete persistence file: " + file);
+    }
+
+    private void reloadGuild(JDA jda, byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        Guild guild = jda.getGuildById(in.readLong());
+        if (guild == null) {
+            //only load guilds that are part of this shard
+            return;
+        }
+        @Nullable VoiceChannel vc = jda.getVoiceChannelById(in.readLong());
+        @Nullable TextChannel tc = jda.getTextChannelById(in.readLong());
+        boolean isPaused = in.readBoolean();
+        float volume = in.readFloat();
+        RepeatMode repeatMode = RepeatMode.valueOf(in.readUTF());
+        boolean shuffle = in.readBoolean();
+        long position = in.readLong();
+
+        GuildPlayer player = playerRegistry.getOrCreate(guild);
+
+        if (tc != null) {
+            musicTextChannelProvider.setMusicChannel(tc);
+        }
+        if (appConfig.getDistribution().volumeSupported()) {
+            player.setVolume(volume);
+        }
+        player.setRepeatMode(repeatMode);
+        player.setShuffle(shuffle);
+
+        boolean isFirst = true;
+        int trackCount = in.readInt();
+        List<AudioTrackContext> tracks = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            long userId = in.readLong();
+            int length = in.readInt();
+            AudioTrack at = audioPlayerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(record,
+                    record.length - in.available(), length))).decodedTrack;
+            in.skipBytes(length);
+
+            boolean isSplit = in.readBoolean();
+            long startPos = 0;
+            long endPos = 0;
+            String title = null;
+            if (isSplit) {
+                startPos = in.readLong();
+                endPos = in.readLong();
+                title = in.readUTF();
+            }
+
+            if (at == null) {
+                log.error("Loaded track that was null! Skipping...");
+                continue;
+            }
+
+            Member member = guild.getMemberById(userId);
+            if (member == null)
+                member = guild.getSelfMember(); //member left the guild meanwhile, set ourselves as the one who added the song
+
+            // Handle split tracks
+            AudioTrackContext atc;
+            if (isSplit) {
+                atc = new SplitAudioTrackContext(jdaEntityProvider, at, member, startPos, endPos, title);
+                at.setPosition(startPos);
+            } else {
+                atc = new AudioTrackContext(jdaEntityProvider, at, member);
+            }
+
+            if (isFirst) {
+                isFirst = false;
+                if (position != NO_POSITION) {
+                    at.setPosition(startPos + position);
                 }
-                player.setRepeatMode(repeatMode);
-                player.setShuffle(shuffle);
+            }
 
-                final boolean[] isFirst = {true};
+            tracks.add(atc);
+        }
 
-                List<AudioTrackContext> tracks = new ArrayList<>();
-                sources.forEach((Object t) -> {
-                    JSONObject json = (JSONObject) t;
-                    byte[] message = Base64.decodeBase64(json.getString("message"));
-                    Member member = guild.getMemberById(json.getLong("user"));
-                    if (member == null)
-                        member = guild.getSelfMember(); //member left the guild meanwhile, set ourselves as the one who added the song
+        player.loadAll(tracks);
+        if (!isPaused) {
+            if (vc != null) {
+                try {
+                    player.joinChannel(vc);
+                    player.play();
+                } catch (Exception ignored) {}
+            }
+            if (tc != null) {
+                CentralMessaging.sendMessage(tc, MessageFormat.format(I18n.get(guild).getString("reloadSuccess"), trackCount));
+            }
+        }
+    }
 
-                    AudioTrack at;
-                    try {
-                        ByteArrayInputStream bais = new ByteArrayInputStream(message);
-                        at = audioPlayerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
+    /**
+     * Loads a player saved as json by older versions. Like the binary records, the file is loaded by the shard that
+     * can resolve its guild. Files of guilds that belong to this shard, but are gone, are deleted as well.
+     */
+    private void reloadLegacyFile(JDA jda, File file) {
+        long guildId = Long.parseLong(file.getName());
+        Guild guild = jda.getGuildById(guildId);
+        if (guild == null) {
+            if (DiscordUtil.getShardId(guildId, credentials) == jda.getShardInfo().getShardId()) {
+                deleteFile(file);
+            }
+            return;
+        }
 
-                    if (at == null) {
-                        log.error("Loaded track that was null! Skipping...");
-                        return;
-                    }
+        try {
+            JSONObject data = new JSONObject(FileUtils.readFileToString(file, Charset.forName("UTF-8")));
 
-                    // Handle split tracks
-                    AudioTrackContext atc;
-                    JSONObject split = json.optJSONObject("split");
-                    if(split != null) {
-                        atc = new SplitAudioTrackContext(jdaEntityProvider, at, member,
-                                split.getLong("startPos"),
-                                split.getLong("endPos"),
-                                split.getString("title")
-                        );
-                        at.setPosition(split.getLong("startPos"));
-
-                        if (isFirst[0]) {
-                            isFirst[0] = false;
-                            if (data.has("position")) {
-                                at.setPosition(split.getLong("startPos") + data.getLong("position"));
-                            }
-                        }
-                    } else {
-                        atc = new AudioTrackContext(jdaEntityProvider, at, member);
-
-                        if (isFirst[0]) {
-                            isFirst[0] = false;
-                            if (data.has("position")) {
-                                at.setPosition(data.getLong("position"));
-                            }
-                        }
-                    }
+            boolean isPaused = data.getBoolean("isPaused");
+            final JSONArray sources = data.getJSONArray("sources");
+            @Nullable VoiceChannel vc = jda.getVoiceChannelById(data.getString("vc"));
+            @Nullable TextChannel tc = jda.getTextChannelById(data.getString("tc"));
+            float volume = Float.parseFloat(data.getString("volume"));
+            RepeatMode repeatMode = data.getEnum(RepeatMode.class, "repeatMode");
+            boolean shuffle = data.getBoolean("shuffle");
 
-                    tracks.add(atc);
-                });
+            GuildPlayer player = playerRegistry.getOrCreate(guild);
 
-                player.loadAll(tracks);
-                if (!isPaused) {
-                    if (vc != null) {
-                        try {
-                            player.joinChannel(vc);
-                            player.play();
-                        } catch (Exception ignored) {}
-                    }
-                    if (tc != null) {
-                        CentralMessaging.sendMessage(tc, MessageFormat.format(I18n.get(guild).getString("reloadSuccess"), sources.length()));
+            if (tc != null) {
+                musicTextChannelProvider.setMusicChannel(tc);
+            }
+            if (appConfig.getDistribution().volumeSupported()) {
+                player.setVolume(volume);
+            }
+            player.setRepeatMode(repeatMode);
+            player.setShuffle(shuffle);
+
+            boolean isFirst = true;
+            List<AudioTrackContext> tracks = new ArrayList<>();
+            for (Object t : sources) {
+                JSONObject json = (JSONObject) t;
+                byte[] message = Base64.decodeBase64(json.getString("message"));
+                Member member = guild.getMemberById(json.getLong("user"));
+                if (member == null)
+                    member = guild.getSelfMember(); //member left the guild meanwhile, set ourselves as the one who added the song
+
+                AudioTrack at = audioPlayerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(message))).decodedTrack;
+                if (at == null) {
+                    log.error("Loaded track that was null! Skipping...");
+                    continue;
+                }
+
+                // Handle split tracks
+                AudioTrackContext atc;
+                long startPos = 0;
+                JSONObject split = json.optJSONObject("split");
+                if (split != null) {
+                    startPos = split.getLong("startPos");
+                    atc = new SplitAudioTrackContext(jdaEntityProvider, at, member,
+                            startPos, split.getLong("endPos"), split.getString("title"));
+                    at.setPosition(startPos);
+                } else {
+                    atc = new AudioTrackContext(jdaEntityProvider, at, member);
+                }
+
+                if (isFirst) {
+                    isFirst = false;
+                    if (data.has("position")) {
+                        at.setPosition(startPos + data.getLong("position"));
                     }
                 }
-            } catch (Exception ex) {
-                log.error("Error when loading persistence file", ex);
+
+                tracks.add(atc);
+            }
+
+            player.loadAll(tracks);
+            if (!isPaused) {
+                if (vc != null) {
+                    try {
+                        player.joinChannel(vc);
+                        player.play();
+                    } catch (Exception ignored) {}
+                }
+                if (tc != null) {
+                    CentralMessaging.sendMessage(tc, MessageFormat.format(I18n.get(guild).getString("reloadSuccess"), sources.length()));
+                }
             }
-            boolean deleted = file.delete();
-            log.info(deleted ? "Deleted persistence file: " + file : "Failed to delete persistence file: " + file);
+        } catch (Exception ex) {
+            log.error("Error when loading legacy persistence file", ex);
         }
+        deleteFile(file);
     }
 
 }
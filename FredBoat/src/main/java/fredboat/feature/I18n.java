@@ -33,8 +33,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
@@ -96,7 +99,7 @@ public class I18n {
     @Nonnull
     public static FredBoatLocale getLocale(@Nonnull Guild guild) {
         try {
-            return LANGS.getOrDefault(Launcher.getBotController().getEntityIO().fetchGuildConfig(guild).getLang(), DEFAULT);
+            return LANGS.getOrDefault(Launcher.getBotController().getEntityIO().fetchGuildSettings(guild).getLang(), DEFAULT);
         } catch (DatabaseNotReadyException e) {
             //don't log spam the full exceptions or logs
             return DEFAULT;
@@ -113,18 +116,73 @@ public class I18n {
         Launcher.getBotController().getEntityIO().transformGuildConfig(guild, config -> config.setLang(lang));
     }
 
+    /**
+     * Besides the ResourceBundle of a language, this holds a flat catalog of all of its strings, and of all of them that
+     * are valid {@link MessageFormat} patterns in their precompiled form, so that formatting a string does not require
+     * looking it up in the bundle hierarchy or parsing its pattern again.
+     */
     public static class FredBoatLocale {
 
         private final Locale locale;
         private final String code;
         private final ResourceBundle props;
         private final String nativeName;
+        private final Map<String, String> strings;
+        //MessageFormats aren't threadsafe, so the instances are locked while formatting. formatting is fast enough that
+        // this hardly ever contends, unlike creating a fresh instance per call, which always pays for parsing the pattern
+        private final Map<String, MessageFormat> formats;
 
         FredBoatLocale(Locale locale, String code, String nativeName) throws MissingResourceException {
             this.locale = locale;
             this.code = code;
             props = ResourceBundle.getBundle("lang." + code, locale);
             this.nativeName = nativeName;
+
+            Map<String, String> stringsBuilder = new HashMap<>();
+            Map<String, MessageFormat> formatsBuilder = new HashMap<>();
+            for (String key : props.keySet()) {
+                String value = props.getString(key);
+                stringsBuilder.put(key, value);
+                try {
+                    formatsBuilder.put(key, new MessageFormat(value));
+                } catch (IllegalArgumentException ignored) {
+                    //not every string is meant to be a pattern
+                }
+            }
+            this.strings = Collections.unmodifiableMap(stringsBuilder);
+            this.formats = Collections.unmodifiableMap(formatsBuilder);
+        }
+
+        /**
+         * @return the string of the provided key, or null if this language does not have it
+         */
+        @Nullable
+        public String getString(@Nonnull String key) {
+            return strings.get(key);
+        }
+
+        /**
+         * @return the string of the provided key formatted with the provided params, or null if this language does not
+         * have it, or it is not a valid pattern
+         * @throws IllegalArgumentException if the params don't fit the pattern
+         */
+        @Nullable
+        public String format(@Nonnull String key, Object... params) {
+            MessageFormat format = formats.get(key);
+            if (format == null) {
+                return null;
+            }
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (format) {
+                return format.format(params);
+            }
+        }
+
+        /**
+         * @return true if the string of the provided key is a valid pattern
+         */
+        public boolean hasFormat(@Nonnull String key) {
+            return formats.containsKey(key);
         }
 
         public Locale getLocale() {
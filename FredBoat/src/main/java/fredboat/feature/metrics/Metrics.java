@@ -31,6 +31,7 @@ import fredboat.command.info.HelpCommand;
 import fredboat.feature.metrics.collectors.FredBoatCollector;
 import fredboat.feature.metrics.collectors.ThreadPoolCollector;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import io.prometheus.client.hotspot.DefaultExports;
@@ -104,6 +105,11 @@ public class Metrics {
             .labelNames("error_response_code") //Use the error response codes like: 50013, 10008 etc
             .register();
 
+    public static final Counter coalescedMessages = Counter.build()
+            .name("fredboat_jda_messages_coalesced_total")
+            .help("Total announcements that were merged into another message instead of being sent on their own")
+            .register();
+
 
     // ################################################################################
     // ##                        FredBoat Stats
@@ -128,6 +134,18 @@ public class Metrics {
             .labelNames("class") // use the simple name of the command class
             .register();
 
+    public static final Gauge ratelimitEntries = Gauge.build()
+            .name("fredboat_ratelimit_entries_current")
+            .help("Ids currently tracked by a ratelimit")
+            .labelNames("limit") // scope and simple name of the limited class: user_SkipCommand, guild_Command etc
+            .register();
+
+    public static final Counter ratelimitEvictions = Counter.build()
+            .name("fredboat_ratelimit_evictions_total")
+            .help("Total ids evicted from a ratelimit for being idle or exceeding its maximum size")
+            .labelNames("limit") // scope and simple name of the limited class: user_SkipCommand, guild_Command etc
+            .register();
+
 
     //music stuff
 
@@ -142,6 +160,12 @@ public class Metrics {
             .labelNames("source") //cache, youtube, soundcloud etc
             .register();
 
+    public static final Counter searchCacheL1 = Counter.build()//lookups of the in-memory search cache
+            .name("fredboat_music_search_cache_l1_total")
+            .help("Total lookups of the in-memory search cache")
+            .labelNames("result") //hit, miss, coalesced
+            .register();
+
     public static final Counter tracksLoaded = Counter.build()
             .name("fredboat_music_tracks_loaded_total")
             .help("Total tracks loaded by the audio loader")
@@ -152,6 +176,34 @@ public class Metrics {
             .help("Total failed track loads by the audio loader")
             .register();
 
+    public static final Gauge loadsQueued = Gauge.build()
+            .name("fredboat_music_loads_queued_current")
+            .help("Loads waiting in the load scheduler")
+            .register();
+
+    public static final Gauge loadsRunning = Gauge.build()
+            .name("fredboat_music_loads_running_current")
+            .help("Loads started by the load scheduler that have not finished yet")
+            .register();
+
+    public static final Histogram loadWaitTime = Histogram.build()
+            .name("fredboat_music_load_wait_seconds")
+            .help("Time loads spent waiting in the load scheduler before being started")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30, 60)
+            .register();
+
+    public static final Counter lavalinkMigrations = Counter.build()
+            .name("fredboat_lavalink_player_migrations_total")
+            .help("Players moved from one lavalink node to another")
+            .labelNames("reason") //drain or overload
+            .register();
+
+    public static final Counter lavalinkMigrationsFailed = Counter.build()
+            .name("fredboat_lavalink_player_migrations_failed_total")
+            .help("Players that could not be moved from one lavalink node to another")
+            .labelNames("reason") //drain or overload
+            .register();
+
     public static final Counter voiceChannelsCleanedUp = Counter.build()
             .name("fredboat_music_voicechannels_cleanedup_total")
             .help("Total voice channels that were cleaned up by the voice channel agent")
@@ -59,6 +59,9 @@ public enum FeatureFlags implements Feature {
     @Label("Full instrumentation, including multidimensional per command stats")
     FULL_METRICS,
 
+    @Label("Merge player announcements sent to the same channel in quick succession")
+    MESSAGE_COALESCING,
+
     ;
 
     public boolean isActive() {
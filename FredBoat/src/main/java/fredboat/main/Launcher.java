@@ -3,6 +3,7 @@ package fredboat.main;
 import com.sedmelluq.discord.lavaplayer.tools.PlayerLibrary;
 import fredboat.agent.CarbonitexAgent;
 import fredboat.agent.FredBoatAgent;
+import fredboat.agent.LavalinkRebalancerAgent;
 import fredboat.agent.StatsAgent;
 import fredboat.agent.VoiceChannelCleanupAgent;
 import fredboat.api.API;
@@ -26,6 +27,7 @@ import fredboat.util.rest.Http;
 import fredboat.util.rest.TrackSearcher;
 import fredboat.util.rest.Weather;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import net.dv8tion.jda.bot.sharding.ShardManager;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.JDAInfo;
 import okhttp3.Credentials;
@@ -91,6 +93,7 @@ public class Launcher implements ApplicationRunner {
     private final VideoSelectionCache videoSelectionCache;
     private final ShardProvider shardProvider;
     private final GuildProvider guildProvider;
+    private final ShardManager shardManager;
 
     public static void main(String[] args) throws IllegalArgumentException, DatabaseException {
         //just post the info to the console
@@ -140,7 +143,8 @@ public class Launcher implements ApplicationRunner {
                     MetricsServletAdapter metricsServlet, CacheMetricsCollector cacheMetrics, PlayerRegistry playerRegistry,
                     StatsAgent statsAgent, BotMetrics botMetrics, Weather weather,
                     AudioConnectionFacade audioConnectionFacade, TrackSearcher trackSearcher,
-                    VideoSelectionCache videoSelectionCache, ShardProvider shardProvider, GuildProvider guildProvider) {
+                    VideoSelectionCache videoSelectionCache, ShardProvider shardProvider, GuildProvider guildProvider,
+                    ShardManager shardManager) {
         Launcher.BC = botController;
         this.configProvider = configProvider;
         this.executor = executor;
@@ -155,6 +159,7 @@ public class Launcher implements ApplicationRunner {
         this.videoSelectionCache = videoSelectionCache;
         this.shardProvider = shardProvider;
         this.guildProvider = guildProvider;
+        this.shardManager = shardManager;
     }
 
     @Override
@@ -174,12 +179,20 @@ public class Launcher implements ApplicationRunner {
 
         if (!configProvider.getAppConfig().isPatronDistribution()) {
             log.info("Starting VoiceChannelCleanupAgent.");
-            FredBoatAgent.start(new VoiceChannelCleanupAgent(playerRegistry, guildProvider, audioConnectionFacade));
+            VoiceChannelCleanupAgent voiceChannelCleanupAgent
+                    = new VoiceChannelCleanupAgent(playerRegistry, guildProvider, audioConnectionFacade);
+            shardManager.addEventListener(voiceChannelCleanupAgent);
+            voiceChannelCleanupAgent.start();
         } else {
             log.info("Skipped setting up the VoiceChannelCleanupAgent, " +
                     "either running Patron distro or overridden by temp config");
         }
 
+        if (!audioConnectionFacade.isLocal()) {
+            FredBoatAgent.start(new LavalinkRebalancerAgent(audioConnectionFacade, playerRegistry,
+                    configProvider.getAppConfig().getLavalinkMigrationsPerSecond()));
+        }
+
         //Check MAL creds
         executor.submit(this::hasValidMALLogin);
 
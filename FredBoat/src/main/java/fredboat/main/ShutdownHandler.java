@@ -28,8 +28,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Created by napster on 23.02.18.
+ * <p>
+ * JVM shutdown hooks run concurrently and in no particular order. Shutdown work that depends on the database, like
+ * persisting pending changes, is registered here instead, and is run by a single shutdown hook right before the
+ * database connections are closed.
  */
 @Component
 public class ShutdownHandler {
@@ -40,6 +47,13 @@ public class ShutdownHandler {
 
     private int shutdownCode = UNKNOWN_SHUTDOWN_CODE;//Used when specifying the intended code for shutdown hooks
 
+    private final List<Runnable> databaseDependentTasks = new CopyOnWriteArrayList<>();
+    private final List<Runnable> databaseShutdownTasks = new CopyOnWriteArrayList<>();
+
+    public ShutdownHandler() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::runOrderedShutdown, "ordered-shutdown-hook"));
+    }
+
     public void shutdown(int code) {
         log.info("Shutting down with exit code " + code);
         shutdownCode = code;
@@ -49,4 +63,35 @@ public class ShutdownHandler {
     public int getShutdownCode() {
         return shutdownCode;
     }
+
+    /**
+     * @param task run on shutdown while the database connections are still open
+     */
+    public void addDatabaseDependentTask(Runnable task) {
+        databaseDependentTasks.add(task);
+    }
+
+    /**
+     * @param task run on shutdown after all database dependent tasks are done, to close database connections
+     */
+    public void addDatabaseShutdownTask(Runnable task) {
+        databaseShutdownTasks.add(task);
+    }
+
+    private void runOrderedShutdown() {
+        for (Runnable task : databaseDependentTasks) {
+            runShutdownTask(task);
+        }
+        for (Runnable task : databaseShutdownTasks) {
+            runShutdownTask(task);
+        }
+    }
+
+    private static void runShutdownTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Exception in shutdown task", e);
+        }
+    }
 }
@@ -27,6 +27,7 @@ package fredboat.messaging;
 
 import fredboat.feature.I18n;
 import fredboat.feature.metrics.Metrics;
+import fredboat.feature.togglz.FeatureFlags;
 import fredboat.shared.constant.BotConstants;
 import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.MessageBuilder;
@@ -50,8 +51,10 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -78,6 +81,14 @@ public class CentralMessaging {
     public static final ScheduledExecutorService restService = Executors.newScheduledThreadPool(10,
             runnable -> new Thread(runnable, "central-messaging-scheduler"));
 
+    //announcements sent to the same channel within this window are merged into a single message, if the
+    // MESSAGE_COALESCING feature flag is active
+    private static final long COALESCING_WINDOW_MILLIS = 200;
+
+    //channel id -> announcements waiting to be sent to that channel
+    @Nonnull
+    private static final ConcurrentHashMap<Long, CoalescedMessage> coalescedMessages = new ConcurrentHashMap<>();
+
 
     // ********************************************************************************
     //       Thread local handling and providing of Messages and Embeds builders
@@ -248,6 +259,44 @@ public class CentralMessaging {
         );
     }
 
+    /**
+     * Sends a plain text announcement that nobody needs to refer back to, like the track announcements of the player.
+     * If the MESSAGE_COALESCING feature flag is active, announcements sent to the same channel in quick succession are
+     * merged into a single message. Since that message may contain the text of other announcements, it is not handed
+     * out to the caller. Use one of the sendMessage methods for messages that are edited or deleted later on.
+     */
+    public static void sendCoalescedAnnouncement(@Nonnull MessageChannel channel, @Nonnull String content) {
+        if (content.isEmpty() || content.length() > Message.MAX_CONTENT_LENGTH
+                || !FeatureFlags.MESSAGE_COALESCING.isActive()) {
+            sendMessage0(channel, from(content), null, null);
+            return;
+        }
+
+        CoalescedMessage[] full = new CoalescedMessage[1];
+        CoalescedMessage[] created = new CoalescedMessage[1];
+        coalescedMessages.compute(channel.getIdLong(), (channelId, pending) -> {
+            if (pending != null && pending.tryAdd(content)) {
+                Metrics.coalescedMessages.inc();
+                return pending;
+            }
+            //no space left in the pending message, or there is none yet
+            full[0] = pending;
+            created[0] = new CoalescedMessage(channel, content);
+            return created[0];
+        });
+
+        if (full[0] != null) {
+            full[0].send();
+        }
+        if (created[0] != null) {
+            CoalescedMessage coalesced = created[0];
+            restService.schedule(() -> {
+                coalescedMessages.remove(channel.getIdLong(), coalesced);
+                coalesced.send();
+            }, COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
     // ********************************************************************************
     //                            File sending methods
     // ********************************************************************************
@@ -493,6 +542,26 @@ public class CentralMessaging {
     @Nonnull
     private static MessageFuture sendMessage0(@Nonnull MessageChannel channel, @Nonnull Message message,
                                               @Nullable Consumer<Message> onSuccess, @Nullable Consumer<Throwable> onFail) {
+        //keep the order of messages, announcements that are still waiting were sent before this one
+        flushCoalescedMessages(channel);
+        return queueMessage0(channel, message, onSuccess, onFail);
+    }
+
+    //sends out the announcements waiting for the provided channel right away
+    private static void flushCoalescedMessages(@Nonnull MessageChannel channel) {
+        if (coalescedMessages.isEmpty()) {
+            return;
+        }
+        CoalescedMessage pending = coalescedMessages.remove(channel.getIdLong());
+        if (pending != null) {
+            pending.send();
+        }
+    }
+
+    //class internal method that actually queues a message with JDA
+    @Nonnull
+    private static MessageFuture queueMessage0(@Nonnull MessageChannel channel, @Nonnull Message message,
+                                               @Nullable Consumer<Message> onSuccess, @Nullable Consumer<Throwable> onFail) {
         MessageFuture result = new MessageFuture();
         Consumer<Message> successWrapper = m -> {
             result.complete(m);
@@ -534,6 +603,7 @@ public class CentralMessaging {
     private static MessageFuture sendFile0(@Nonnull MessageChannel channel, @Nonnull File file, @Nullable Message message,
                                            @Nullable Consumer<Message> onSuccess, @Nullable Consumer<Throwable> onFail) {
 
+        flushCoalescedMessages(channel); //keep the order of messages
         MessageFuture result = new MessageFuture();
         Consumer<Message> successWrapper = m -> {
             result.complete(m);
@@ -636,4 +706,45 @@ public class CentralMessaging {
         };
     }
 
+
+    /**
+     * Announcements for a single channel that will be sent as one message. Parts can be added until it is sent or there
+     * is no space left for them.
+     */
+    private static class CoalescedMessage {
+
+        private final MessageChannel channel;
+        private final StringBuilder content = new StringBuilder(); //guarded by this
+        private boolean sent = false; //guarded by this
+
+        CoalescedMessage(MessageChannel channel, String first) {
+            this.channel = channel;
+            this.content.append(first);
+        }
+
+        /**
+         * @return false if the part could not be added, because this message has already been sent or does not have
+         * enough space left
+         */
+        synchronized boolean tryAdd(String part) {
+            if (sent || content.length() + 1 + part.length() > Message.MAX_CONTENT_LENGTH) {
+                return false;
+            }
+            content.append('\n').append(part);
+            return true;
+        }
+
+        //sends this message once, any further calls are ignored
+        void send() {
+            String text;
+            synchronized (this) {
+                if (sent) {
+                    return;
+                }
+                sent = true;
+                text = content.toString();
+            }
+            queueMessage0(channel, from(text), null, null);
+        }
+    }
 }
@@ -176,10 +176,11 @@ public abstract class Context {
      */
     @CheckReturnValue
     public String i18n(@Nonnull String key) {
-        if (getI18n().containsKey(key)) {
-            return getI18n().getString(key);
+        String value = getI18nLocale().getString(key);
+        if (value != null) {
+            return value;
         } else {
-            log.warn("Missing language entry for key {} in language {}", key, I18n.getLocale(getGuild()).getCode());
+            log.warn("Missing language entry for key {} in language {}", key, getI18nLocale().getCode());
             return I18n.DEFAULT.getProps().getString(key);
         }
     }
@@ -198,10 +199,15 @@ public abstract class Context {
                     new MessagingException("a stack trace to help find the source"));
         }
         try {
+            String formatted = getI18nLocale().format(key, params);
+            if (formatted != null) {
+                return formatted;
+            }
+            //missing in this language, or not a pattern at all
             return MessageFormat.format(this.i18n(key), params);
         } catch (IllegalArgumentException e) {
             log.warn("Failed to format key '{}' for language '{}' with following parameters: {}",
-                    key, getI18n().getBaseBundleName(), params, e);
+                    key, getI18nLocale().getCode(), params, e);
             //fall back to default props
             return MessageFormat.format(I18n.DEFAULT.getProps().getString(key), params);
         }
@@ -220,14 +226,20 @@ public abstract class Context {
     //                         Internal context stuff
     // ********************************************************************************
 
-    private ResourceBundle i18n;
+    private I18n.FredBoatLocale i18nLocale;
 
     @Nonnull
-    public ResourceBundle getI18n() {
-        if (this.i18n == null) {
-            this.i18n = I18n.get(getGuild());
+    public I18n.FredBoatLocale getI18nLocale() {
+        if (this.i18nLocale == null) {
+            Guild guild = getGuild();
+            this.i18nLocale = guild == null ? I18n.DEFAULT : I18n.getLocale(guild);
         }
-        return this.i18n;
+        return this.i18nLocale;
+    }
+
+    @Nonnull
+    public ResourceBundle getI18n() {
+        return getI18nLocale().getProps();
     }
 
     private static MessageEmbed embedImage(String url) {
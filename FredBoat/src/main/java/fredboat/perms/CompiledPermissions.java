@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.perms;
+
+import fredboat.db.entity.main.GuildPermissions;
+import fredboat.definitions.PermissionLevel;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
+
+import java.util.List;
+
+/**
+ * The permission lists of a guild, parsed into sets of member and role ids, so that looking up the level of a member
+ * does not need to split strings or to resolve roles by their id.
+ * <p>
+ * Immutable. Compiled once per loaded {@link GuildPermissions} entity, which happens when the guild settings are
+ * (re)loaded after the entity was merged.
+ */
+public class CompiledPermissions {
+
+    private final LongSet adminIds;
+    private final LongSet djIds;
+    private final LongSet userIds;
+
+    public CompiledPermissions(List<String> adminList, List<String> djList, List<String> userList) {
+        this.adminIds = toIdSet(adminList);
+        this.djIds = toIdSet(djList);
+        this.userIds = toIdSet(userList);
+    }
+
+    public static CompiledPermissions compile(GuildPermissions guildPermissions) {
+        return new CompiledPermissions(guildPermissions.getAdminList(), guildPermissions.getDjList(),
+                guildPermissions.getUserList());
+    }
+
+    /**
+     * @return the highest level that these lists grant to the member, or {@link PermissionLevel#BASE} if none. Does not
+     * look at discord permissions or bot admins, see {@link PermsUtil#getPerms(Member)} for that.
+     */
+    public PermissionLevel getLevel(Member member) {
+        if (matches(adminIds, member)) return PermissionLevel.ADMIN;
+        if (matches(djIds, member)) return PermissionLevel.DJ;
+        if (matches(userIds, member)) return PermissionLevel.USER;
+
+        return PermissionLevel.BASE;
+    }
+
+    private static boolean matches(LongSet ids, Member member) {
+        if (ids.isEmpty()) return false;
+        if (ids.contains(member.getUser().getIdLong())) return true;
+        //the public role has the same id as the guild, and every member holds it
+        if (ids.contains(member.getGuild().getIdLong())) return true;
+
+        for (Role role : member.getRoles()) {
+            if (ids.contains(role.getIdLong())) return true;
+        }
+        return false;
+    }
+
+    private static LongSet toIdSet(List<String> list) {
+        LongOpenHashSet ids = new LongOpenHashSet(list.size());
+        for (String id : list) {
+            if (id.isEmpty()) continue;
+            try {
+                ids.add(Long.parseLong(id));
+            } catch (NumberFormatException ignored) {
+                //not a snowflake, can't match anything
+            }
+        }
+        if (ids.isEmpty()) {
+            return LongSets.EMPTY_SET;
+        }
+        ids.trim();
+        return ids;
+    }
+}
@@ -26,7 +26,7 @@
 package fredboat.perms;
 
 import fredboat.commandmeta.abs.CommandContext;
-import fredboat.db.entity.main.GuildPermissions;
+import fredboat.db.GuildSettings;
 import fredboat.definitions.PermissionLevel;
 import fredboat.feature.togglz.FeatureFlags;
 import fredboat.main.Launcher;
@@ -55,13 +55,8 @@ public class PermsUtil {
             return member.hasPermission(Permission.MESSAGE_MANAGE) ? PermissionLevel.DJ : PermissionLevel.USER;
         }
 
-        GuildPermissions gp = Launcher.getBotController().getEntityIO().fetchGuildPermissions(member.getGuild());
-
-        if (checkList(gp.getAdminList(), member)) return PermissionLevel.ADMIN;
-        if (checkList(gp.getDjList(), member)) return PermissionLevel.DJ;
-        if (checkList(gp.getUserList(), member)) return PermissionLevel.USER;
-
-        return PermissionLevel.BASE;
+        GuildSettings gs = Launcher.getBotController().getEntityIO().fetchGuildSettings(member.getGuild());
+        return gs.getPermissions().getLevel(member);
     }
 
     /**
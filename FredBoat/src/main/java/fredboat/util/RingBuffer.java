@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed capacity buffer that keeps the most recently added elements, overwriting the oldest one once it is full.
+ * <p>
+ * Adding claims a slot by incrementing a counter and writes to it, without any locking. Reads are indexed from the
+ * newest element (index 0) to the oldest one, and are constant time. A reader racing a writer may see an element that
+ * is just about to be overwritten, which is fine for the kind of data kept in here (like a track history).
+ */
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacity;
+    //total amount of elements ever added; the next element goes into slot (written % capacity)
+    private final AtomicLong written = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, but is " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(T element) {
+        long index = written.getAndIncrement();
+        slots.set((int) (index % capacity), element);
+    }
+
+    /**
+     * @param index position counted from the newest element, which has index 0
+     * @return the element at that position, or null if the buffer does not hold that many elements
+     */
+    @Nullable
+    public T get(int index) {
+        long count = written.get();
+        if (index < 0 || index >= Math.min(count, capacity)) {
+            return null;
+        }
+        return slots.get((int) ((count - 1 - index) % capacity));
+    }
+
+    /**
+     * @return a snapshot of the elements between from (inclusive) and to (exclusive), newest first. The range is
+     * clamped to the elements actually held.
+     */
+    public List<T> getRange(int from, int to) {
+        long count = written.get();
+        int size = (int) Math.min(count, capacity);
+        from = Math.max(from, 0);
+        to = Math.min(to, size);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+
+        List<T> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            T element = slots.get((int) ((count - 1 - i) % capacity));
+            if (element != null) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return (int) Math.min(written.get(), capacity);
+    }
+
+    public boolean isEmpty() {
+        return written.get() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
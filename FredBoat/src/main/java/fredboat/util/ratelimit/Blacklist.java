@@ -28,23 +28,39 @@ import fredboat.db.api.BlacklistIO;
 import fredboat.db.entity.main.BlacklistEntry;
 import fredboat.feature.metrics.Metrics;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by napster on 17.04.17.
  * <p>
  * Provides a forgiving blacklist with progressively increasing blacklist lengths
- *
- * In an environment where shards are running in different containers and not inside a single jar this class will need
- * some help in keeping bans up to date, that is, reading them from the database, either on changes (rethinkDB?) or
- * through an agent in regular periods
+ * <p>
+ * In an environment where shards are running in different containers and not inside a single jar, enable the sync
+ * to keep bans up to date: entries changed by other instances are then polled from the database in regular periods.
+ * Each poll only reads the rows that were modified since the last one, as tracked by their database side modification
+ * timestamp. Entries changed on several instances at once are merged by keeping the newer state of each side, see
+ * {@link fredboat.db.repositories.api.BlacklistRepo#mergeIfNewer(BlacklistEntry)}: the in memory entries are merged
+ * with the polled rows, and the rows are written with a conditional upsert, so no instance can erase the blacklisting
+ * issued by another one.
+ * <p>
+ * Changes to the entries are written behind: they are applied in memory right away, and persisted in batches by a
+ * background writer. Repeated hits of the same id between two flushes result in a single write.
  */
 public class Blacklist {
 
+    private static final Logger log = LoggerFactory.getLogger(Blacklist.class);
+
     //this holds progressively increasing lengths of blacklisting in milliseconds
     private static final List<Long> blacklistLevels;
 
@@ -68,17 +84,67 @@ public class Blacklist {
 
     private final BlacklistIO blacklistIO;
 
+    //ids of entries that have been changed in memory but not persisted yet, guarded by itself
+    private final LongOpenHashSet dirtyIds = new LongOpenHashSet();
+
+    //held while writing to or deleting from the database, so a lifted blacklist can't be resurrected by a flush
+    private final Object flushLock = new Object();
+
+    private final int flushBatchSize;
+
+    private final ScheduledExecutorService writer;
+
+    //rows may become visible to other transactions a bit after their modification timestamp was taken, so each poll
+    // rereads a window of this size before the newest timestamp seen so far. applying a row twice is harmless.
+    private static final long SYNC_OVERLAP_MILLIS = 10000;
 
-    public Blacklist(BlacklistIO blacklistIO, Set<Long> userWhiteList, long rateLimitHitsBeforeBlacklist) {
+    private final boolean syncEnabled;
+
+    //newest modification timestamp of all rows read from the database, only accessed by the writer thread
+    private long syncWatermark = 0;
+
+
+    /**
+     * @param flushIntervalMillis time between two flushes of changed entries to the database
+     * @param flushBatchSize      maximum amount of changed entries written by a single regular flush
+     * @param syncIntervalMillis  time between two polls for entries changed by other instances, or 0 to not poll
+     */
+    public Blacklist(BlacklistIO blacklistIO, Set<Long> userWhiteList, long rateLimitHitsBeforeBlacklist,
+                     long flushIntervalMillis, int flushBatchSize, long syncIntervalMillis) {
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive, provided: " + flushIntervalMillis);
+        }
+        if (flushBatchSize <= 0) {
+            throw new IllegalArgumentException("Flush batch size must be positive, provided: " + flushBatchSize);
+        }
+        if (syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("Sync interval must not be negative, provided: " + syncIntervalMillis);
+        }
         this.blacklistIO = blacklistIO;
         this.blacklist = new Long2ObjectOpenHashMap<>();
         //load blacklist from database
         for (BlacklistEntry ble : blacklistIO.loadBlacklist()) {
             blacklist.put(ble.id, ble);
+            syncWatermark = Math.max(syncWatermark, ble.modified);
         }
 
         this.rateLimitHitsBeforeBlacklist = rateLimitHitsBeforeBlacklist;
         this.userWhiteList = Collections.unmodifiableSet(userWhiteList);
+        this.flushBatchSize = flushBatchSize;
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "blacklist-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.writer.scheduleWithFixedDelay(() -> flush(this.flushBatchSize),
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        this.syncEnabled = syncIntervalMillis > 0;
+        if (syncEnabled) {
+            //runs on the same thread as the regular flushes, so a poll never sees a half written batch of our own
+            this.writer.scheduleWithFixedDelay(this::sync,
+                    syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -138,12 +204,12 @@ public class Blacklist {
 
                 blacklistingLength = getBlacklistTimeLength(blEntry.level);
             }
-            //persist it
-            //if this turns up to be a performance bottleneck, have an agent run that persists the blacklist occasionally
-            blEntry = blacklistIO.mergeBlacklistEntry(blEntry);
-            blacklist.put(blEntry.id, blEntry);
-            return blacklistingLength;
+            //persisted by the writer. marked while holding the entry lock, so a sync can't overwrite this change
+            synchronized (dirtyIds) {
+                dirtyIds.add(id);
+            }
         }
+        return blacklistingLength;
     }
 
 
@@ -157,6 +223,7 @@ public class Blacklist {
 
         //create and return it
         result = new BlacklistEntry(id);
+        result.blacklistedTimestamp = 0; //never blacklisted, so that it doesn't look like a lift to the merging
         blacklist.put(id, result);
         return result;
     }
@@ -165,8 +232,159 @@ public class Blacklist {
      * completely resets a blacklist for an id
      */
     public synchronized void liftBlacklist(long id) {
-        blacklist.remove(id);
-        blacklistIO.deleteBlacklistEntry(id);
+        synchronized (flushLock) {
+            blacklist.remove(id);
+            synchronized (dirtyIds) {
+                dirtyIds.remove(id);
+            }
+            if (syncEnabled) {
+                //deletions can't be polled, so other instances are told about the lift through a reset entry. it is
+                // timestamped, so it replaces all blacklistings and rate limit hits that happened before the lift
+                BlacklistEntry reset = new BlacklistEntry(id);
+                reset.rateLimitReachedTimestamp = reset.blacklistedTimestamp;
+                blacklistIO.mergeBlacklistEntry(reset);
+            } else {
+                blacklistIO.deleteBlacklistEntry(id);
+            }
+        }
+    }
+
+    /**
+     * @return amount of changed entries that have not been persisted yet
+     */
+    public int getPendingWrites() {
+        synchronized (dirtyIds) {
+            return dirtyIds.size();
+        }
+    }
+
+    /**
+     * Stops the regular flushes and persists all pending changes. Needs to be called on shutdown while the database is
+     * still available.
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int pending = getPendingWrites();
+        if (pending > 0) {
+            log.info("Flushing {} pending blacklist entries", pending);
+        }
+        flush(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Merges the entries that were changed by other instances since the last poll into the local ones. Entries with
+     * local changes that have not been persisted yet are merged too, their next flush only writes what is newer than
+     * the row of the other instance.
+     */
+    private void sync() {
+        List<BlacklistEntry> changes;
+        try {
+            changes = blacklistIO.loadBlacklistChanges(Math.max(0, syncWatermark - SYNC_OVERLAP_MILLIS));
+        } catch (Exception e) {
+            log.error("Failed to poll blacklist changes, retrying with the next sync", e);
+            return;
+        }
+
+        long newestSeen = syncWatermark;
+        for (BlacklistEntry remote : changes) {
+            newestSeen = Math.max(newestSeen, remote.modified);
+            BlacklistEntry blEntry = blacklist.get(remote.id);
+            if (blEntry == null) {
+                if (remote.level < 0) {
+                    continue; //nothing we need to know about
+                }
+                blEntry = getOrCreateBlacklistEntry(remote.id);
+            }
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (blEntry) {
+                mergeIfNewer(blEntry, remote);
+            }
+        }
+        syncWatermark = newestSeen;
+        if (!changes.isEmpty()) {
+            log.debug("Synced {} blacklist entries", changes.size());
+        }
+    }
+
+    /**
+     * Persists up to the requested amount of changed entries. Entries that fail to be written are kept for the next
+     * flush.
+     */
+    private void flush(int maxEntries) {
+        synchronized (flushLock) {
+            long[] ids;
+            synchronized (dirtyIds) {
+                if (dirtyIds.isEmpty()) {
+                    return;
+                }
+                ids = new long[Math.min(maxEntries, dirtyIds.size())];
+                LongIterator it = dirtyIds.iterator();
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = it.nextLong();
+                    it.remove();
+                }
+            }
+
+            int failed = 0;
+            for (long id : ids) {
+                BlacklistEntry blEntry = blacklist.get(id);
+                if (blEntry == null) {
+                    continue; //lifted in the meantime
+                }
+                //copy it, so that the live entry can keep changing while the copy is being written
+                BlacklistEntry snapshot = new BlacklistEntry(id);
+                //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                synchronized (blEntry) {
+                    snapshot.level = blEntry.level;
+                    snapshot.rateLimitReached = blEntry.rateLimitReached;
+                    snapshot.rateLimitReachedTimestamp = blEntry.rateLimitReachedTimestamp;
+                    snapshot.blacklistedTimestamp = blEntry.blacklistedTimestamp;
+                }
+                try {
+                    if (syncEnabled) {
+                        blacklistIO.mergeBlacklistEntryIfNewer(snapshot);
+                    } else {
+                        blacklistIO.mergeBlacklistEntry(snapshot);
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    synchronized (dirtyIds) {
+                        dirtyIds.add(id);
+                    }
+                }
+            }
+            if (failed > 0) {
+                log.error("Failed to persist {} of {} blacklist entries, retrying with the next flush",
+                        failed, ids.length);
+            }
+        }
+    }
+
+    /**
+     * Applies the newer parts of the remote entry to the local one. Same rules as the conditional upsert of the rows,
+     * see {@link fredboat.db.repositories.api.BlacklistRepo#mergeIfNewer(BlacklistEntry)}.
+     */
+    private static void mergeIfNewer(BlacklistEntry local, BlacklistEntry remote) {
+        boolean remoteBlacklistingIsNewer;
+        if (remote.level >= 0 && local.level >= 0) {
+            remoteBlacklistingIsNewer = remote.level > local.level
+                    || (remote.level == local.level && remote.blacklistedTimestamp > local.blacklistedTimestamp);
+        } else {
+            remoteBlacklistingIsNewer = remote.blacklistedTimestamp > local.blacklistedTimestamp;
+        }
+        if (remoteBlacklistingIsNewer) {
+            local.level = remote.level;
+            local.blacklistedTimestamp = remote.blacklistedTimestamp;
+        }
+        if (remote.rateLimitReachedTimestamp > local.rateLimitReachedTimestamp) {
+            local.rateLimitReached = remote.rateLimitReached;
+            local.rateLimitReachedTimestamp = remote.rateLimitReachedTimestamp;
+        }
     }
 
     /**
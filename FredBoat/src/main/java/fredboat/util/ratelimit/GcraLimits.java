@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.util.ratelimit;
+
+import fredboat.feature.metrics.Metrics;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits based on the generic cell rate algorithm (GCRA).
+ * <p>
+ * Instead of saving a timestamp per request, only a single long per id is kept: the theoretical arrival time (TAT) of
+ * the next request, at which the id would be completely idle again. Each request moves the TAT into the future by the
+ * emission interval times its weight. A request is allowed as long as the TAT is less than a full time span ahead.
+ * This makes checks constant time regardless of the weight of a request, and ids whose TAT lies in the past carry no
+ * information anymore, so they are evicted from time to time. If there are more ids being tracked than the configured
+ * maximum, the ones with the oldest TAT are evicted too.
+ */
+class GcraLimits {
+
+    //how often idle ids are swept out of the map at most
+    private static final long MIN_SWEEP_INTERVAL_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    //id -> theoretical arrival time in microseconds
+    private final Long2LongOpenHashMap arrivalTimes = new Long2LongOpenHashMap();
+    //how much each request (of weight 1) moves the theoretical arrival time into the future
+    private final long emissionIntervalMicros;
+    //how far the theoretical arrival time may be ahead of now for a request to still be allowed
+    private final long burstToleranceMicros;
+    private final long sweepIntervalMicros;
+    private final int maxEntries;
+    //label of the owning limit for the metrics
+    private final String name;
+    private long lastSweep = now();
+
+    /**
+     * @param maxRequests  how many maxRequests shall be possible in the specified time
+     * @param milliseconds time in milliseconds, in which maxRequests shall be allowed
+     * @param maxEntries   how many ids shall be tracked at most
+     * @param name         label of the owning limit for the metrics
+     */
+    GcraLimits(long maxRequests, long milliseconds, int maxEntries, String name) {
+        long timeSpanMicros = TimeUnit.MILLISECONDS.toMicros(milliseconds);
+        this.emissionIntervalMicros = Math.max(1, timeSpanMicros / maxRequests);
+        this.burstToleranceMicros = timeSpanMicros - emissionIntervalMicros;
+        this.sweepIntervalMicros = Math.max(MIN_SWEEP_INTERVAL_MICROS, timeSpanMicros);
+        this.arrivalTimes.defaultReturnValue(Long.MIN_VALUE); //unknown ids are idle
+        this.maxEntries = maxEntries;
+        this.name = name;
+    }
+
+    /**
+     * Like the timestamp based limits, this allows requests to overstep the limit with a single high weight request,
+     * which then takes proportionally longer until the id is allowed again.
+     *
+     * @return true if the request is allowed, false if the id is over its limit
+     */
+    synchronized boolean tryAcquire(long id, int weight) {
+        long now = now();
+        if (now - lastSweep > sweepIntervalMicros) {
+            evictIdle(now);
+        }
+
+        long arrivalTime = Math.max(arrivalTimes.get(id), now);
+        if (arrivalTime - now > burstToleranceMicros) {
+            return false;
+        }
+        int sizeBefore = arrivalTimes.size();
+        arrivalTimes.put(id, arrivalTime + Math.max(1, weight) * emissionIntervalMicros);
+        if (arrivalTimes.size() != sizeBefore) {
+            if (arrivalTimes.size() > maxEntries) {
+                evictIdle(now);
+            }
+            Metrics.ratelimitEntries.labels(name).set(arrivalTimes.size());
+        }
+        return true;
+    }
+
+    /**
+     * completely resets a limit for an id
+     */
+    synchronized void lift(long id) {
+        arrivalTimes.remove(id);
+    }
+
+    /**
+     * Evicts all idle ids, and if there are still too many ids being tracked after that, the ones with the oldest
+     * TAT, so that there is some headroom before the next eviction is necessary.
+     */
+    private void evictIdle(long now) {
+        int evicted = 0;
+        ObjectIterator<Long2LongMap.Entry> it = arrivalTimes.long2LongEntrySet().fastIterator();
+        while (it.hasNext()) {
+            if (it.next().getLongValue() <= now) {
+                it.remove();
+                evicted++;
+            }
+        }
+        lastSweep = now;
+
+        int excess = arrivalTimes.size() - (maxEntries - maxEntries / 10);
+        if (excess > 0) {
+            long[] times = arrivalTimes.values().toLongArray();
+            Arrays.sort(times);
+            long threshold = times[excess - 1];
+            it = arrivalTimes.long2LongEntrySet().fastIterator();
+            int evictedOldest = 0;
+            while (it.hasNext() && evictedOldest < excess) {
+                if (it.next().getLongValue() <= threshold) {
+                    it.remove();
+                    evictedOldest++;
+                }
+            }
+            evicted += evictedOldest;
+        }
+        Metrics.ratelimitEvictions.labels(name).inc(evicted);
+        Metrics.ratelimitEntries.labels(name).set(arrivalTimes.size());
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
+    }
+}
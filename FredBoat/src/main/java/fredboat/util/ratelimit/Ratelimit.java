@@ -24,14 +24,21 @@
 
 package fredboat.util.ratelimit;
 
+import fredboat.feature.metrics.Metrics;
 import fredboat.messaging.internal.Context;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Created by napster on 17.04.17.
@@ -40,16 +47,40 @@ import java.util.concurrent.ExecutorService;
  * each bucket filling/emptying it, instead saving timestamps. As a result this class works better for shorter time
  * periods, as the amount of timestamps to hold decreases.
  * some calculations can be found here: https://docs.google.com/spreadsheets/d/1Afdn25AsFD-v3WQGp56rfVwO1y2d105IQk3dtfTcKwA/edit#gid=0
+ * <p>
+ * Ids that have been idle for a full time span carry no information anymore and are evicted from time to time. If
+ * there are more ids being tracked than the configured maximum, the least recently active ones are evicted too.
  */
 public class Ratelimit {
 
+    //how often idle ids are swept out of the map at most
+    private static final long MIN_SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private final ExecutorService executorService;
 
     public enum Scope {USER, GUILD}
 
+    /**
+     * How the requests of an id are tracked.
+     * <p>
+     * TIMESTAMPS saves a timestamp per request (and per unit of weight), which makes for an exact sliding window.
+     * GCRA saves a single value per id, making checks constant time regardless of the weight of requests, and evicts
+     * ids that have been idle for a full time span.
+     */
+    public enum Engine {TIMESTAMPS, GCRA}
+
+    //the map is not thread safe: lookups happen while holding the read lock, so they can run in parallel, writes
+    // while holding the write lock
     private final Long2ObjectOpenHashMap<Rate> limits;
+    private final StampedLock limitsLock = new StampedLock();
     private final long maxRequests;
     private final long timeSpan;
+    private final int maxEntries;
+    private final long sweepInterval;
+    private long lastSweep = System.currentTimeMillis(); //guarded by the write lock of the limitsLock
+
+    //label of this limit for the metrics
+    private final String name;
 
     //users that can never be limited
     private final Set<Long> userWhiteList;
@@ -57,10 +88,15 @@ public class Ratelimit {
     //are we limiting the individual user or whole guilds?
     public final Scope scope;
 
+    //only set when using the GCRA engine, the limits map is unused then
+    @Nullable
+    private final GcraLimits gcraLimits;
+
     //class of commands this ratelimiter should be restricted to
     //creative use allows usage of other classes
     private final Class clazz;
 
+    @Nonnull
     public Class getClazz() {
         return clazz;
     }
@@ -71,9 +107,29 @@ public class Ratelimit {
      * @param scope         on which scope this rate limiter shall operate
      * @param maxRequests   how many maxRequests shall be possible in the specified time
      * @param milliseconds  time in milliseconds, in which maxRequests shall be allowed
-     * @param clazz         the optional (=can be null) clazz of commands to be ratelimited by this ratelimiter
+     * @param clazz         the clazz of commands to be ratelimited by this ratelimiter, Command.class for all commands
+     * @param maxEntries    how many ids shall be tracked at most
+     */
+    public Ratelimit(ExecutorService executorService, Set<Long> userWhiteList, Scope scope, long maxRequests,
+                     long milliseconds, @Nonnull Class clazz, int maxEntries) {
+        this(executorService, userWhiteList, scope, maxRequests, milliseconds, clazz, maxEntries, Engine.TIMESTAMPS);
+    }
+
+    /**
+     * @param executorService executor to issue bans with (which may result in a database access, so they are kept off main thread)
+     * @param userWhiteList whitelist of user that should never be rate limited or blacklisted by this object
+     * @param scope         on which scope this rate limiter shall operate
+     * @param maxRequests   how many maxRequests shall be possible in the specified time
+     * @param milliseconds  time in milliseconds, in which maxRequests shall be allowed
+     * @param clazz         the clazz of commands to be ratelimited by this ratelimiter, Command.class for all commands
+     * @param maxEntries    how many ids shall be tracked at most
+     * @param engine        how the requests shall be tracked
      */
-    public Ratelimit(ExecutorService executorService, Set<Long> userWhiteList, Scope scope, long maxRequests, long milliseconds, Class clazz) {
+    public Ratelimit(ExecutorService executorService, Set<Long> userWhiteList, Scope scope, long maxRequests,
+                     long milliseconds, @Nonnull Class clazz, int maxEntries, Engine engine) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive, provided: " + maxEntries);
+        }
         this.executorService = executorService;
         this.limits = new Long2ObjectOpenHashMap<>();
 
@@ -82,6 +138,10 @@ public class Ratelimit {
         this.maxRequests = maxRequests;
         this.timeSpan = milliseconds;
         this.clazz = clazz;
+        this.maxEntries = maxEntries;
+        this.sweepInterval = Math.max(MIN_SWEEP_INTERVAL_MILLIS, milliseconds);
+        this.name = scope.name().toLowerCase() + "_" + clazz.getSimpleName();
+        this.gcraLimits = engine == Engine.GCRA ? new GcraLimits(maxRequests, milliseconds, maxEntries, name) : null;
     }
 
     public boolean isAllowed(Context context, int weight) {
@@ -106,31 +166,10 @@ public class Ratelimit {
             id = context.getGuild().getIdLong();
         }
 
-        Rate rate = limits.get(id);
-        if (rate == null)
-            rate = getOrCreateRate(id);
-
-        //synchronize on the individual rate objects since we are about to change and save them
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (rate) {
-            long now = System.currentTimeMillis();
-
-            //clear outdated timestamps
-            long maxTimeStampsToClear = (now - rate.lastUpdated) * maxRequests / timeSpan;
-            long cleared = 0;
-            while (rate.timeStamps.size() > 0 && rate.timeStamps.getLong(0) + timeSpan < now && cleared < maxTimeStampsToClear) {
-                rate.timeStamps.removeLong(0);
-                cleared++;
-            }
-
-            rate.lastUpdated = now;
-            //ALLOWED?
-            if (rate.timeStamps.size() < maxRequests) {
-                for (int i = 0; i < weight; i++)
-                    rate.timeStamps.add(now);
-                //everything is fine, get out of this method
-                return true;
-            }
+        boolean allowed = gcraLimits != null ? gcraLimits.tryAcquire(id, weight) : isAllowedByTimestamps(id, weight);
+        if (allowed) {
+            //everything is fine, get out of this method
+            return true;
         }
 
         //reaching this point in the code means a rate limit was hit
@@ -141,6 +180,45 @@ public class Ratelimit {
         return false;
     }
 
+    private boolean isAllowedByTimestamps(long id, int weight) {
+        Rate rate = getRate(id);
+        while (true) {
+            //synchronize on the individual rate objects since we are about to change and save them
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (rate) {
+                if (!rate.evicted) {
+                    return tryAcquire(rate, weight);
+                }
+            }
+            //it was evicted right after we looked it up, use its successor
+            rate = getOrCreateRate(id);
+        }
+    }
+
+    /**
+     * Needs to be called while holding the lock of the rate.
+     */
+    private boolean tryAcquire(Rate rate, int weight) {
+        long now = System.currentTimeMillis();
+
+        //clear outdated timestamps
+        long maxTimeStampsToClear = (now - rate.lastUpdated) * maxRequests / timeSpan;
+        long cleared = 0;
+        while (rate.timeStamps.size() > 0 && rate.timeStamps.getLong(0) + timeSpan < now && cleared < maxTimeStampsToClear) {
+            rate.timeStamps.removeLong(0);
+            cleared++;
+        }
+
+        rate.lastUpdated = now;
+        //ALLOWED?
+        if (rate.timeStamps.size() < maxRequests) {
+            for (int i = 0; i < weight; i++)
+                rate.timeStamps.add(now);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Notifies the autoblacklist that a user has hit a limit, and handles the response of the blacklist
      * Best run async as the blacklist might be hitting a database
@@ -158,24 +236,126 @@ public class Ratelimit {
 
 
     /**
-     * synchronize the creation of new Rate objects
+     * Looks up the rate of an id under the shared read lock, and only takes the write lock to create a new one.
      */
-    private synchronized Rate getOrCreateRate(long id) {
-        //was one created on the meantime? use that
-        Rate result = limits.get(id);
-        if (result != null) return result;
-
-        //create, save and return it
-        result = new Rate(id);
-        limits.put(id, result);
+    private Rate getRate(long id) {
+        Rate result;
+        long stamp = limitsLock.readLock();
+        try {
+            result = limits.get(id);
+        } finally {
+            limitsLock.unlockRead(stamp);
+        }
+        if (result == null) {
+            result = getOrCreateRate(id);
+        }
         return result;
     }
 
+    /**
+     * synchronize the creation of new Rate objects
+     */
+    private Rate getOrCreateRate(long id) {
+        long stamp = limitsLock.writeLock();
+        try {
+            //was one created on the meantime? use that
+            Rate result = limits.get(id);
+            if (result != null) return result;
+
+            //create, save and return it
+            result = new Rate(id);
+            limits.put(id, result);
+
+            long now = System.currentTimeMillis();
+            if (limits.size() > maxEntries || now - lastSweep > sweepInterval) {
+                evict(now);
+            }
+            Metrics.ratelimitEntries.labels(name).set(limits.size());
+            return result;
+        } finally {
+            limitsLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Evicts all idle ids, and if there are still too many ids being tracked after that, the least recently active
+     * ones, so that there is some headroom before the next eviction is necessary.
+     * <p>
+     * Needs to be called while holding the write lock of the limitsLock.
+     */
+    private void evict(long now) {
+        int evicted = 0;
+        ObjectIterator<Long2ObjectMap.Entry<Rate>> it = limits.long2ObjectEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Rate rate = it.next().getValue();
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (rate) {
+                if (rate.lastUpdated + timeSpan < now) {
+                    rate.evicted = true;
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+        lastSweep = now;
+
+        int excess = limits.size() - (maxEntries - maxEntries / 10);
+        if (excess > 0) {
+            evicted += evictLeastRecentlyUpdated(excess);
+        }
+        Metrics.ratelimitEvictions.labels(name).inc(evicted);
+    }
+
+    /**
+     * Needs to be called while holding the write lock of the limitsLock.
+     *
+     * @return amount of evicted ids
+     */
+    private int evictLeastRecentlyUpdated(int amount) {
+        long[] lastUpdates = new long[limits.size()];
+        int i = 0;
+        for (Rate rate : limits.values()) {
+            lastUpdates[i++] = rate.lastUpdated;
+        }
+        Arrays.sort(lastUpdates);
+        long threshold = lastUpdates[amount - 1];
+
+        int evicted = 0;
+        ObjectIterator<Long2ObjectMap.Entry<Rate>> it = limits.long2ObjectEntrySet().fastIterator();
+        while (it.hasNext() && evicted < amount) {
+            Rate rate = it.next().getValue();
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (rate) {
+                if (rate.lastUpdated <= threshold) {
+                    rate.evicted = true;
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
     /**
      * completely resets a limit for an id (user or guild for example)
      */
-    public synchronized void liftLimit(long id) {
-        limits.remove(id);
+    public void liftLimit(long id) {
+        long stamp = limitsLock.writeLock();
+        try {
+            Rate rate = limits.remove(id);
+            if (rate != null) {
+                //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                synchronized (rate) {
+                    rate.evicted = true;
+                }
+            }
+            Metrics.ratelimitEntries.labels(name).set(limits.size());
+        } finally {
+            limitsLock.unlockWrite(stamp);
+        }
+        if (gcraLimits != null) {
+            gcraLimits.lift(id);
+        }
     }
 
     class Rate {
@@ -189,6 +369,9 @@ public class Ratelimit {
         //collects the requests
         LongArrayList timeStamps;
 
+        //set when this object was removed from the map, requests need to look up its successor then
+        boolean evicted = false;
+
         private Rate(long id) {
             this.id = id;
             this.lastUpdated = System.currentTimeMillis();
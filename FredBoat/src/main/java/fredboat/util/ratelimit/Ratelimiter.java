@@ -32,6 +32,7 @@ import fredboat.commandmeta.abs.Command;
 import fredboat.config.property.AppConfig;
 import fredboat.db.api.BlacklistIO;
 import fredboat.feature.metrics.Metrics;
+import fredboat.main.ShutdownHandler;
 import fredboat.messaging.internal.Context;
 import fredboat.util.Tuple2;
 import org.springframework.stereotype.Component;
@@ -59,7 +60,8 @@ public class Ratelimiter {
     @Nullable
     private Blacklist autoBlacklist = null;
 
-    public Ratelimiter(AppConfig appConfig, ExecutorService executor, BlacklistIO blacklistIO) {
+    public Ratelimiter(AppConfig appConfig, ExecutorService executor, BlacklistIO blacklistIO,
+                       ShutdownHandler shutdownHandler) {
         Set<Long> whitelist = ConcurrentHashMap.newKeySet();
 
         //only works for those admins who are added with their userId and not through a roleId
@@ -71,17 +73,27 @@ public class Ratelimiter {
         ratelimits = new ArrayList<>();
 
         if (appConfig.useAutoBlacklist()) {
-            autoBlacklist = new Blacklist(blacklistIO, whitelist, RATE_LIMIT_HITS_BEFORE_BLACKLIST);
+            autoBlacklist = new Blacklist(blacklistIO, whitelist, RATE_LIMIT_HITS_BEFORE_BLACKLIST,
+                    appConfig.getBlacklistFlushIntervalMillis(), appConfig.getBlacklistFlushBatchSize(),
+                    appConfig.getBlacklistSyncIntervalMillis());
+            //pending blacklist changes are persisted on shutdown, before the database connections are closed
+            shutdownHandler.addDatabaseDependentTask(autoBlacklist::shutdown);
         }
 
+        int maxEntries = appConfig.getRatelimitMaxEntries();
         //sort these by harsher limits coming first
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 2, 30000, ShardsCommand.class));
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 5, 20000, SkipCommand.class));
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 5, 10000, Command.class));
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 2, 30000, ShardsCommand.class,
+                maxEntries));
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 5, 20000, SkipCommand.class,
+                maxEntries));
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.USER, 5, 10000, Command.class, maxEntries));
 
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 30, 180000, WeatherCommand.class));
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 1000, 120000, PlaylistInfo.class));
-        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 10, 10000, Command.class));
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 30, 180000, WeatherCommand.class,
+                maxEntries));
+        //playlist imports are weighted by their amount of tracks, so use an engine that does not save a timestamp per track
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 1000, 120000, PlaylistInfo.class,
+                maxEntries, Ratelimit.Engine.GCRA));
+        ratelimits.add(new Ratelimit(executor, whitelist, Ratelimit.Scope.GUILD, 10, 10000, Command.class, maxEntries));
     }
 
     /**
@@ -25,9 +25,12 @@
 
 package fredboat.util.rest;
 
+import com.google.common.base.Strings;
 import fredboat.audio.queue.PlaylistInfo;
+import fredboat.config.property.AudioSourcesConfig;
 import fredboat.config.property.Credentials;
 import fredboat.main.BotController;
+import okhttp3.Response;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -36,71 +39,159 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by napster on 08.03.17.
  *
  * @author napster
  *
- * When expanding this class, make sure to call refreshTokenIfNecessary() before every request
+ * The access token is renewed in the background ahead of its expiry, requests simply use the current one. Failed
+ * renewals are retried with an exponentially increasing delay, and a token rejected by Spotify is renewed right away.
+ * Nothing is renewed if Spotify is disabled or no credentials are configured.
  */
 @Component
 public class SpotifyAPIWrapper {
-    //https://regex101.com/r/FkknVc/1
-    private static final Pattern PARAMETER_PATTERN = Pattern.compile("offset=([0-9]*)&limit=([0-9]*)$");
 
     private static final String URL_SPOTIFY_API = "https://api.spotify.com";
     private static final String URL_SPOTIFY_AUTHENTICATION_HOST = "https://accounts.spotify.com";
 
+    //maximum amount of tracks spotify hands out per page
+    private static final int PAGE_SIZE = 100;
+    //requests running at the same time with our access token, shared by all playlists being fetched
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final long PAGE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    //renew the token this long before it expires
+    private static final long RENEWAL_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long MIN_RENEWAL_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    //delay of the first retry after a failed renewal, doubled for each further failure up to the maximum
+    private static final long MIN_RENEWAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RENEWAL_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    //a rejected token triggers a renewal only if the last one was attempted at least this long ago
+    private static final long MIN_REJECTION_RENEWAL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
     private static final Logger log = LoggerFactory.getLogger(SpotifyAPIWrapper.class);
     private final Credentials credentials;
+    private final ExecutorService executor;
+    private final Semaphore requestPermits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    private final ScheduledExecutorService tokenRenewal = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spotify-token-renewal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final boolean renewalEnabled;
 
-    private volatile long accessTokenExpires = 0;
     private volatile String accessToken = "";
+    //the fields below are guarded by the renewalLock
+    private final Object renewalLock = new Object();
+    private long renewalRetryDelay = MIN_RENEWAL_RETRY_DELAY_MILLIS;
+    private long lastRenewalAttempt = 0;
+    private long renewals = 0; //identifies the currently scheduled renewal
 
     /**
      * Do not call this.
      * Get an instance of this class by using SpotifyAPIWrapper.getApi()
      */
-    public SpotifyAPIWrapper(Credentials credentials) {
+    public SpotifyAPIWrapper(Credentials credentials, AudioSourcesConfig audioSourcesConfig, ExecutorService executor) {
         this.credentials = credentials;
-        refreshTokenIfNecessary();
+        this.executor = executor;
+        if (!audioSourcesConfig.isSpotifyEnabled()) {
+            log.info("Spotify is disabled, not retrieving a spotify access token");
+            renewalEnabled = false;
+        } else if (Strings.isNullOrEmpty(credentials.getSpotifyId())
+                || Strings.isNullOrEmpty(credentials.getSpotifySecret())) {
+            log.warn("No spotify credentials configured, spotify playlists can't be loaded");
+            renewalEnabled = false;
+        } else {
+            renewalEnabled = true;
+            renewAccessToken();
+        }
     }
 
     /**
      * This is related to the client credentials flow.
      * https://developer.spotify.com/web-api/authorization-guide/#client-credentials-flow
+     *
+     * @return milliseconds until the retrieved token expires
      */
-    private void refreshAccessToken() {
-        try {
-            JSONObject jsonClientCredentials = BotController.HTTP.post(URL_SPOTIFY_AUTHENTICATION_HOST + "/api/token",
-                    Http.Params.of(
-                            "grant_type", "client_credentials"
-                    ))
-                    .auth(okhttp3.Credentials.basic(credentials.getSpotifyId(), credentials.getSpotifySecret()))
-                    .asJson();
-
-            accessToken = jsonClientCredentials.getString("access_token");
-            accessTokenExpires = System.currentTimeMillis() + (jsonClientCredentials.getInt("expires_in") * 1000);
-            log.debug("Retrieved spotify access token " + accessToken + " expiring in " + jsonClientCredentials.getInt("expires_in") + " seconds");
-        } catch (final Exception e) {
-            log.error("Could not retrieve spotify access token: " + e.getMessage(), e);
+    private long refreshAccessToken() throws IOException {
+        JSONObject jsonClientCredentials = BotController.HTTP.post(URL_SPOTIFY_AUTHENTICATION_HOST + "/api/token",
+                Http.Params.of(
+                        "grant_type", "client_credentials"
+                ))
+                .auth(okhttp3.Credentials.basic(credentials.getSpotifyId(), credentials.getSpotifySecret()))
+                .asJson();
+
+        accessToken = jsonClientCredentials.getString("access_token");
+        int expiresIn = jsonClientCredentials.getInt("expires_in");
+        log.debug("Retrieved spotify access token " + accessToken + " expiring in " + expiresIn + " seconds");
+        return TimeUnit.SECONDS.toMillis(expiresIn);
+    }
+
+    /**
+     * Refreshes the access token and schedules the next renewal shortly before the new token expires, or a retry if
+     * the refresh failed.
+     */
+    private void renewAccessToken() {
+        synchronized (renewalLock) {
+            lastRenewalAttempt = System.currentTimeMillis();
+            long delay;
+            try {
+                delay = Math.max(MIN_RENEWAL_DELAY_MILLIS, refreshAccessToken() - RENEWAL_MARGIN_MILLIS);
+                renewalRetryDelay = MIN_RENEWAL_RETRY_DELAY_MILLIS;
+            } catch (final Exception e) {
+                delay = renewalRetryDelay;
+                if (delay == MIN_RENEWAL_RETRY_DELAY_MILLIS) {
+                    log.error("Could not retrieve spotify access token: " + e.getMessage(), e);
+                } else {
+                    log.warn("Could not retrieve spotify access token again: {}, retrying in {}s",
+                            e.getMessage(), TimeUnit.MILLISECONDS.toSeconds(delay));
+                }
+                renewalRetryDelay = Math.min(MAX_RENEWAL_RETRY_DELAY_MILLIS, delay * 2);
+            }
+            long renewal = ++renewals;
+            tokenRenewal.schedule(() -> renewScheduled(renewal), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void renewScheduled(long renewal) {
+        synchronized (renewalLock) {
+            //skip it if a rejected token was renewed in the meantime, which scheduled another renewal
+            if (renewal == renewals) {
+                renewAccessToken();
+            }
         }
     }
 
     /**
-     * Call this before doing any requests
+     * Renews the access token right away after Spotify rejected it, instead of waiting for the scheduled renewal.
+     *
+     * @return true if there is a different token to retry the request with
      */
-    private void refreshTokenIfNecessary() {
-        //refresh the token if it's too old
-        if (System.currentTimeMillis() > this.accessTokenExpires) try {
-            refreshAccessToken();
-        } catch (final Exception e) {
-            log.error("Could not request spotify access token", e);
+    private boolean renewRejectedToken(String rejectedToken) {
+        if (!renewalEnabled) {
+            return false;
+        }
+        synchronized (renewalLock) {
+            if (rejectedToken.equals(accessToken)
+                    && System.currentTimeMillis() - lastRenewalAttempt >= MIN_REJECTION_RENEWAL_INTERVAL_MILLIS) {
+                log.info("Spotify rejected our access token, renewing it");
+                renewAccessToken();
+            }
+            return !rejectedToken.equals(accessToken);
         }
     }
 
@@ -112,11 +203,8 @@ public class SpotifyAPIWrapper {
      * @return an array containing information about the requested spotify playlist
      */
     public PlaylistInfo getPlaylistDataBlocking(String userId, String playlistId) throws IOException, JSONException {
-        refreshTokenIfNecessary();
-
-        JSONObject jsonPlaylist = BotController.HTTP.get(URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId)
-                .auth("Bearer " + accessToken)
-                .asJson();
+        JSONObject jsonPlaylist = requestJson(
+                BotController.HTTP.get(URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId));
 
         // https://developer.spotify.com/web-api/object-model/#playlist-object-full
         String name = jsonPlaylist.getString("name");
@@ -126,69 +214,112 @@ public class SpotifyAPIWrapper {
     }
 
     /**
+     * Fetches the first page of tracks, and once it tells us the total amount of tracks, the remaining pages
+     * concurrently. Only a few pages of a playlist are requested at the same time, the next one as soon as the oldest
+     * one has been collected, so a big playlist does not occupy a thread of the executor per page.
+     *
      * @param userId     Spotify user id of the owner of the requested playlist
      * @param playlistId Spotify playlist identifier
      * @return a string for each track on the requested playlist, containing track and artist names
      */
     public List<String> getPlaylistTracksSearchTermsBlocking(String userId, String playlistId) throws IOException, JSONException {
-        refreshTokenIfNecessary();
+        String url = URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId + "/tracks";
+
+        JSONObject firstPage = fetchPage(url, 0);
+        // https://developer.spotify.com/web-api/object-model/#paging-object
+        int total = firstPage.getInt("total");
+
+        Deque<Future<JSONObject>> pages = new ArrayDeque<>(MAX_CONCURRENT_REQUESTS);
+        int nextOffset = PAGE_SIZE;
+        for (; nextOffset < total && pages.size() < MAX_CONCURRENT_REQUESTS; nextOffset += PAGE_SIZE) {
+            pages.add(submitPage(url, nextOffset));
+        }
 
         //strings on this list will contain name of the track + names of the artists
-        List<String> list = new ArrayList<>();
+        List<String> list = new ArrayList<>(total);
+        collectSearchTerms(firstPage, list);
+        try {
+            //reassemble the pages in order
+            while (!pages.isEmpty()) {
+                collectSearchTerms(pages.peek().get(PAGE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), list);
+                pages.remove();
+                if (nextOffset < total) {
+                    pages.add(submitPage(url, nextOffset));
+                    nextOffset += PAGE_SIZE;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching the tracks of spotify playlist " + playlistId);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out fetching the tracks of spotify playlist " + playlistId, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof JSONException) throw (JSONException) cause;
+            throw new IOException("Failed to fetch the tracks of spotify playlist " + playlistId, cause);
+        } finally {
+            pages.forEach(page -> page.cancel(true));
+        }
 
-        JSONObject jsonPage = null;
-        //get page, then collect its tracks
-        do {
-            String offset = "0";
-            String limit = "100";
+        return list;
+    }
 
-            //this determines offset and limit on the 2nd+ pass of the do loop
-            if (jsonPage != null) {
-                String nextPageUrl;
-                if (!jsonPage.has("next") || jsonPage.get("next") == JSONObject.NULL) break;
-                nextPageUrl = jsonPage.getString("next");
+    private Future<JSONObject> submitPage(String url, int offset) {
+        return executor.submit(() -> fetchPage(url, offset));
+    }
 
-                final Matcher m = PARAMETER_PATTERN.matcher(nextPageUrl);
+    private JSONObject fetchPage(String url, int offset) throws IOException {
+        return requestJson(BotController.HTTP.get(url,
+                Http.Params.of(
+                        "offset", Integer.toString(offset),
+                        "limit", Integer.toString(PAGE_SIZE)
+                )));
+    }
 
-                if (!m.find()) {
-                    log.debug("Did not find parameter pattern in next page URL provided by Spotify");
-                    break;
+    /**
+     * Executes a request with our current access token, waiting for a free spot if too many requests are running.
+     * If Spotify rejects the token, it is renewed and the request is retried once.
+     */
+    private JSONObject requestJson(Http.SimpleRequest request) throws IOException {
+        try {
+            requestPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to request the spotify api");
+        }
+        try {
+            String token = accessToken;
+            try (Response response = request.auth("Bearer " + token).execute()) {
+                if (response.code() != 401 || !renewRejectedToken(token)) {
+                    //noinspection ConstantConditions
+                    return new JSONObject(response.body().string());
                 }
-                //We are trusting Spotify to get their shit together and provide us sane values for these
-                offset = m.group(1);
-                limit = m.group(2);
             }
+            //retry once with the renewed token
+            return request.auth("Bearer " + accessToken).asJson();
+        } finally {
+            requestPermits.release();
+        }
+    }
 
-            //request a page of tracks
-            jsonPage = BotController.HTTP.get(URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId + "/tracks",
-                    Http.Params.of(
-                            "offset", offset,
-                            "limit", limit
-                    ))
-                    .auth("Bearer " + accessToken)
-                    .asJson();
-
-            //add tracks to our result list
-            // https://developer.spotify.com/web-api/object-model/#paging-object
-            JSONArray jsonTracks = jsonPage.getJSONArray("items");
-
-            jsonTracks.forEach((jsonPlaylistTrack) -> {
-                try {
-                    JSONObject track = ((JSONObject) jsonPlaylistTrack).getJSONObject("track");
-                    final StringBuilder trackNameAndArtists = new StringBuilder();
-                    trackNameAndArtists.append(track.getString("name"));
-
-                    track.getJSONArray("artists").forEach((jsonArtist) -> trackNameAndArtists.append(" ")
-                            .append(((JSONObject) jsonArtist).getString("name")));
-
-                    list.add(trackNameAndArtists.toString());
-                } catch (Exception e) {
-                    log.warn("Could not create track from json, skipping", e);
-                }
-            });
+    //add the tracks of a page to our result list
+    private void collectSearchTerms(JSONObject jsonPage, List<String> list) {
+        JSONArray jsonTracks = jsonPage.getJSONArray("items");
 
-        } while (jsonPage.has("next") && jsonPage.get("next") != null);
+        jsonTracks.forEach((jsonPlaylistTrack) -> {
+            try {
+                JSONObject track = ((JSONObject) jsonPlaylistTrack).getJSONObject("track");
+                final StringBuilder trackNameAndArtists = new StringBuilder();
+                trackNameAndArtists.append(track.getString("name"));
 
-        return list;
+                track.getJSONArray("artists").forEach((jsonArtist) -> trackNameAndArtists.append(" ")
+                        .append(((JSONObject) jsonArtist).getString("name")));
+
+                list.add(trackNameAndArtists.toString());
+            } catch (Exception e) {
+                log.warn("Could not create track from json, skipping", e);
+            }
+        });
     }
 }
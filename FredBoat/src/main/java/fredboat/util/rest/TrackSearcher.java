@@ -25,6 +25,8 @@
 
 package fredboat.util.rest;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
@@ -48,9 +50,14 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Component
 public class TrackSearcher {
@@ -66,6 +73,15 @@ public class TrackSearcher {
     private static final long DEFAULT_YOUTUBE_COOLDOWN = TimeUnit.MINUTES.toMillis(10); // 10 minutes
     private static long youtubeCooldownUntil;
 
+    //in-memory cache of recent search results in front of the database cache. the cached playlists are never handed out
+    // directly, callers receive copies with cloned tracks, because audio tracks may only be played once.
+    private final Cache<SearchKey, CachedSearchResult> recentSearches = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(2000)
+            .build();
+    //searches that are currently being executed, so that concurrent identical searches can wait for them
+    private final ConcurrentHashMap<SearchKey, CompletableFuture<AudioPlaylist>> inFlightSearches = new ConcurrentHashMap<>();
+
     private final AudioPlayerManager audioPlayerManager;
 
     public TrackSearcher(@Qualifier("searchAudioPlayerManager") AudioPlayerManager audioPlayerManager) {
@@ -83,7 +99,8 @@ public class TrackSearcher {
      * @param providers     Providers that shall be used for the search. They will be used in the order they are provided, the
      *                      result of the first successful one will be returned
      * @return The result of the search, or an empty list.
-     * @throws SearchingException If none of the search providers could give us a result, and there was at least one SearchingException thrown by them
+     * @throws SearchingException If none of the search providers could give us a result, and there was at least one SearchingException thrown by them,
+     *                            or a SearchInterruptedException if the thread was interrupted while searching
      */
     public AudioPlaylist searchForTracks(String query, long cacheMaxAge, int timeoutMillis, List<SearchProvider> providers)
             throws SearchingException {
@@ -101,55 +118,15 @@ public class TrackSearcher {
         SearchingException searchingException = null;
 
         for (SearchProvider provider : provs) {
-            //1. cache
-            AudioPlaylist cacheResult = fromCache(provider, query, cacheMaxAge);
-            if (cacheResult != null && !cacheResult.getTracks().isEmpty()) {
-                log.debug("Loaded search result {} {} from cache", provider, query);
-                Metrics.searchHits.labels("cache").inc();
-                return cacheResult;
-            }
-
-            //2. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
-            if (provider != SearchProvider.YOUTUBE || System.currentTimeMillis() > youtubeCooldownUntil) {
-                try {
-                    AudioPlaylist lavaplayerResult = new SearchResultHandler()
-                            .searchSync(audioPlayerManager, provider, query, timeoutMillis);
-                    if (!lavaplayerResult.getTracks().isEmpty()) {
-                        log.debug("Loaded search result {} {} from lavaplayer", provider, query);
-                        // got a search result? cache and return it
-                        Launcher.getBotController().getExecutor().execute(() -> Launcher.getBotController().getEntityIO()
-                                .merge(new SearchResult(audioPlayerManager, provider, query, lavaplayerResult)));
-                        Metrics.searchHits.labels("lavaplayer-" + provider.name().toLowerCase()).inc();
-                        return lavaplayerResult;
-                    }
-                } catch (Http503Exception e) {
-                    if (provider == SearchProvider.YOUTUBE) {
-                        log.warn("Got a 503 from Youtube. Not hitting it with searches it for {} minutes", TimeUnit.MILLISECONDS.toMinutes(DEFAULT_YOUTUBE_COOLDOWN));
-                        youtubeCooldownUntil = System.currentTimeMillis() + DEFAULT_YOUTUBE_COOLDOWN;
-                    }
-                    searchingException = e;
-                } catch (SearchingException e) {
-                    searchingException = e;
-                }
-            }
-
-            //3. optional: youtube api
-            if (provider == SearchProvider.YOUTUBE &&
-                    (Launcher.getBotController().getAppConfig().isPatronDistribution()
-                            || Launcher.getBotController().getAppConfig().isDevDistribution())) {
-                try {
-                    AudioPlaylist youtubeApiResult = YoutubeAPI.search(query, MAX_RESULTS, audioPlayerManager.source(YoutubeAudioSourceManager.class));
-                    if (!youtubeApiResult.getTracks().isEmpty()) {
-                        log.debug("Loaded search result {} {} from Youtube API", provider, query);
-                        // got a search result? cache and return it
-                        Launcher.getBotController().getExecutor().execute(() -> Launcher.getBotController().getEntityIO()
-                                .merge(new SearchResult(audioPlayerManager, provider, query, youtubeApiResult)));
-                        Metrics.searchHits.labels("youtube-api").inc();
-                        return youtubeApiResult;
-                    }
-                } catch (SearchingException e) {
-                    searchingException = e;
+            try {
+                AudioPlaylist result = searchProvider(provider, query, cacheMaxAge, timeoutMillis);
+                if (result != null) {
+                    return result;
                 }
+            } catch (SearchInterruptedException e) {
+                throw e; //no point in searching the remaining providers
+            } catch (SearchingException e) {
+                searchingException = e;
             }
         }
 
@@ -163,6 +140,200 @@ public class TrackSearcher {
         return new BasicAudioPlaylist("Search result for: " + query, Collections.emptyList(), null, true);
     }
 
+    /**
+     * Looks up a search of a single provider in the in-memory and database caches, without searching the provider
+     * itself. Useful for callers that limit how often the providers are searched, but not how often the caches are.
+     *
+     * @return a non-empty cached search result, or null if the provider would have to be searched
+     */
+    @Nullable
+    public AudioPlaylist searchCache(String query, long cacheMaxAge, SearchProvider provider) {
+        SearchKey key = new SearchKey(provider, query);
+        AudioPlaylist result = fromMemory(key, cacheMaxAge);
+        if (result == null) {
+            result = fromDatabase(provider, query, cacheMaxAge);
+            if (result != null) {
+                recentSearches.put(key, new CachedSearchResult(copyOf(result)));
+            }
+        }
+        //misses are counted by the search that follows them
+        if (result != null) {
+            Metrics.searchRequests.inc();
+        }
+        return result;
+    }
+
+    /**
+     * Search a single provider, going through the in-memory cache first. Concurrent identical searches are coalesced
+     * into a single one, the result of which is shared by all of them.
+     *
+     * @return a non-empty search result, or null if there is none
+     * @throws SearchingException if there was no result and the provider threw an exception while searching
+     */
+    @Nullable
+    private AudioPlaylist searchProvider(SearchProvider provider, String query, long cacheMaxAge, int timeoutMillis)
+            throws SearchingException {
+        SearchKey key = new SearchKey(provider, query);
+
+        AudioPlaylist cached = fromMemory(key, cacheMaxAge);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<AudioPlaylist> ourSearch = new CompletableFuture<>();
+        CompletableFuture<AudioPlaylist> runningSearch = inFlightSearches.putIfAbsent(key, ourSearch);
+        if (runningSearch != null) {
+            Metrics.searchCacheL1.labels("coalesced").inc();
+            return awaitRunningSearch(runningSearch, provider, query, timeoutMillis);
+        }
+
+        Metrics.searchCacheL1.labels("miss").inc();
+        try {
+            AudioPlaylist result = searchUncached(provider, query, cacheMaxAge, timeoutMillis);
+            if (result != null) {
+                recentSearches.put(key, new CachedSearchResult(copyOf(result)));
+            }
+            ourSearch.complete(result);
+            return result;
+        } catch (SearchingException | RuntimeException e) {
+            ourSearch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightSearches.remove(key, ourSearch);
+        }
+    }
+
+    /**
+     * Wait for an identical search that another thread is executing. The other search may go through both lavaplayer
+     * and the youtube api, so we wait for up to two times our own timeout.
+     */
+    @Nullable
+    private AudioPlaylist awaitRunningSearch(CompletableFuture<AudioPlaylist> runningSearch, SearchProvider provider,
+                                             String query, int timeoutMillis) throws SearchingException {
+        try {
+            AudioPlaylist result = runningSearch.get(2L * timeoutMillis, TimeUnit.MILLISECONDS);
+            return result != null ? copyOf(result) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchInterruptedException(String.format("Interrupted while waiting for concurrent search of provider %s for %s",
+                    provider.name(), query));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SearchingException) {
+                throw (SearchingException) e.getCause();
+            }
+            throw new SearchingException(String.format("Concurrent search of provider %s for %s failed",
+                    provider.name(), query), e);
+        } catch (TimeoutException e) {
+            throw new SearchingException(String.format("Waiting for concurrent search of provider %s for %s timed out after %sms",
+                    provider.name(), query, 2L * timeoutMillis));
+        }
+    }
+
+    /**
+     * Search a single provider, going through the database cache, lavaplayer, and optionally the youtube api.
+     *
+     * @return a non-empty search result, or null if there is none
+     * @throws SearchingException if there was no result and the provider threw an exception while searching
+     */
+    @Nullable
+    private AudioPlaylist searchUncached(SearchProvider provider, String query, long cacheMaxAge, int timeoutMillis)
+            throws SearchingException {
+        SearchingException searchingException = null;
+
+        //1. cache
+        AudioPlaylist cacheResult = fromDatabase(provider, query, cacheMaxAge);
+        if (cacheResult != null) {
+            return cacheResult;
+        }
+
+        //2. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
+        if (provider != SearchProvider.YOUTUBE || System.currentTimeMillis() > youtubeCooldownUntil) {
+            try {
+                AudioPlaylist lavaplayerResult = new SearchResultHandler()
+                        .searchSync(audioPlayerManager, provider, query, timeoutMillis);
+                if (!lavaplayerResult.getTracks().isEmpty()) {
+                    log.debug("Loaded search result {} {} from lavaplayer", provider, query);
+                    // got a search result? cache and return it
+                    Launcher.getBotController().getExecutor().execute(() -> Launcher.getBotController().getEntityIO()
+                            .merge(new SearchResult(audioPlayerManager, provider, query, lavaplayerResult)));
+                    Metrics.searchHits.labels("lavaplayer-" + provider.name().toLowerCase()).inc();
+                    return lavaplayerResult;
+                }
+            } catch (Http503Exception e) {
+                if (provider == SearchProvider.YOUTUBE) {
+                    log.warn("Got a 503 from Youtube. Not hitting it with searches it for {} minutes", TimeUnit.MILLISECONDS.toMinutes(DEFAULT_YOUTUBE_COOLDOWN));
+                    youtubeCooldownUntil = System.currentTimeMillis() + DEFAULT_YOUTUBE_COOLDOWN;
+                }
+                searchingException = e;
+            } catch (SearchingException e) {
+                searchingException = e;
+            }
+        }
+
+        //3. optional: youtube api
+        if (provider == SearchProvider.YOUTUBE &&
+                (Launcher.getBotController().getAppConfig().isPatronDistribution()
+                        || Launcher.getBotController().getAppConfig().isDevDistribution())) {
+            try {
+                AudioPlaylist youtubeApiResult = YoutubeAPI.search(query, MAX_RESULTS, audioPlayerManager.source(YoutubeAudioSourceManager.class));
+                if (!youtubeApiResult.getTracks().isEmpty()) {
+                    log.debug("Loaded search result {} {} from Youtube API", provider, query);
+                    // got a search result? cache and return it
+                    Launcher.getBotController().getExecutor().execute(() -> Launcher.getBotController().getEntityIO()
+                            .merge(new SearchResult(audioPlayerManager, provider, query, youtubeApiResult)));
+                    Metrics.searchHits.labels("youtube-api").inc();
+                    return youtubeApiResult;
+                }
+            } catch (SearchingException e) {
+                searchingException = e;
+            }
+        }
+
+        if (searchingException != null) {
+            throw searchingException;
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the search result cached in memory, or null if there is none that is recent enough
+     */
+    @Nullable
+    private AudioPlaylist fromMemory(SearchKey key, long cacheMaxAge) {
+        CachedSearchResult cached = recentSearches.getIfPresent(key);
+        if (cached == null || System.currentTimeMillis() - cached.created > cacheMaxAge) {
+            return null;
+        }
+        log.debug("Loaded search result {} {} from memory", key.provider, key.query);
+        Metrics.searchCacheL1.labels("hit").inc();
+        Metrics.searchHits.labels("cache-l1").inc();
+        return copyOf(cached.playlist);
+    }
+
+    /**
+     * @return a non-empty search result cached in the database, or null if there is none
+     */
+    @Nullable
+    private AudioPlaylist fromDatabase(SearchProvider provider, String query, long cacheMaxAge) {
+        AudioPlaylist cacheResult = fromCache(provider, query, cacheMaxAge);
+        if (cacheResult == null || cacheResult.getTracks().isEmpty()) {
+            return null;
+        }
+        log.debug("Loaded search result {} {} from cache", provider, query);
+        Metrics.searchHits.labels("cache").inc();
+        return cacheResult;
+    }
+
+    /**
+     * @return a copy of the playlist with cloned tracks, safe to be handed out to a caller
+     */
+    private static AudioPlaylist copyOf(AudioPlaylist playlist) {
+        List<AudioTrack> tracks = playlist.getTracks().stream()
+                .map(AudioTrack::makeClone)
+                .collect(Collectors.toList());
+        return new BasicAudioPlaylist(playlist.getName(), tracks, null, playlist.isSearchResult());
+    }
+
     /**
      * @param provider   the search provider that shall be used for this search
      * @param searchTerm the searchTerm to search for
@@ -179,6 +350,42 @@ public class TrackSearcher {
         }
     }
 
+    /**
+     * Identifies a search in the in-memory cache. Queries are compared case insensitively and with their whitespace
+     * normalized.
+     */
+    private static final class SearchKey {
+        private final SearchProvider provider;
+        private final String query;
+
+        SearchKey(SearchProvider provider, String query) {
+            this.provider = provider;
+            this.query = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SearchKey)) return false;
+            SearchKey other = (SearchKey) o;
+            return provider == other.provider && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(provider, query);
+        }
+    }
+
+    private static final class CachedSearchResult {
+        private final AudioPlaylist playlist;
+        private final long created = System.currentTimeMillis();
+
+        CachedSearchResult(AudioPlaylist playlist) {
+            this.playlist = playlist;
+        }
+    }
+
     public static class SearchingException extends Exception {
         private static final long serialVersionUID = -1020150337258395420L;
 
@@ -191,6 +398,15 @@ public class TrackSearcher {
         }
     }
 
+    //the searching thread was interrupted, the search is aborted instead of trying the remaining providers
+    public static class SearchInterruptedException extends SearchingException {
+        private static final long serialVersionUID = 4872530911548736016L;
+
+        public SearchInterruptedException(String message) {
+            super(message);
+        }
+    }
+
     //creative name...
     public static class Http503Exception extends SearchingException {
         private static final long serialVersionUID = -2698566544845714550L;
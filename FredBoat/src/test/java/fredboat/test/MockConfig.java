@@ -104,6 +104,51 @@ public class MockConfig implements AppConfig, AudioSourcesConfig, Credentials, D
         return false;
     }
 
+    @Override
+    public long getBlacklistFlushIntervalMillis() {
+        return 10000;
+    }
+
+    @Override
+    public int getBlacklistFlushBatchSize() {
+        return 500;
+    }
+
+    @Override
+    public long getBlacklistSyncIntervalMillis() {
+        return 0;
+    }
+
+    @Override
+    public int getRatelimitMaxEntries() {
+        return 100000;
+    }
+
+    @Override
+    public int getPlayerHistorySize() {
+        return 20;
+    }
+
+    @Override
+    public int getSpotifyResolveParallelism() {
+        return 4;
+    }
+
+    @Override
+    public long getSpotifySearchesPerMinute() {
+        return 300;
+    }
+
+    @Override
+    public int getMaxConcurrentLoads() {
+        return 50;
+    }
+
+    @Override
+    public int getLavalinkMigrationsPerSecond() {
+        return 2;
+    }
+
     @Override
     public String getGame() {
         return "Passing all tests";
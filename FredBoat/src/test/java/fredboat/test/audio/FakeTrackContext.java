@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.audio;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.audio.queue.AudioTrackContext;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A queued track without any jda entities behind it, that can be told apart from other tracks by its name. Clones keep
+ * the name, the same way clones of real tracks keep their track info.
+ */
+public class FakeTrackContext extends AudioTrackContext {
+
+    private final String name;
+
+    public FakeTrackContext(String name, long duration, boolean isStream) {
+        this(name, mockTrack(name, duration, isStream));
+    }
+
+    public FakeTrackContext(String name, AudioTrack track) {
+        super(null, track, 0, 0);
+        this.name = name;
+    }
+
+    public static AudioTrack mockTrack(String title, long duration, boolean isStream) {
+        AudioTrack track = mock(AudioTrack.class);
+        when(track.getInfo()).thenReturn(new AudioTrackInfo(title, "", duration, title, isStream, ""));
+        when(track.getDuration()).thenReturn(duration);
+        when(track.makeClone()).thenReturn(track);
+        return track;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AudioTrackContext makeClone() {
+        return new FakeTrackContext(name, track.makeClone());
+    }
+}
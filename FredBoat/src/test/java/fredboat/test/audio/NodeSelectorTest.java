@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.test.audio;
+
+import fredboat.audio.lavalink.NodeSelector;
+import fredboat.audio.lavalink.NodeStats;
+import fredboat.audio.lavalink.PenaltyNodeSelectionStrategy;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Runs the node selection against stub nodes reporting synthetic stats.
+ */
+class NodeSelectorTest extends BaseTest {
+
+    private final NodeSelector selector = new NodeSelector(new PenaltyNodeSelectionStrategy());
+
+    @Test
+    void selectsLeastLoadedNode() {
+        NodeStats busy = node("busy", 200, 0.5, 0, 0, new Object());
+        NodeStats idle = node("idle", 20, 0.1, 0, 0, new Object());
+
+        Assertions.assertEquals("idle", selector.select(Arrays.asList(busy, idle)).getName());
+    }
+
+    @Test
+    void avoidsStutteringNode() {
+        //fewer players, but lots of frames not sent in time
+        NodeStats stuttering = node("stuttering", 10, 0.1, 1500, 0, new Object());
+        NodeStats healthy = node("healthy", 100, 0.2, 0, 0, new Object());
+
+        Assertions.assertEquals("healthy", selector.select(Arrays.asList(stuttering, healthy)).getName());
+    }
+
+    @Test
+    void skipsUnavailableNodes() {
+        NodeStats down = new NodeStats("down", false, 0, 0, 0, 0, -1, -1, null);
+        NodeStats up = node("up", 500, 0.9, 0, 0, new Object());
+
+        Assertions.assertEquals("up", selector.select(Arrays.asList(down, up)).getName());
+        Assertions.assertNull(selector.select(Collections.singletonList(down)));
+    }
+
+    @Test
+    void countsPlacementsUntilNextReport() {
+        Object reportA = new Object();
+        NodeStats a = node("a", 10, 0.1, 0, 0, reportA);
+        NodeStats b = node("b", 10, 0.1, 0, 0, new Object());
+
+        //equally loaded nodes take turns, instead of one of them getting every player until it reports again
+        Assertions.assertEquals("a", selector.select(Arrays.asList(a, b)).getName());
+        Assertions.assertEquals("b", selector.select(Arrays.asList(a, b)).getName());
+        Assertions.assertEquals("a", selector.select(Arrays.asList(a, b)).getName());
+
+        //a new report of a includes the two players placed on it, so they are not counted twice
+        double penaltyBefore = selector.getPenalty(a);
+        NodeStats reportedA = node("a", 12, 0.1, 0, 0, new Object());
+        Assertions.assertEquals(penaltyBefore, selector.getPenalty(reportedA), 0.0001);
+    }
+
+    @Test
+    void findingBestNodeDoesNotCountPlacement() {
+        NodeStats a = node("a", 10, 0.1, 0, 0, new Object());
+        NodeStats b = node("b", 10, 0.1, 0, 0, new Object());
+
+        double penaltyBefore = selector.getPenalty(a);
+        Assertions.assertEquals("a", selector.findBest(Arrays.asList(a, b)).getName());
+        Assertions.assertEquals("a", selector.findBest(Arrays.asList(a, b)).getName());
+        Assertions.assertEquals(penaltyBefore, selector.getPenalty(a), 0.0001);
+
+        //only a player actually placed on the node raises its penalty
+        selector.placed(a);
+        Assertions.assertTrue(selector.getPenalty(a) > penaltyBefore);
+        Assertions.assertEquals("b", selector.findBest(Arrays.asList(a, b)).getName());
+    }
+
+    @Test
+    void skipsDrainingNodes() {
+        NodeStats draining = node("draining", 0, 0.0, 0, 0, new Object());
+        NodeStats busy = node("busy", 300, 0.6, 0, 0, new Object());
+
+        Assertions.assertTrue(selector.drain("draining"));
+        Assertions.assertEquals("busy", selector.select(Arrays.asList(draining, busy)).getName());
+        Assertions.assertNull(selector.select(Collections.singletonList(draining)));
+
+        Assertions.assertTrue(selector.undrain("draining"));
+        Assertions.assertEquals("draining", selector.select(Arrays.asList(draining, busy)).getName());
+    }
+
+    private static NodeStats node(String name, int playing, double systemLoad, int deficit, int nulled,
+                                  Object report) {
+        return new NodeStats(name, true, playing, playing, systemLoad, systemLoad, nulled, deficit, report);
+    }
+}
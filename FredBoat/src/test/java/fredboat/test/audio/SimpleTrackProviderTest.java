@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.audio;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.RepeatMode;
+import fredboat.audio.queue.SimpleTrackProvider;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class SimpleTrackProviderTest extends BaseTest {
+
+    //all fake tracks share the same mock, they are told apart by the names of their contexts
+    private static final AudioTrack TRACK = FakeTrackContext.mockTrack("track", 1000, false);
+
+    @Test
+    void shuffledQueueIsPermutationOfQueue() {
+        SimpleTrackProvider provider = new SimpleTrackProvider();
+        provider.setShuffle(true);
+        List<AudioTrackContext> tracks = tracks(1000);
+        provider.addAll(tracks);
+        assertPermutation(provider);
+
+        //remove every third track, by reference as well as by id
+        List<AudioTrackContext> toRemove = new ArrayList<>();
+        List<Long> idsToRemove = new ArrayList<>();
+        for (int i = 0; i < tracks.size(); i += 3) {
+            if (i % 2 == 0) {
+                toRemove.add(tracks.get(i));
+            } else {
+                idsToRemove.add(tracks.get(i).getTrackId());
+            }
+        }
+        provider.removeAll(toRemove);
+        provider.removeAllById(idsToRemove);
+        Assertions.assertEquals(tracks.size() - toRemove.size() - idsToRemove.size(), provider.size());
+        assertPermutation(provider);
+
+        //the regular order is untouched by shuffling
+        List<AudioTrackContext> expected = new ArrayList<>();
+        for (int i = 0; i < tracks.size(); i++) {
+            if (i % 3 != 0) {
+                expected.add(tracks.get(i));
+            }
+        }
+        Assertions.assertEquals(expected, provider.getAsList());
+    }
+
+    /**
+     * Repeating a shuffled queue puts every played track at the back of the shuffled order, which uses up the key
+     * space behind the last track. Once there is no room left, the keys are spread out again, which must not change
+     * the shuffled order.
+     */
+    @Test
+    void repeatedShuffledQueueKeepsOrderWhenKeysRunOut() {
+        //after a reshuffle the gap behind the last of 2^16 tracks is about 2^47, and each append at the back takes at
+        // most 2^32 of it. so 2^15 appends plus a few halvings of the rest exhaust it
+        int size = 1 << 16;
+        int provides = size + (1 << 15) + 1000;
+
+        SimpleTrackProvider provider = new SimpleTrackProvider();
+        provider.addAll(tracks(size));
+        provider.setShuffle(true);
+        provider.reshuffle();
+        provider.setRepeatMode(RepeatMode.ALL);
+        List<String> order = names(provider.getAsListOrdered());
+
+        for (int i = 0; i < provides; i++) {
+            AudioTrackContext provided = provider.provideAudioTrack();
+            Assertions.assertEquals(order.get(i % size), name(provided), "track provided at " + i);
+        }
+        //the track provided last is added back on the next call
+        Assertions.assertEquals(size - 1, provider.size());
+        assertPermutation(provider);
+    }
+
+    private static void assertPermutation(SimpleTrackProvider provider) {
+        List<AudioTrackContext> queue = provider.getAsList();
+        List<AudioTrackContext> shuffled = provider.getAsListOrdered();
+        Assertions.assertEquals(queue.size(), shuffled.size());
+        Set<AudioTrackContext> unique = new HashSet<>(shuffled);
+        Assertions.assertEquals(shuffled.size(), unique.size());
+        Assertions.assertEquals(new HashSet<>(queue), unique);
+    }
+
+    private static List<AudioTrackContext> tracks(int count) {
+        List<AudioTrackContext> tracks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tracks.add(new FakeTrackContext("track " + i, TRACK));
+        }
+        return tracks;
+    }
+
+    private static String name(AudioTrackContext atc) {
+        return ((FakeTrackContext) atc).getName();
+    }
+
+    private static List<String> names(List<AudioTrackContext> tracks) {
+        List<String> names = new ArrayList<>(tracks.size());
+        for (AudioTrackContext atc : tracks) {
+            names.add(name(atc));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.audio;
+
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.TrackTree;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+class TrackTreeTest extends BaseTest {
+
+    @Test
+    void indexLookup() {
+        //insert in an order different from the key order
+        TrackTree tree = treeOf(50, 10, 90, 30, 70, 20, 80, 40, 60, 0);
+        List<AudioTrackContext> tracks = new ArrayList<>();
+
+        Assertions.assertEquals(10, tree.size());
+        for (int i = 0; i < 10; i++) {
+            long key = i * 10;
+            Assertions.assertEquals(key, tree.keyAt(i));
+            Assertions.assertEquals(i, tree.indexOf(key));
+            Assertions.assertEquals("track " + key, name(tree.get(i)));
+            Assertions.assertSame(tree.get(i), tree.getByKey(key));
+            tracks.add(tree.get(i));
+        }
+        Assertions.assertEquals(tracks, tree.toList());
+        Assertions.assertSame(tracks.get(0), tree.first());
+
+        Assertions.assertEquals(-1, tree.indexOf(55));
+        Assertions.assertNull(tree.getByKey(55));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.get(-1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.get(10));
+        Assertions.assertNull(TrackTree.EMPTY.first());
+    }
+
+    @Test
+    void removal() {
+        TrackTree tree = TrackTree.EMPTY;
+        for (long key = 0; key < 5; key++) {
+            tree = tree.insert(key, new FakeTrackContext("track " + key, 1000, key == 2));
+        }
+        Assertions.assertEquals(4000, tree.getDurationMillis());
+        Assertions.assertEquals(1, tree.getStreamsCount());
+
+        TrackTree removed = tree.remove(2).remove(0).remove(4);
+        Assertions.assertEquals(Arrays.asList("track 1", "track 3"), names(removed.toList()));
+        Assertions.assertEquals(0, removed.indexOf(1));
+        Assertions.assertEquals(1, removed.indexOf(3));
+        Assertions.assertEquals(-1, removed.indexOf(2));
+        Assertions.assertEquals(2000, removed.getDurationMillis());
+        Assertions.assertEquals(0, removed.getStreamsCount());
+
+        //removing a missing key changes nothing, and the old version of the tree stays intact
+        Assertions.assertSame(removed, removed.remove(2));
+        Assertions.assertEquals(5, tree.size());
+        Assertions.assertEquals("track 2", name(tree.get(2)));
+
+        Assertions.assertTrue(removed.remove(1).remove(3).isEmpty());
+    }
+
+    @Test
+    void range() {
+        TrackTree tree = treeOf(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+        Assertions.assertEquals(Arrays.asList("track 3", "track 4", "track 5"), names(tree.range(3, 6)));
+        Assertions.assertEquals(names(tree.toList()), names(tree.range(-5, 50)));
+        Assertions.assertEquals(Arrays.asList("track 8", "track 9"), names(tree.range(8, 12)));
+        Assertions.assertEquals(Collections.emptyList(), tree.range(6, 6));
+        Assertions.assertEquals(Collections.emptyList(), tree.range(7, 3));
+        Assertions.assertEquals(Collections.emptyList(), TrackTree.EMPTY.range(0, 10));
+    }
+
+    @Test
+    void matchesListUnderRandomOperations() {
+        Random random = new Random(42);
+        List<AudioTrackContext> expected = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        TrackTree tree = TrackTree.EMPTY;
+        long nextKey = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            if (expected.isEmpty() || random.nextInt(10) < 6) {
+                boolean isStream = random.nextInt(5) == 0;
+                AudioTrackContext atc = new FakeTrackContext("track " + i, random.nextInt(1000), isStream);
+                tree = tree.insert(nextKey, atc);
+                expected.add(atc);
+                keys.add(nextKey++);
+            } else {
+                int index = random.nextInt(expected.size());
+                Assertions.assertEquals(index, tree.indexOf(keys.get(index)));
+                Assertions.assertSame(expected.get(index), tree.get(index));
+                tree = tree.remove(keys.remove(index));
+                expected.remove(index);
+            }
+        }
+
+        Assertions.assertEquals(expected, tree.toList());
+        long duration = 0;
+        int streams = 0;
+        for (AudioTrackContext atc : expected) {
+            if (atc.getTrack().getInfo().isStream) {
+                streams++;
+            } else {
+                duration += atc.getEffectiveDuration();
+            }
+        }
+        Assertions.assertEquals(duration, tree.getDurationMillis());
+        Assertions.assertEquals(streams, tree.getStreamsCount());
+        int from = expected.size() / 3;
+        int to = 2 * expected.size() / 3;
+        Assertions.assertEquals(expected.subList(from, to), tree.range(from, to));
+    }
+
+    private static TrackTree treeOf(long... keys) {
+        TrackTree tree = TrackTree.EMPTY;
+        for (long key : keys) {
+            tree = tree.insert(key, new FakeTrackContext("track " + key, 1000, false));
+        }
+        return tree;
+    }
+
+    private static String name(AudioTrackContext atc) {
+        return ((FakeTrackContext) atc).getName();
+    }
+
+    private static List<String> names(List<AudioTrackContext> tracks) {
+        List<String> names = new ArrayList<>();
+        for (AudioTrackContext atc : tracks) {
+            names.add(name(atc));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package fredboat.test.commandmeta;
+
+import fredboat.commandmeta.CommandContextParser;
+import fredboat.commandmeta.CommandContextParser.ParsedCommand;
+import fredboat.commandmeta.CommandInitializer;
+import fredboat.commandmeta.CommandRegistry;
+import fredboat.commandmeta.abs.Command;
+import fredboat.commandmeta.abs.CommandContext;
+import fredboat.definitions.Module;
+import fredboat.messaging.internal.Context;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses raw message contents against a few stub commands.
+ */
+class CommandContextParserTest extends BaseTest {
+
+    private static final String SELF_ID = "123";
+    private static final String DEFAULT_PREFIX = ";;";
+
+    //the regex the parser used to match mentions with, before matching them by hand
+    private static final Pattern MENTION_PREFIX = Pattern.compile("^(<@!?([0-9]+)>)(.*)$", Pattern.DOTALL);
+
+    private static final Command PLAY = new StubCommand("play", "p");
+    private static final Command PREFIX = new StubCommand(CommandInitializer.PREFIX_COMM_NAME, "pre");
+    private static final Command HELP = new StubCommand(CommandInitializer.HELP_COMM_NAME, "info");
+
+    @BeforeAll
+    static void registerCommands() {
+        new CommandRegistry(Module.MUSIC).registerCommand(PLAY);
+        new CommandRegistry(Module.CONFIG).registerCommand(PREFIX);
+        new CommandRegistry(Module.INFO).registerCommand(HELP);
+    }
+
+    @Test
+    void mentions() {
+        ParsedCommand parsed = parse("<@123> play foo", DEFAULT_PREFIX);
+        Assertions.assertTrue(parsed.isMention);
+        Assertions.assertSame(PLAY, parsed.command);
+        Assertions.assertArrayEquals(new String[]{"foo"}, parsed.args);
+
+        //nickname mention
+        parsed = parse("<@!123>play foo", DEFAULT_PREFIX);
+        Assertions.assertTrue(parsed.isMention);
+        Assertions.assertSame(PLAY, parsed.command);
+        Assertions.assertEquals("foo", parsed.rawArgs);
+
+        //someone else is mentioned
+        Assertions.assertNull(parse("<@456> play foo", DEFAULT_PREFIX));
+        Assertions.assertNull(parse("<@!1234> play foo", DEFAULT_PREFIX));
+    }
+
+    @Test
+    void mentionsMatchTheRegex() {
+        String[] inputs = {
+                "<@123>play", "<@!123> play", "<@123>\nplay", "<@12> play", "<@1234> play", "<@!!123> play",
+                "<@123 play", "<@> play", "<@!> play", "<@!123", "<@", "x<@123> play", " <@123> play",
+                "<@\uFF11\uFF12\uFF13> play",
+        };
+        for (String input : inputs) {
+            Matcher matcher = MENTION_PREFIX.matcher(input);
+            boolean expected = matcher.find() && matcher.group(2).equals(SELF_ID);
+            ParsedCommand parsed = parse(input, "!");
+            Assertions.assertEquals(expected, parsed != null && parsed.isMention, input);
+        }
+    }
+
+    @Test
+    void mentionWithoutText() {
+        for (String input : new String[]{"<@123>", "<@!123>", "<@123>  \n "}) {
+            ParsedCommand parsed = parse(input, DEFAULT_PREFIX);
+            Assertions.assertNotNull(parsed, input);
+            Assertions.assertTrue(parsed.isMention);
+            Assertions.assertSame(PREFIX, parsed.command);
+            Assertions.assertEquals(0, parsed.args.length);
+            Assertions.assertEquals("", parsed.rawArgs);
+        }
+    }
+
+    @Test
+    void customPrefix() {
+        ParsedCommand parsed = parse("!play foo", "!");
+        Assertions.assertFalse(parsed.isMention);
+        Assertions.assertSame(PLAY, parsed.command);
+
+        //the default prefix only works for the commands shown in the status of the bot
+        Assertions.assertNull(parse(";;play foo", "!"));
+        Assertions.assertSame(HELP, parse(";;help", "!").command);
+        Assertions.assertSame(PREFIX, parse(";;prefix", "!").command);
+    }
+
+    @Test
+    void defaultPrefix() {
+        ParsedCommand parsed = parse(";;play foo", DEFAULT_PREFIX);
+        Assertions.assertSame(PLAY, parsed.command);
+        Assertions.assertNull(parse("!play foo", DEFAULT_PREFIX));
+        //whitespace between prefix and trigger is ignored
+        Assertions.assertSame(PLAY, parse(";; play foo", DEFAULT_PREFIX).command);
+    }
+
+    @Test
+    void caseInsensitiveTriggers() {
+        ParsedCommand parsed = parse(";;PlAy foo", DEFAULT_PREFIX);
+        Assertions.assertSame(PLAY, parsed.command);
+        Assertions.assertEquals("PlAy", parsed.trigger);
+
+        parsed = parse(";;P foo", DEFAULT_PREFIX);
+        Assertions.assertSame(PLAY, parsed.command);
+        Assertions.assertEquals("P", parsed.trigger);
+
+        Assertions.assertSame(PREFIX, parse(";;PRE", DEFAULT_PREFIX).command);
+    }
+
+    @Test
+    void multilineArguments() {
+        ParsedCommand parsed = parse(";;play a\nb  c\u00A0d\n", DEFAULT_PREFIX);
+        //new lines are not space characters, so they don't separate arguments, unlike unicode spaces
+        Assertions.assertArrayEquals(new String[]{"a\nb", "c", "d"}, parsed.args);
+        Assertions.assertEquals("a\nb  c\u00A0d", parsed.rawArgs);
+    }
+
+    @Test
+    void whitespaceOnlyArguments() {
+        ParsedCommand parsed = parse(";;play   \n ", DEFAULT_PREFIX);
+        Assertions.assertEquals(0, parsed.args.length);
+        Assertions.assertEquals("", parsed.rawArgs);
+
+        //unicode spaces separate arguments, but are not trimmed from the raw arguments, same as String#trim
+        parsed = parse(";;play \u00A0 ", DEFAULT_PREFIX);
+        Assertions.assertEquals(0, parsed.args.length);
+        Assertions.assertEquals("\u00A0", parsed.rawArgs);
+    }
+
+    @Test
+    void unknownTriggers() {
+        Assertions.assertNull(parse(";;nope", DEFAULT_PREFIX));
+        Assertions.assertNull(parse(";;pla", DEFAULT_PREFIX));
+        Assertions.assertNull(parse(";;playx", DEFAULT_PREFIX));
+        Assertions.assertNull(parse(";;", DEFAULT_PREFIX));
+        Assertions.assertNull(parse(";;   ", DEFAULT_PREFIX));
+        Assertions.assertNull(parse("play foo", DEFAULT_PREFIX));
+        Assertions.assertNull(parse("<@123> nope", DEFAULT_PREFIX));
+    }
+
+    private static ParsedCommand parse(String raw, String guildPrefix) {
+        return CommandContextParser.parse(raw, SELF_ID, () -> guildPrefix, DEFAULT_PREFIX);
+    }
+
+    private static class StubCommand extends Command {
+
+        private StubCommand(String name, String... aliases) {
+            super(name, aliases);
+        }
+
+        @Override
+        public void onInvoke(@Nonnull CommandContext context) {
+        }
+
+        @Nonnull
+        @Override
+        public String help(@Nonnull Context context) {
+            return "";
+        }
+    }
+}
@@ -29,6 +29,7 @@ import fredboat.test.BaseTest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
 public class I18nTest extends BaseTest {
@@ -42,4 +43,38 @@ public class I18nTest extends BaseTest {
             Assertions.assertNotNull(id_ID.getString(key), () -> key + " prop missing in language files");
         }
     }
+
+    @Test
+    public void testCatalog() {
+        I18n.start();
+
+        Object[] params = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"};
+        for (I18n.FredBoatLocale locale : I18n.LANGS.values()) {
+            ResourceBundle props = locale.getProps();
+            for (String key : props.keySet()) {
+                String value = props.getString(key);
+                Assertions.assertEquals(value, locale.getString(key),
+                        () -> key + " in " + locale.getCode() + " differs from the language file");
+
+                //translations of patterns need to be patterns too
+                if (I18n.DEFAULT.hasFormat(key)) {
+                    Assertions.assertTrue(locale.hasFormat(key),
+                            () -> key + " in " + locale.getCode() + " is not a valid pattern");
+                }
+                if (!locale.hasFormat(key)) {
+                    continue;
+                }
+
+                String expected;
+                try {
+                    expected = MessageFormat.format(value, params);
+                } catch (IllegalArgumentException e) {
+                    Assertions.assertThrows(IllegalArgumentException.class, () -> locale.format(key, params));
+                    continue;
+                }
+                Assertions.assertEquals(expected, locale.format(key, params),
+                        () -> key + " in " + locale.getCode() + " is formatted differently than by the language file");
+            }
+        }
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.util;
+
+import fredboat.test.BaseTest;
+import fredboat.util.HashedWheelTimer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+class HashedWheelTimerTest extends BaseTest {
+
+    private static final long TICK_MILLIS = 10;
+    //generous upper bound for the lateness of a timeout, to not fail on busy build machines
+    private static final long LATENESS_MILLIS = 1000;
+
+    private HashedWheelTimer timer;
+
+    @AfterEach
+    void stopTimer() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void expiresNotBeforeDeadline() throws InterruptedException {
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 64);
+
+        long delayMillis = 55;
+        CountDownLatch expired = new CountDownLatch(1);
+        AtomicLong expiredAfterNanos = new AtomicLong();
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+            expiredAfterNanos.set(System.nanoTime() - start);
+            expired.countDown();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(expired.await(delayMillis + LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        long expiredAfterMillis = TimeUnit.NANOSECONDS.toMillis(expiredAfterNanos.get());
+        Assertions.assertTrue(expiredAfterMillis >= delayMillis,
+                "expired after " + expiredAfterMillis + "ms, before its delay of " + delayMillis + "ms");
+        Assertions.assertTrue(timeout.isExpired());
+        Assertions.assertFalse(timeout.isCancelled());
+        Assertions.assertFalse(timeout.cancel());
+        Assertions.assertEquals(0, timer.getPendingTimeouts());
+    }
+
+    @Test
+    void expiresInOrderOfDeadlines() throws InterruptedException {
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 64);
+
+        CountDownLatch expired = new CountDownLatch(2);
+        AtomicLong first = new AtomicLong();
+        AtomicLong second = new AtomicLong();
+        timer.schedule(() -> {
+            second.set(System.nanoTime());
+            expired.countDown();
+        }, 5 * TICK_MILLIS, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> {
+            first.set(System.nanoTime());
+            expired.countDown();
+        }, TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(expired.await(5 * TICK_MILLIS + LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(first.get() < second.get());
+    }
+
+    @Test
+    void expiresAfterSeveralRounds() throws InterruptedException {
+        //a revolution of this wheel takes 4 ticks, so the timeout waits in its bucket for a few rounds
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 4);
+
+        long delayMillis = 10 * TICK_MILLIS + TICK_MILLIS / 2;
+        CountDownLatch expired = new CountDownLatch(1);
+        AtomicLong expiredAfterNanos = new AtomicLong();
+        long start = System.nanoTime();
+        timer.schedule(() -> {
+            expiredAfterNanos.set(System.nanoTime() - start);
+            expired.countDown();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(expired.await(delayMillis + LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        long expiredAfterMillis = TimeUnit.NANOSECONDS.toMillis(expiredAfterNanos.get());
+        Assertions.assertTrue(expiredAfterMillis >= delayMillis,
+                "expired after " + expiredAfterMillis + "ms, before its delay of " + delayMillis + "ms");
+    }
+
+    @Test
+    void cancelBeforeTransferIntoBucket() {
+        //the first tick, which transfers scheduled timeouts into the wheel, is a long way off
+        timer = new HashedWheelTimer("test-timer", 1, TimeUnit.HOURS, 4);
+
+        AtomicBoolean ran = new AtomicBoolean(false);
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), 0, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(1, timer.getPendingTimeouts());
+
+        Assertions.assertTrue(timeout.cancel());
+        Assertions.assertFalse(timeout.cancel());
+        Assertions.assertTrue(timeout.isCancelled());
+        Assertions.assertFalse(timeout.isExpired());
+        Assertions.assertEquals(0, timer.getPendingTimeouts());
+        Assertions.assertFalse(ran.get());
+    }
+
+    @Test
+    void cancelAfterTransferIntoBucket() throws InterruptedException {
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 4);
+
+        AtomicBoolean ran = new AtomicBoolean(false);
+        long delayMillis = 20 * TICK_MILLIS;
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), delayMillis, TimeUnit.MILLISECONDS);
+        //marks the tick at which the timeout above has been transferred into its bucket
+        CountDownLatch transferred = new CountDownLatch(1);
+        timer.schedule(transferred::countDown, 0, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(transferred.await(LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+
+        Assertions.assertTrue(timeout.cancel());
+        Assertions.assertTrue(timeout.isCancelled());
+        Assertions.assertEquals(0, timer.getPendingTimeouts());
+
+        //a timeout scheduled after the cancelled one's deadline has expired, which the cancelled one must not
+        CountDownLatch later = new CountDownLatch(1);
+        timer.schedule(later::countDown, delayMillis + 5 * TICK_MILLIS, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(later.await(delayMillis + 5 * TICK_MILLIS + LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        Assertions.assertFalse(ran.get());
+        Assertions.assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    void keepsRunningAfterFailingTask() throws InterruptedException {
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 4);
+
+        timer.schedule(() -> {
+            throw new RuntimeException("expected by the test");
+        }, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch expired = new CountDownLatch(1);
+        timer.schedule(expired::countDown, 2 * TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(expired.await(2 * TICK_MILLIS + LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void stopDropsPendingTimeouts() throws InterruptedException {
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, TimeUnit.MILLISECONDS, 4);
+
+        AtomicBoolean ran = new AtomicBoolean(false);
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), 5 * TICK_MILLIS, TimeUnit.MILLISECONDS);
+        timer.stop();
+
+        Thread.sleep(10 * TICK_MILLIS);
+        Assertions.assertFalse(ran.get());
+        Assertions.assertFalse(timeout.isExpired());
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> timer.schedule(() -> ran.set(true), 0, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package fredboat.test.util;
+
+import fredboat.test.BaseTest;
+import fredboat.util.RingBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+class RingBufferTest extends BaseTest {
+
+    @Test
+    void emptyBuffer() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+
+        Assertions.assertTrue(buffer.isEmpty());
+        Assertions.assertEquals(0, buffer.size());
+        Assertions.assertNull(buffer.get(0));
+        Assertions.assertEquals(Collections.emptyList(), buffer.getRange(0, 3));
+    }
+
+    @Test
+    void beforeWrapping() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+
+        Assertions.assertEquals(3, buffer.size());
+        Assertions.assertEquals(3, (int) buffer.get(0));
+        Assertions.assertEquals(1, (int) buffer.get(2));
+        Assertions.assertNull(buffer.get(3));
+        Assertions.assertNull(buffer.get(-1));
+        Assertions.assertEquals(Arrays.asList(3, 2, 1), buffer.getRange(0, 3));
+        Assertions.assertEquals(Arrays.asList(2, 1), buffer.getRange(1, 3));
+    }
+
+    @Test
+    void afterWrapping() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        for (int i = 1; i <= 7; i++) {
+            buffer.add(i);
+        }
+
+        //the oldest elements got overwritten
+        Assertions.assertEquals(3, buffer.size());
+        Assertions.assertEquals(7, (int) buffer.get(0));
+        Assertions.assertEquals(6, (int) buffer.get(1));
+        Assertions.assertEquals(5, (int) buffer.get(2));
+        Assertions.assertNull(buffer.get(3));
+        Assertions.assertEquals(Arrays.asList(7, 6, 5), buffer.getRange(0, 3));
+        Assertions.assertEquals(Collections.singletonList(6), buffer.getRange(1, 2));
+    }
+
+    @Test
+    void rangesAreClamped() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        buffer.add(1);
+        buffer.add(2);
+
+        Assertions.assertEquals(Arrays.asList(2, 1), buffer.getRange(-3, 10));
+        Assertions.assertEquals(Collections.singletonList(1), buffer.getRange(1, 5));
+        Assertions.assertEquals(Collections.emptyList(), buffer.getRange(2, 5));
+        Assertions.assertEquals(Collections.emptyList(), buffer.getRange(1, 1));
+        Assertions.assertEquals(Collections.emptyList(), buffer.getRange(2, 1));
+
+        for (int i = 3; i <= 8; i++) {
+            buffer.add(i);
+        }
+        Assertions.assertEquals(Arrays.asList(8, 7, 6, 5, 4), buffer.getRange(0, Integer.MAX_VALUE));
+        Assertions.assertEquals(Arrays.asList(5, 4), buffer.getRange(3, 10));
+    }
+
+    @Test
+    void capacityOfOne() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1);
+        Assertions.assertNull(buffer.get(0));
+
+        buffer.add(1);
+        buffer.add(2);
+
+        Assertions.assertEquals(1, buffer.size());
+        Assertions.assertEquals(2, (int) buffer.get(0));
+        Assertions.assertNull(buffer.get(1));
+        Assertions.assertEquals(Collections.singletonList(2), buffer.getRange(0, 5));
+        Assertions.assertEquals(Collections.emptyList(), buffer.getRange(1, 5));
+    }
+
+    @Test
+    void invalidCapacity() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0));
+    }
+
+    @Test
+    void concurrentWriters() throws InterruptedException {
+        int capacity = 16;
+        int writers = 4;
+        int addsPerWriter = 50_000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(capacity);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < addsPerWriter; i++) {
+                        buffer.add(i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        //a reader racing the writers never sees more elements than the capacity
+        threads.add(new Thread(() -> {
+            try {
+                start.await();
+                for (int i = 0; i < addsPerWriter; i++) {
+                    List<Integer> range = buffer.getRange(0, capacity * 2);
+                    if (range.size() > capacity) {
+                        throw new AssertionError("Range of " + range.size() + " elements");
+                    }
+                    buffer.get(i % (capacity * 2));
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }));
+
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assertions.assertNull(failure.get());
+        Assertions.assertEquals(capacity, buffer.size());
+        Assertions.assertEquals(capacity, buffer.getRange(0, capacity).size());
+        for (int i = 0; i < capacity; i++) {
+            Assertions.assertNotNull(buffer.get(i));
+        }
+    }
+}